@@ -0,0 +1,59 @@
+package nl.streamone.sdk.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.streamone.sdk.ChallengeCrypto;
+import nl.streamone.sdk.Cryptography;
+
+/*
+ * The login's challenge response, cost 12 like the API hands out, the way SessionManager
+ * computes it and into a reused buffer. bcrypt alone is measured too, what the response
+ * costs on top of it are its md5 and sha256 digests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class ChallengeBenchmark {
+    private byte[] mPassword;
+    private byte[] mChallenge;
+    private byte[] mSalt;
+    private byte[] mPasswordKey;
+    private final byte[] mResponse = new byte[ChallengeCrypto.RESPONSE_LENGTH];
+    private final byte[] mHash = new byte[ChallengeCrypto.HASH_LENGTH];
+
+    @Setup
+    public void setUp() throws Exception {
+        mPassword = "password".getBytes("UTF-8");
+        mChallenge = "coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6".getBytes("US-ASCII");
+        mSalt = "$2y$12$baztaaydu13s4ah6y6pegt".getBytes("US-ASCII");
+        // md5_hex("password"), the key the response hands to bcrypt
+        mPasswordKey = "5f4dcc3b5aa765d61d8327deb882cf99".getBytes("US-ASCII");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String challengeResponse() {
+        return Cryptography.getChallengeResponse(mPassword, mChallenge, mSalt);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] response() {
+        ChallengeCrypto.forThread().response(mPassword, mChallenge, mSalt, mResponse, 0);
+        return mResponse;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] bcrypt() {
+        ChallengeCrypto.forThread().crypt(mPasswordKey, mSalt, mHash);
+        return mHash;
+    }
+}
@@ -0,0 +1,60 @@
+package nl.streamone.sdk.benchmark;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.streamone.sdk.ApplicationAuthentication;
+import nl.streamone.sdk.PreSessionAuthentication;
+import nl.streamone.sdk.Session;
+
+/*
+ * The authentication payloads from body text to model. The models parse lazily, so every
+ * field is read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonDecodingBenchmark {
+    static final String APPLICATION_VIEW = "{\"header\":{\"status\":0,\"statusmessage\":\"OK\",\"apiversion\":3,\"cacheable\":true,\"count\":1,\"timezone\":\"Europe/Amsterdam\"},\"body\":[{\"id\":\"APPLICATION\",\"name\":\"Application Title\",\"description\":\"Application Description\",\"datecreated\":\"2015-09-28 09:00:02\",\"datemodified\":\"2015-09-28 09:00:02\",\"active\":true,\"iplock\":null,\"timezone\":\"Europe/Amsterdam\"}]}";
+    static final String SESSION_INITIALIZE = "{\"header\":{\"status\":0,\"statusmessage\":\"OK\",\"apiversion\":3,\"cacheable\":false,\"timezone\":\"Europe/Amsterdam\"},\"body\":{\"challenge\":\"coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6\",\"salt\":\"$2y$12$baztaaydu13s4ah6y6pegt\",\"needsv2hash\":false}}";
+    static final String SESSION_CREATE = "{\"header\":{\"status\":0,\"statusmessage\":\"OK\",\"apiversion\":3,\"cacheable\":false,\"timezone\":\"Europe/Amsterdam\"},\"body\":{\"id\":\"sC5tGogRgBow\",\"key\":\"gR92jURda7mEqiDzhcz2bC1FtIzS8wxe\",\"timeout\":3600,\"user\":\"USER\"}}";
+
+    @Benchmark
+    public void applicationAuthentication(Blackhole blackhole) throws Exception {
+        ApplicationAuthentication application = new ApplicationAuthentication(
+                new JSONObject(APPLICATION_VIEW).getJSONArray("body").getJSONObject(0));
+        blackhole.consume(application.getId());
+        blackhole.consume(application.getName());
+        blackhole.consume(application.getDescription());
+        blackhole.consume(application.getDatecreated());
+        blackhole.consume(application.getDatemodified());
+        blackhole.consume(application.isActive());
+        blackhole.consume(application.getTimezone());
+    }
+
+    @Benchmark
+    public void preSessionAuthentication(Blackhole blackhole) throws Exception {
+        PreSessionAuthentication preSession = new PreSessionAuthentication(
+                new JSONObject(SESSION_INITIALIZE).getJSONObject("body"));
+        blackhole.consume(preSession.getChallenge());
+        blackhole.consume(preSession.getSalt());
+        blackhole.consume(preSession.isNeedsv2hash());
+    }
+
+    @Benchmark
+    public void session(Blackhole blackhole) throws Exception {
+        Session session = new Session(new JSONObject(SESSION_CREATE).getJSONObject("body"));
+        blackhole.consume(session.getId());
+        blackhole.consume(session.getKey());
+        blackhole.consume(session.getTimeout());
+        blackhole.consume(session.getUser());
+    }
+}
@@ -0,0 +1,107 @@
+package nl.streamone.sdk.benchmark;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import nl.streamone.sdk.HttpUrlConnectionRequest;
+import nl.streamone.sdk.OkHttpRequest;
+import nl.streamone.sdk.RequestBase;
+import nl.streamone.sdk.Response;
+import nl.streamone.sdk.loadtest.LoadServerSocketFactory;
+
+/*
+ * execute end to end against a MockWebServer on localhost: signing, the URL, the transport
+ * and reading the body. The server answers session/create every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestBenchmark {
+    private MockWebServer mServer;
+    private int mTaken;
+
+    @Setup
+    public void startServer() throws Exception {
+        // it logs every request; the factory turns Nagle off, see there
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(java.util.logging.Level.WARNING);
+        mServer = new MockWebServer();
+        mServer.setServerSocketFactory(new LoadServerSocketFactory());
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json; charset=utf-8")
+                        .setBody(JsonDecodingBenchmark.SESSION_CREATE);
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * The server keeps every request it saw, a run would fill the heap with them
+     */
+    @TearDown(Level.Iteration)
+    public void forgetRequests() throws Exception {
+        for (; mTaken < mServer.getRequestCount(); mTaken++) {
+            mServer.takeRequest();
+        }
+    }
+
+    @TearDown
+    public void stopServer() throws Exception {
+        mServer.shutdown();
+    }
+
+    private static final class BodyResponse extends Response {
+        @Override
+        public void onSuccess(RequestBase request) {
+        }
+
+        @Override
+        public void onError(RequestBase request, Exception e) {
+            throw new IllegalStateException("the mock server failed", e);
+        }
+    }
+
+    private RequestBase prepare(RequestBase request) {
+        request.setScheme("http");
+        request.setCommand("session");
+        request.setAction("create");
+        request.setSigningKey("gR92jURda7mEqiDzhcz2bC1FtIzS8wxe");
+        request.setMetrics(null);
+        request.getParameters().put("authentication_type", "application");
+        request.getParameters().put("application", "APPLICATION");
+        request.getArguments().put("challenge", "coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6");
+        request.getArguments().put("response", "HQtJEAcGEwAASEJTUx0GRQYKRAACUQ8YD0BdXlVZVC90TBwgdhBlLm9RA1R5N0AFW25wUVMNHHpeY1QD");
+        return request;
+    }
+
+    @Benchmark
+    public String httpUrlConnection() {
+        BodyResponse response = new BodyResponse();
+        prepare(new HttpUrlConnectionRequest("localhost", mServer.getPort())).execute(response);
+        return response.getJson();
+    }
+
+    @Benchmark
+    public String okHttp() {
+        BodyResponse response = new BodyResponse();
+        prepare(new OkHttpRequest("localhost", mServer.getPort())).execute(response);
+        return response.getJson();
+    }
+}
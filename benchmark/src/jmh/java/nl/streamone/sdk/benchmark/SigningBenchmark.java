@@ -0,0 +1,81 @@
+package nl.streamone.sdk.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import nl.streamone.sdk.HttpUrlConnectionRequest;
+import nl.streamone.sdk.RequestBase;
+import nl.streamone.sdk.RequestLineBuilder;
+
+/*
+ * The HMAC on its own, against a provider lookup and new key spec per call as it was,
+ * and the signed request line it ends up in
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SigningBenchmark {
+    private static final long TIMESTAMP = 1453046400000L;
+
+    private byte[] mKey;
+    private byte[] mMessage;
+    private RequestBase mRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        mKey = "gR92jURda7mEqiDzhcz2bC1FtIzS8wxe".getBytes("UTF-8");
+        mMessage = ("/api/item/view?api=3&format=json&authentication_type=application"
+                + "&application=APPLICATION&timestamp=1453046400&category=Category%20Two").getBytes("UTF-8");
+
+        mRequest = new HttpUrlConnectionRequest("api.streamonecloud.net");
+        mRequest.setCommand("item");
+        mRequest.setAction("view");
+        mRequest.getParameters().put("authentication_type", "application");
+        mRequest.getParameters().put("application", "APPLICATION");
+        mRequest.getParameters().put("account", "ACCOUNT");
+        mRequest.getArguments().put("category", "Category Two");
+        mRequest.getArguments().put("title", "Introducing Gmail Blue & more");
+    }
+
+    @Benchmark
+    public String hmacSha1() throws Exception {
+        return RequestBase.getHmacSha1(mKey, mMessage);
+    }
+
+    @Benchmark
+    public String hmacSha1Lookup() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(mKey, "HmacSHA1"));
+        byte[] bytes = mac.doFinal(mMessage);
+
+        StringBuffer hash = new StringBuffer();
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(0xFF & b);
+            if (hex.length() == 1) {
+                hash.append('0');
+            }
+            hash.append(hex);
+        }
+        return hash.toString();
+    }
+
+    /**
+     * What execute does before the transport gets it: the line, the signature and the URL
+     */
+    @Benchmark
+    public String signedUrl() throws Exception {
+        return RequestLineBuilder.forThread()
+                .build(mRequest, mRequest.getHostname(), mRequest.getPort(), TIMESTAMP)
+                .sign("gR92jURda7mEqiDzhcz2bC1FtIzS8wxe");
+    }
+}
@@ -0,0 +1,126 @@
+package nl.streamone.sdk.loadtest
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+/**
+    What to simulate, from the command line:
+
+    --clients 1000        virtual clients, each on its own thread like a device would be
+    --duration 60         seconds, after the ramp up
+    --ramp-up 10          seconds over which the clients start
+    --flows 0             flows per client, 0: until the duration is up
+    --think 0             ms a client waits between flows
+    --pages 3             item/view pages browsed per flow
+    --transport urlconnection | okhttp
+    --max-connections 0   sockets per host, 0: one per client, devices don't share a pool
+    --resilient           retries and hedging, see ResiliencePolicy
+    --latency 20          ms the stub takes per call
+    --jitter 10           ms, uniform on top of the latency
+    --error-rate 0.01     fraction of calls answered 503
+    --drop-rate 0.001     fraction of calls where the stub hangs up without a response
+    --bcrypt-cost 4       of the session/initialize salt, the API uses 12
+    --report-every 5      seconds between progress lines
+ */
+@Accessors
+class LoadProfile
+{
+    int clients = 100
+    int durationSeconds = 60
+    int rampUpSeconds = 10
+    int flowsPerClient = 0
+    int thinkMillis = 0
+    int pages = 3
+    String transport = 'urlconnection'
+    int maxConnections = 0
+    boolean resilient = false
+    int latencyMillis = 20
+    int jitterMillis = 10
+    double errorRate = 0.01
+    double dropRate = 0.001
+    // every virtual client computes its own challenge response; at the API's cost of 12 that
+    // is ~0.2s of CPU per flow, a few thousand devices' worth doesn't fit on one host
+    int bcryptCost = 4
+    int reportEverySeconds = 5
+
+    static def LoadProfile parse(String[] args)
+    {
+        val profile = new LoadProfile
+        var i = 0
+        while (i < args.length)
+        {
+            val name = args.get(i)
+            if ('--resilient'.equals(name))
+            {
+                profile.resilient = true
+                i = i + 1
+            } else {
+                if (i + 1 >= args.length)
+                {
+                    throw new IllegalArgumentException("Missing a value for " + name)
+                }
+                profile.set(name, args.get(i + 1))
+                i = i + 2
+            }
+        }
+        profile.check
+        return profile
+    }
+
+    private def void set(String name, String value)
+    {
+        switch (name)
+        {
+            case '--clients': clients = Integer.parseInt(value)
+            case '--duration': durationSeconds = Integer.parseInt(value)
+            case '--ramp-up': rampUpSeconds = Integer.parseInt(value)
+            case '--flows': flowsPerClient = Integer.parseInt(value)
+            case '--think': thinkMillis = Integer.parseInt(value)
+            case '--pages': pages = Integer.parseInt(value)
+            case '--transport': transport = value
+            case '--max-connections': maxConnections = Integer.parseInt(value)
+            case '--latency': latencyMillis = Integer.parseInt(value)
+            case '--jitter': jitterMillis = Integer.parseInt(value)
+            case '--error-rate': errorRate = Double.parseDouble(value)
+            case '--drop-rate': dropRate = Double.parseDouble(value)
+            case '--bcrypt-cost': bcryptCost = Integer.parseInt(value)
+            case '--report-every': reportEverySeconds = Integer.parseInt(value)
+            default: throw new IllegalArgumentException("Unknown option " + name)
+        }
+    }
+
+    def void check()
+    {
+        if (clients < 1)
+        {
+            throw new IllegalArgumentException("--clients must be at least 1")
+        }
+        if (!'urlconnection'.equals(transport) && !'okhttp'.equals(transport))
+        {
+            throw new IllegalArgumentException("--transport is urlconnection or okhttp, not " + transport)
+        }
+        if (errorRate < 0 || dropRate < 0 || errorRate + dropRate > 1)
+        {
+            throw new IllegalArgumentException("--error-rate and --drop-rate are fractions, together at most 1")
+        }
+        if (bcryptCost < 4 || bcryptCost > 31)
+        {
+            throw new IllegalArgumentException("--bcrypt-cost is 4 to 31")
+        }
+    }
+
+    /**
+        Sockets per host for the shared pool
+     */
+    def int getConnectionLimit()
+    {
+        return if (maxConnections > 0) maxConnections else clients
+    }
+
+    override toString()
+    {
+        String.format("%d clients over %s, %ds ramp up, %s, %d pages, think %d ms, stub %d+-%d ms, %.2f%% 503, %.2f%% dropped, bcrypt %d",
+            clients, if (flowsPerClient > 0) flowsPerClient + " flows each" else durationSeconds + "s",
+            rampUpSeconds, transport + (if (resilient) ' resilient' else ''), pages, thinkMillis,
+            latencyMillis, jitterMillis, errorRate * 100, dropRate * 100, bcryptCost)
+    }
+}
@@ -0,0 +1,341 @@
+package nl.streamone.sdk.loadtest
+
+import java.lang.management.ManagementFactory
+import java.lang.management.ThreadMXBean
+import java.util.List
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+import com.squareup.okhttp.ConnectionPool
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.ConnectionManager
+import nl.streamone.sdk.HttpUrlConnectionRequest
+import nl.streamone.sdk.HttpUrlConnectionTransport
+import nl.streamone.sdk.LatencyHistogram
+import nl.streamone.sdk.OkHttpRequest
+import nl.streamone.sdk.OkHttpTransport
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.RequestMetrics
+import nl.streamone.sdk.ResiliencePolicy
+import nl.streamone.sdk.Transport
+
+/**
+    One run of a {@link LoadProfile} against a {@link StubServer}: starts the virtual clients,
+    collects what they did and samples the process while they do it.
+
+    Everything the clients share is the run's own, not the SDK defaults: the metrics, the
+    transport with its pool, the resilience policy. A run never sees the previous one.
+ */
+class LoadRun
+{
+    static val KEEP_ALIVE_MINUTES = 5L
+    // devices don't share a stack, a 1000 clients at the default 1 MB would be a GB of address space
+    static val CLIENT_STACK_SIZE = 256 * 1024L
+
+    @Accessors(PUBLIC_GETTER)
+    val LoadProfile profile
+
+    @Accessors(PUBLIC_GETTER)
+    val StubServer server
+
+    /**
+        Per call: timings, bytes and statuses
+     */
+    @Accessors(PUBLIC_GETTER)
+    val RequestMetrics metrics = new RequestMetrics
+
+    /**
+        null unless the profile is resilient
+     */
+    @Accessors(PUBLIC_GETTER)
+    val ResiliencePolicy resilience
+
+    /**
+        Whole flows, auth to the last page, failed ones included
+     */
+    @Accessors(PUBLIC_GETTER)
+    val LatencyHistogram flowLatency = new LatencyHistogram
+
+    @Accessors(PUBLIC_GETTER)
+    val AtomicLong flowsOk = new AtomicLong
+
+    @Accessors(PUBLIC_GETTER)
+    val AtomicLong flowsFailed = new AtomicLong
+
+    /**
+        "command/action: reason" to how often
+     */
+    @Accessors(PUBLIC_GETTER)
+    val ConcurrentHashMap<String, AtomicLong> failures = new ConcurrentHashMap
+
+    val Transport transport
+    val List<Thread> clients = new CopyOnWriteArrayList
+    val ThreadMXBean threads = ManagementFactory.getThreadMXBean
+    val CountDownLatch clientsDone
+    val CountDownLatch released = new CountDownLatch(1)
+
+    volatile boolean running
+
+    new (LoadProfile profile, StubServer server)
+    {
+        this.profile = profile
+        this.server = server
+        this.clientsDone = new CountDownLatch(profile.clients)
+        this.resilience = if (profile.resilient) new ResiliencePolicy else null
+        if ('okhttp'.equals(profile.transport))
+        {
+            val okHttp = new OkHttpTransport
+            okHttp.client.connectionPool = new ConnectionPool(profile.connectionLimit,
+                TimeUnit.MINUTES.toMillis(KEEP_ALIVE_MINUTES))
+            transport = okHttp
+        } else {
+            transport = new HttpUrlConnectionTransport(new ConnectionManager(profile.connectionLimit))
+        }
+        if (threads.threadCpuTimeSupported)
+        {
+            threads.threadCpuTimeEnabled = true
+        }
+    }
+
+    def boolean isRunning()
+    {
+        return running
+    }
+
+    /**
+        A request like the app would make it, on the run's transport and metrics
+     */
+    def RequestBase newRequest()
+    {
+        val request = if ('okhttp'.equals(profile.transport))
+            new OkHttpRequest('localhost', server.port)
+            else new HttpUrlConnectionRequest('localhost', server.port)
+        request.scheme = 'http'
+        request.transport = transport
+        request.metrics = metrics
+        request.resilience = resilience
+        return request
+    }
+
+    /**
+        Starts the clients over the ramp up, calls the listener every reportEverySeconds,
+        returns once every client is done or the duration is up
+     */
+    def Sample execute((Sample, Sample)=>void progress)
+    {
+        running = true
+        val start = sample(System.nanoTime)
+        var last = start
+        val rampUpNanos = TimeUnit.SECONDS.toNanos(profile.rampUpSeconds)
+        val deadline = start.time + rampUpNanos + TimeUnit.SECONDS.toNanos(profile.durationSeconds)
+        val reportEvery = TimeUnit.SECONDS.toNanos(Math.max(1, profile.reportEverySeconds))
+        var nextReport = start.time + reportEvery
+
+        var started = 0
+        while (clientsDone.count > 0 && (profile.flowsPerClient > 0 || System.nanoTime < deadline))
+        {
+            val now = System.nanoTime
+            // spread the clients evenly over the ramp up
+            val due = if (rampUpNanos == 0) profile.clients
+                else Math.min(profile.clients, ((now - start.time) * profile.clients / rampUpNanos + 1) as int)
+            while (started < due)
+            {
+                startClient(started)
+                started++
+            }
+            if (now >= nextReport)
+            {
+                val current = sample(now)
+                progress?.apply(last, current)
+                last = current
+                // after a stall, e.g. a long GC, skip the lines that were due rather than print them at once
+                nextReport = now + reportEvery
+            }
+            server.forgetRequests
+            clientsDone.await(Math.min(100, Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextReport - now))),
+                TimeUnit.MILLISECONDS)
+        }
+
+        // let the flows in progress finish, they're part of the numbers
+        running = false
+        while (started < profile.clients)
+        {
+            // the duration was up before the ramp up was
+            clientsDone.countDown
+            started++
+        }
+        clientsDone.await
+        // the client threads are still there, so their allocations can be read
+        val end = sample(System.nanoTime)
+        released.countDown
+        server.forgetRequests
+        return end
+    }
+
+    private def void startClient(int index)
+    {
+        val thread = new Thread(null, new VirtualClient(index, this), 'client-' + index, CLIENT_STACK_SIZE)
+        thread.daemon = true
+        clients.add(thread)
+        thread.start
+    }
+
+    package def void recordFlow(boolean ok, long nanos)
+    {
+        flowLatency.record(nanos)
+        if (ok)
+        {
+            flowsOk.incrementAndGet
+        } else {
+            flowsFailed.incrementAndGet
+        }
+    }
+
+    package def void recordFailure(String call, String reason)
+    {
+        val key = call + ': ' + reason
+        var count = failures.get(key)
+        if (count == null)
+        {
+            val created = new AtomicLong
+            count = failures.putIfAbsent(key, created) ?: created
+        }
+        count.incrementAndGet
+    }
+
+    /**
+        Called on the client's thread when it is done, it waits for the others so the end sample
+        can still read its allocations
+     */
+    package def void clientDone()
+    {
+        clientsDone.countDown
+        try {
+            released.await
+        } catch (InterruptedException e) {
+            // exiting anyway
+        }
+    }
+
+    /**
+        The process and the client threads, now
+     */
+    def Sample sample(long now)
+    {
+        val sample = new Sample(now)
+        sample.flowsOk = flowsOk.get
+        sample.flowsFailed = flowsFailed.get
+        for (call : metrics.snapshot.values)
+        {
+            sample.calls = sample.calls + call.total.count
+        }
+        sample.clients = clients.size
+        sample.threads = threads.threadCount
+        sample.peakThreads = threads.peakThreadCount
+
+        // HotSpot and OpenJ9 count the bytes allocated per thread, Android doesn't
+        val counting = if (threads instanceof com.sun.management.ThreadMXBean) threads as com.sun.management.ThreadMXBean
+        if (counting != null && counting.threadAllocatedMemorySupported)
+        {
+            if (!counting.threadAllocatedMemoryEnabled)
+            {
+                counting.threadAllocatedMemoryEnabled = true
+            }
+            val ids = newLongArrayOfSize(clients.size)
+            var i = 0
+            for (client : clients)
+            {
+                if (i < ids.length)
+                {
+                    ids.set(i, client.id)
+                    i = i + 1
+                }
+            }
+            sample.clientAllocatedBytes = 0
+            for (bytes : counting.getThreadAllocatedBytes(ids))
+            {
+                sample.clientAllocatedBytes = sample.clientAllocatedBytes + Math.max(0, bytes)
+            }
+        }
+        if (threads.threadCpuTimeEnabled)
+        {
+            for (client : clients)
+            {
+                sample.clientCpuNanos = sample.clientCpuNanos + Math.max(0, threads.getThreadCpuTime(client.id))
+            }
+        }
+
+        for (gc : ManagementFactory.getGarbageCollectorMXBeans)
+        {
+            sample.gcCount = sample.gcCount + Math.max(0, gc.collectionCount)
+            sample.gcMillis = sample.gcMillis + Math.max(0, gc.collectionTime)
+        }
+        sample.heapUsedBytes = ManagementFactory.getMemoryMXBean.heapMemoryUsage.used
+        return sample
+    }
+}
+
+/**
+    Totals at one point in time, the rates are between two of them
+ */
+@Accessors
+class Sample
+{
+    val long time
+    long flowsOk
+    long flowsFailed
+    long calls
+    int clients
+    int threads
+    int peakThreads
+    /**
+        -1 when the JVM doesn't count allocations per thread
+     */
+    long clientAllocatedBytes = -1
+    long clientCpuNanos
+    long gcCount
+    long gcMillis
+    long heapUsedBytes
+
+    new (long time)
+    {
+        this.time = time
+    }
+
+    def long getFlows()
+    {
+        return flowsOk + flowsFailed
+    }
+
+    def double secondsSince(Sample earlier)
+    {
+        return Math.max(1, time - earlier.time) / 1e9
+    }
+
+    def double flowsPerSecond(Sample earlier)
+    {
+        return (flows - earlier.flows) / secondsSince(earlier)
+    }
+
+    def double callsPerSecond(Sample earlier)
+    {
+        return (calls - earlier.calls) / secondsSince(earlier)
+    }
+
+    /**
+        By the client threads, -1 when not counted
+     */
+    def double allocatedMegabytesPerSecond(Sample earlier)
+    {
+        if (clientAllocatedBytes < 0 || earlier.clientAllocatedBytes < 0)
+        {
+            return -1
+        }
+        return (clientAllocatedBytes - earlier.clientAllocatedBytes) / 1048576.0 / secondsSince(earlier)
+    }
+}
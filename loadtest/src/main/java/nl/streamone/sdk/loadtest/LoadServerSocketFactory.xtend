@@ -0,0 +1,66 @@
+package nl.streamone.sdk.loadtest
+
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketAddress
+
+import javax.net.ServerSocketFactory
+
+/**
+    For MockWebServer standing in for the API, here and in the benchmarks.
+
+    MockWebServer writes the headers and the body in two segments, with Nagle and the client's
+    delayed ACK that's 40 ms on every call. And it asks for a backlog of 50, a ramp up of a few
+    thousand clients would see refused connections the real API wouldn't give.
+
+    server.serverSocketFactory = new LoadServerSocketFactory
+ */
+class LoadServerSocketFactory extends ServerSocketFactory
+{
+    static val BACKLOG = 4096
+
+    override createServerSocket() throws IOException
+    {
+        return new ServerSocket {
+            override bind(SocketAddress endpoint, int backlog) throws IOException
+            {
+                super.bind(endpoint, Math.max(backlog, BACKLOG))
+            }
+
+            override accept() throws IOException
+            {
+                val Socket socket = super.accept
+                socket.tcpNoDelay = true
+                return socket
+            }
+        }
+    }
+
+    override createServerSocket(int port) throws IOException
+    {
+        return createServerSocket(port, BACKLOG, null)
+    }
+
+    override createServerSocket(int port, int backlog) throws IOException
+    {
+        return createServerSocket(port, backlog, null)
+    }
+
+    /**
+        Bound like ServerSocketFactory.getDefault binds them, a null address is any address
+     */
+    override createServerSocket(int port, int backlog, InetAddress address) throws IOException
+    {
+        val socket = createServerSocket
+        try {
+            socket.bind(new InetSocketAddress(address, port), backlog)
+        } catch (IOException e) {
+            socket.close
+            throw e
+        }
+        return socket
+    }
+}
@@ -0,0 +1,133 @@
+package nl.streamone.sdk.loadtest
+
+import java.io.PrintStream
+
+import nl.streamone.sdk.PlatformAdapter
+
+/**
+    Simulates devices going through auth and browsing, to size the backend and to find where the
+    client gives out first: ./gradlew :loadtest:run -Pargs="--clients 2000 --duration 120"
+
+    See {@link LoadProfile} for the options. Progress goes to stdout every few seconds, the
+    report at the end: throughput, latency percentiles for whole flows and per call, failures
+    by call, threads, and what the client threads allocated and spent on the CPU.
+ */
+class LoadTest
+{
+    def static void main(String[] args)
+    {
+        var LoadProfile profile = null
+        try {
+            profile = LoadProfile.parse(args)
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.message)
+            System.exit(2)
+        }
+        // a failed call is a data point here, not something to log
+        PlatformAdapter.install(new QuietPlatformAdapter)
+
+        val run = run(profile, System.out)
+        System.exit(if (run.flowsOk.get > 0) 0 else 1)
+    }
+
+    /**
+        Starts the stub, runs the profile against it and prints the report to out
+     */
+    static def LoadRun run(LoadProfile profile, PrintStream out)
+    {
+        val server = new StubServer(profile)
+        server.start
+        try {
+            out.println(profile)
+            val run = new LoadRun(profile, server)
+            val start = run.sample(System.nanoTime)
+            val end = run.execute [ last, current |
+                out.println(progress(run, start, last, current))
+            ]
+            report(run, start, end, out)
+            return run
+        } finally {
+            server.shutdown
+        }
+    }
+
+    private static def String progress(LoadRun run, Sample start, Sample last, Sample current)
+    {
+        val flow = run.flowLatency.snapshot
+        val allocated = current.allocatedMegabytesPerSecond(last)
+        String.format("%5.0fs  clients %5d  flows %7.1f/s (%d failed)  calls %8.1f/s  flow p50 %.0f p95 %.0f ms  threads %d  alloc %s  heap %d MB",
+            current.secondsSince(start), current.clients, current.flowsPerSecond(last), current.flowsFailed,
+            current.callsPerSecond(last), flow.percentileMillis(0.5), flow.percentileMillis(0.95), current.threads,
+            if (allocated < 0) 'n/a' else String.format('%.1f MB/s', allocated), current.heapUsedBytes / 1048576)
+    }
+
+    static def void report(LoadRun run, Sample start, Sample end, PrintStream out)
+    {
+        val seconds = end.secondsSince(start)
+        val flows = Math.max(1, end.flows - start.flows)
+
+        out.println
+        out.println(String.format("Ran %.1f s with %d clients", seconds, end.clients))
+        out.println(String.format("Flows   %d ok, %d failed, %.1f flows/s", end.flowsOk, end.flowsFailed,
+            end.flowsPerSecond(start)))
+        out.println(String.format("Calls   %d, %.1f calls/s", end.calls, end.callsPerSecond(start)))
+        out.println("Flow    " + run.flowLatency.snapshot)
+
+        out.println
+        for (entry : run.metrics.snapshot.entrySet)
+        {
+            val call = entry.value
+            out.println(String.format("%-20s %s", entry.key, call))
+            out.println(String.format("%-20s connect %s", '', call.connect))
+            out.println(String.format("%-20s ttfb    %s", '', call.ttfb))
+        }
+
+        if (!run.failures.isEmpty)
+        {
+            out.println
+            for (failure : run.failures.entrySet.sortBy[ key ])
+            {
+                out.println(String.format("%-40s %d", failure.key, failure.value.get))
+            }
+        }
+
+        val server = run.server
+        out.println
+        out.println(String.format("Stub    %d served, %d answered 503, %d dropped", server.served.get,
+            server.injectedErrors.get, server.injectedDrops.get))
+        if (run.resilience != null)
+        {
+            out.println(String.format("Retry   %d retries, %d hedges, %d denied by the budget",
+                run.resilience.retryCount, run.resilience.hedgeCount, run.resilience.deniedCount))
+        }
+        out.println(String.format("Threads %d peak, %d clients, %d live at the end", end.peakThreads, end.clients,
+            end.threads))
+        if (end.clientAllocatedBytes >= 0)
+        {
+            out.println(String.format("Alloc   %.1f MB by the clients, %.1f MB/s, %.1f KB per flow",
+                (end.clientAllocatedBytes - start.clientAllocatedBytes) / 1048576.0, end.allocatedMegabytesPerSecond(start),
+                (end.clientAllocatedBytes - start.clientAllocatedBytes) / 1024.0 / flows))
+        } else {
+            out.println("Alloc   not counted by this JVM")
+        }
+        out.println(String.format("CPU     %.1f s by the clients, %.2f ms per flow", (end.clientCpuNanos - start.clientCpuNanos) / 1e9,
+            (end.clientCpuNanos - start.clientCpuNanos) / 1e6 / flows))
+        out.println(String.format("GC      %d collections, %d ms", end.gcCount - start.gcCount, end.gcMillis - start.gcMillis))
+    }
+}
+
+/**
+    Errors only, the SDK logs a line for every failed call
+ */
+package class QuietPlatformAdapter extends PlatformAdapter
+{
+    val PlatformAdapter delegate = new nl.streamone.sdk.JvmPlatformAdapter
+
+    override log(int priority, String tag, String message, Throwable tr)
+    {
+        if (priority >= PlatformAdapter.ERROR)
+        {
+            delegate.log(priority, tag, message, tr)
+        }
+    }
+}
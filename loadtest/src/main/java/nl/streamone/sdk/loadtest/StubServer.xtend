@@ -0,0 +1,155 @@
+package nl.streamone.sdk.loadtest
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.mockwebserver.RecordedRequest
+import com.squareup.okhttp.mockwebserver.SocketPolicy
+
+import java.io.IOException
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicLong
+import java.util.logging.Level
+import java.util.logging.Logger
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+/**
+    The API, as far as the flow goes: application/view, session/initialize, session/create and
+    item/view, with a fixed latency plus jitter per call and injected failures.
+
+    It signs nothing and checks no signatures, the point is what the client does.
+    MockWebServer serves every connection on a thread of its own, so the latency is slept there
+    and only holds up that connection.
+ */
+class StubServer
+{
+    public static val APPLICATION = 'APPLICATION'
+    public static val PSK = 'AAAAABBBBBCCCCCDDDDD000000111111222222'
+    public static val USER = 'user'
+    public static val PASSWORD = 'password'
+
+    static val HEADER = '"header":{"status":0,"statusmessage":"OK","apiversion":3,"cacheable":%s,"count":%d,"timezone":"Europe/Amsterdam"}'
+
+    val LoadProfile profile
+    val MockWebServer server = new MockWebServer
+    val String applicationView
+    val String sessionInitialize
+    val String sessionCreate
+    val String itemPage
+
+    @Accessors(PUBLIC_GETTER)
+    val AtomicLong served = new AtomicLong
+    @Accessors(PUBLIC_GETTER)
+    val AtomicLong injectedErrors = new AtomicLong
+    @Accessors(PUBLIC_GETTER)
+    val AtomicLong injectedDrops = new AtomicLong
+
+    long forgotten
+
+    new (LoadProfile profile)
+    {
+        this.profile = profile
+        applicationView = '{' + String.format(HEADER, true, 1) + ',"body":[{"id":"' + APPLICATION
+            + '","name":"Application Title","description":"Application Description","datecreated":"2015-09-28 09:00:02","datemodified":"2015-09-28 09:00:02","active":true,"iplock":null,"timezone":"Europe/Amsterdam"}]}'
+        sessionInitialize = '{' + String.format(HEADER, false, 1) + ',"body":{"challenge":"coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6","salt":"$2y$'
+            + String.format('%02d', profile.bcryptCost) + '$baztaaydu13s4ah6y6pegt","needsv2hash":false}}'
+        sessionCreate = '{' + String.format(HEADER, false, 1)
+            + ',"body":{"id":"sC5tGogRgBow","key":"gR92jURda7mEqiDzhcz2bC1FtIzS8wxe","timeout":3600,"user":"USER"}}'
+        itemPage = itemPage(10)
+    }
+
+    private static def String itemPage(int count)
+    {
+        val page = new StringBuilder('{').append(String.format(HEADER, true, count)).append(',"body":[')
+        for (var i = 0; i < count; i++)
+        {
+            if (i > 0)
+            {
+                page.append(',')
+            }
+            page.append('{"id":"item').append(i)
+                .append('","title":"Item Title","description":"Item Description","account":"ACCOUNT","playoutlink":"https://content.streamonecloud.net/item')
+                .append(i).append('","selectedthumbnail":{"id":"thumb').append(i)
+                .append('","url":"https://content.streamonecloud.net/thumb').append(i).append('.jpg","width":1280,"height":720}}')
+        }
+        return page.append(']}').toString
+    }
+
+    def void start() throws IOException
+    {
+        // it logs every request, and every idle keep-alive socket the clients close
+        Logger.getLogger(MockWebServer.name).level = Level.SEVERE
+        server.serverSocketFactory = new LoadServerSocketFactory
+        server.dispatcher = [ RecordedRequest request | respond(request) ]
+        server.start
+    }
+
+    def void shutdown() throws IOException
+    {
+        server.shutdown
+    }
+
+    def int getPort()
+    {
+        return server.port
+    }
+
+    /**
+        MockWebServer keeps every request it saw, a long run would fill the heap with them
+     */
+    def void forgetRequests()
+    {
+        try {
+            while (forgotten < server.requestCount)
+            {
+                server.takeRequest
+                forgotten++
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread.interrupt
+        }
+    }
+
+    private def MockResponse respond(RecordedRequest request)
+    {
+        val random = ThreadLocalRandom.current
+        var delay = profile.latencyMillis
+        if (profile.jitterMillis > 0)
+        {
+            delay = delay + random.nextInt(profile.jitterMillis + 1)
+        }
+        if (delay > 0)
+        {
+            try {
+                Thread.sleep(delay)
+            } catch (InterruptedException e) {
+                // shutting down
+                Thread.currentThread.interrupt
+            }
+        }
+        served.incrementAndGet
+
+        val roll = random.nextDouble
+        if (roll < profile.errorRate)
+        {
+            injectedErrors.incrementAndGet
+            return new MockResponse().setResponseCode(503).setBody('Service Unavailable')
+        }
+        if (roll < profile.errorRate + profile.dropRate)
+        {
+            injectedDrops.incrementAndGet
+            return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+        }
+
+        val path = request.path
+        val body = if (path.contains('api/application/view')) applicationView
+            else if (path.contains('api/session/initialize')) sessionInitialize
+            else if (path.contains('api/session/create')) sessionCreate
+            else if (path.contains('api/item/view')) itemPage
+        if (body == null)
+        {
+            return new MockResponse().setResponseCode(404)
+        }
+        return new MockResponse().setHeader('Content-Type', 'application/json; charset=utf-8').setBody(body)
+    }
+}
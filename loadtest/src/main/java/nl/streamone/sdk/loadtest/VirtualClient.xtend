@@ -0,0 +1,155 @@
+package nl.streamone.sdk.loadtest
+
+import java.util.Map
+
+import org.json.JSONException
+import org.json.JSONObject
+
+import nl.streamone.sdk.ChallengeCrypto
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    One device: application/view, session/initialize, the challenge response, session/create,
+    then a few pages of item/view with the session. Over and over, on its own thread, with the
+    same request classes and the same synchronous execute the app uses.
+
+    A flow stops at the first call that fails; the failure is counted against that call.
+ */
+class VirtualClient implements Runnable
+{
+    val int index
+    val LoadRun run
+
+    new (int index, LoadRun run)
+    {
+        this.index = index
+        this.run = run
+    }
+
+    override run()
+    {
+        val profile = run.profile
+        var flows = 0
+        try {
+            while (run.isRunning && (profile.flowsPerClient == 0 || flows < profile.flowsPerClient))
+            {
+                val start = System.nanoTime
+                val ok = flow
+                run.recordFlow(ok, System.nanoTime - start)
+                flows++
+                if (profile.thinkMillis > 0)
+                {
+                    Thread.sleep(profile.thinkMillis)
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } finally {
+            run.clientDone
+        }
+    }
+
+    /**
+        true when every call of the flow succeeded
+     */
+    def boolean flow()
+    {
+        val application = call('application', 'view', StubServer.PSK, null,
+            #{ 'application' -> StubServer.APPLICATION, 'limit' -> '3' })
+        if (application == null)
+        {
+            return false
+        }
+
+        val initialized = call('session', 'initialize', StubServer.PSK, null,
+            #{ 'user' -> StubServer.USER, 'userip' -> '127.0.0.' + (index % 250 + 2) })
+        if (initialized == null)
+        {
+            return false
+        }
+
+        val challenge = initialized.getJSONObject('body')
+        val response = ChallengeCrypto.getChallengeResponse(StubServer.PASSWORD.bytes,
+            challenge.getString('challenge').bytes, challenge.getString('salt').bytes)
+        val created = call('session', 'create', StubServer.PSK, null,
+            #{ 'challenge' -> challenge.getString('challenge'), 'response' -> response })
+        if (created == null)
+        {
+            return false
+        }
+
+        val session = created.getJSONObject('body')
+        for (var page = 0; page < run.profile.pages; page++)
+        {
+            val items = call('item', 'view', StubServer.PSK + session.getString('key'), session.getString('id'),
+                #{ 'offset' -> Integer.toString(page * 10), 'limit' -> '10' })
+            if (items == null)
+            {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+        The parsed body, null when the call failed: a network error, a status other than 200,
+        or an API error in the header
+     */
+    private def JSONObject call(String command, String action, String signingKey, String session,
+        Map<String, String> arguments)
+    {
+        val request = run.newRequest
+        request.command = command
+        request.action = action
+        request.signingKey = signingKey
+        request.parameters.put('authentication_type', 'application')
+        request.parameters.put('application', StubServer.APPLICATION)
+        if (session != null)
+        {
+            request.parameters.put('session', session)
+        }
+        request.arguments.putAll(arguments)
+
+        val result = new FlowResponse
+        request.execute(result)
+        if (!result.ok)
+        {
+            run.recordFailure(command + '/' + action, result.reason)
+            return null
+        }
+        try {
+            val json = new JSONObject(result.json)
+            if (json.getJSONObject('header').getInt('status') != 0)
+            {
+                run.recordFailure(command + '/' + action, 'api status ' + json.getJSONObject('header').getInt('status'))
+                return null
+            }
+            return json
+        } catch (JSONException e) {
+            run.recordFailure(command + '/' + action, 'bad json')
+            return null
+        }
+    }
+}
+
+/**
+    Keeps the outcome for the client thread, execute is synchronous here
+ */
+package class FlowResponse extends Response
+{
+    package boolean ok
+    package String reason
+
+    override onSuccess(RequestBase request)
+    {
+        ok = json != null
+        reason = if (ok) null else 'empty body'
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        ok = false
+        reason = if (e != null) e.class.simpleName else 'http ' + code
+    }
+}
@@ -0,0 +1,63 @@
+package nl.streamone.sdk.loadtest
+
+import java.io.ByteArrayOutputStream
+import java.io.PrintStream
+
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ * A few clients against the stub, with and without injected failures
+ */
+class LoadRunTest {
+
+    private def LoadProfile profile(String... args) {
+        val all = newArrayList('--clients', '4', '--flows', '3', '--ramp-up', '0', '--pages', '2',
+            '--latency', '0', '--jitter', '0', '--report-every', '1')
+        all.addAll(args)
+        LoadProfile.parse(all)
+    }
+
+    private def LoadRun run(LoadProfile profile) {
+        LoadTest.run(profile, new PrintStream(new ByteArrayOutputStream))
+    }
+
+    @Test
+    public def void every_client_runs_its_flows() {
+        val run = run(profile('--error-rate', '0', '--drop-rate', '0'))
+
+        assertEquals(12, run.flowsOk.get)
+        assertEquals(0, run.flowsFailed.get)
+        assertEquals(12, run.flowLatency.snapshot.count)
+        // three calls to get a session, then the pages
+        val calls = run.metrics.snapshot
+        assertEquals(12, calls.get('session/create').total.count)
+        assertEquals(24, calls.get('item/view').total.count)
+        assertEquals(12 * 5, run.server.served.get)
+    }
+
+    @Test
+    public def void injected_errors_fail_the_flow_at_the_first_call() {
+        val run = run(profile('--error-rate', '1', '--drop-rate', '0'))
+
+        assertEquals(0, run.flowsOk.get)
+        assertEquals(12, run.flowsFailed.get)
+        assertEquals(12, run.failures.get('application/view: http 503').get)
+        assertEquals(12, run.metrics.snapshot.get('application/view').getStatusCount(5))
+        assertNull(run.metrics.snapshot.get('session/initialize'))
+    }
+
+    @Test
+    public def void dropped_connections_are_network_errors() {
+        val run = run(profile('--error-rate', '0', '--drop-rate', '1', '--transport', 'okhttp'))
+
+        assertEquals(12, run.flowsFailed.get)
+        assertEquals(12, run.metrics.snapshot.get('application/view').networkErrorCount)
+        assertEquals(12, run.server.injectedDrops.get)
+    }
+
+    @Test(expected = IllegalArgumentException)
+    public def void rejects_unknown_options() {
+        LoadProfile.parse(#['--clients', '10', '--users', '10'])
+    }
+}
@@ -0,0 +1,375 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.net.InetAddress
+import java.net.Socket
+import java.net.SocketException
+import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+import javax.net.ssl.HttpsURLConnection
+import javax.net.ssl.SSLSocketFactory
+
+/**
+    HttpURLConnection only hands a socket back to its keep-alive pool when the body
+    (or the error body) has been read to the end and the stream is closed.
+    This class makes sure that happens, caps the number of sockets per host and
+    keeps the connection to the API host warm.
+
+    Reuse can only be counted for https, every new TLS socket is a new handshake.
+
+    The platform pool itself is process wide: a manager raises http.maxConnections, the number
+    of idle sockets kept per host, to its own cap so they aren't closed as soon as they're back.
+    It never lowers it, another manager in the process may need more.
+ */
+class ConnectionManager
+{
+    static val TAG = "ConnectionManager"
+
+    /**
+        Same as the platform default for http.maxConnections
+     */
+    public static val DEFAULT_MAX_CONNECTIONS_PER_HOST = 5
+
+    /**
+        Draining more than this costs more than a new handshake
+     */
+    static val MAX_DRAIN_BYTES = 64 * 1024
+
+    static val drainBuffers = new ThreadLocal<byte[]> {
+        override protected initialValue() {
+            newByteArrayOfSize(4096)
+        }
+    }
+
+    static ConnectionManager sDefault
+
+    val int maxConnectionsPerHost
+    val ConcurrentHashMap<String, Semaphore> permits = new ConcurrentHashMap
+
+    /**
+        The permit each open connection holds. After a redirect its URL is another host's,
+        the permit goes back to the host it was opened for.
+     */
+    val ConcurrentHashMap<HttpURLConnection, Semaphore> leases = new ConcurrentHashMap
+    val AtomicLong connectionCount = new AtomicLong
+    val AtomicLong secureConnectionCount = new AtomicLong
+    val CountingSSLSocketFactory sslSocketFactory
+
+    ScheduledExecutorService warmer
+    ScheduledFuture<?> warmTask
+
+    new ()
+    {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST)
+    }
+
+    new (int maxConnectionsPerHost)
+    {
+        this.maxConnectionsPerHost = maxConnectionsPerHost
+        raiseIdleConnections(maxConnectionsPerHost)
+        // NOTE: the platform pool is keyed on the socket factory too, so always hand out the same instance
+        sslSocketFactory = new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory)
+    }
+
+    static synchronized def ConnectionManager getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new ConnectionManager
+        }
+        return sDefault
+    }
+
+    def HttpURLConnection open(URL url) throws IOException
+    {
+        return open(url, RequestBase.DEFAULT_TIMEOUT)
+    }
+
+    /**
+        Waits up to timeoutMillis while the host already has maxConnectionsPerHost connections in use,
+        then fails. Every successful open must be paired with a {@link #release}.
+     */
+    def HttpURLConnection open(URL url, int timeoutMillis) throws IOException
+    {
+        val permit = permitsFor(url)
+        try {
+            if (!permit.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                throw new IOException("Timed out waiting for a connection to " + url.host)
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread.interrupt
+            throw new IOException("Interrupted while waiting for a connection to " + url.host)
+        }
+
+        try {
+            val connection = url.openConnection as HttpURLConnection
+            if (connection instanceof HttpsURLConnection)
+            {
+                (connection as HttpsURLConnection).setSSLSocketFactory(sslSocketFactory)
+                secureConnectionCount.incrementAndGet
+            }
+            connection.setRequestProperty('Connection', 'keep-alive')
+            connectionCount.incrementAndGet
+            leases.put(connection, permit)
+            return connection
+        } catch (IOException e) {
+            permit.release
+            throw e
+        }
+    }
+
+    /**
+        Drains and closes the body so the socket can be recycled, then frees the slot for the host.
+
+        Only pass disconnect=false once the response code was read: on a connection that failed,
+        was aborted or never sent, asking for the code sends the request (again). With
+        disconnect=true the connection is closed without touching it.
+     */
+    def void release(HttpURLConnection connection, boolean disconnect)
+    {
+        if (connection == null)
+        {
+            return
+        }
+
+        try {
+            if (disconnect || !drain(connection))
+            {
+                connection.disconnect
+            }
+        } finally {
+            leases.remove(connection)?.release
+        }
+    }
+
+    /**
+        Reads what is left of the body, or of the error body on 4xx/5xx, of a connection whose
+        response code was read. Returns false if the socket is not worth keeping.
+     */
+    static def boolean drain(HttpURLConnection connection)
+    {
+        var InputStream stream = null
+        try {
+            stream = if (connection.responseCode >= HttpURLConnection.HTTP_BAD_REQUEST)
+                connection.errorStream else connection.inputStream
+
+            if (stream == null)
+            {
+                return true
+            }
+
+            val buffer = drainBuffers.get
+            var total = 0
+            var read = stream.read(buffer)
+            while (read != -1 && total < MAX_DRAIN_BYTES)
+            {
+                total = total + read
+                read = stream.read(buffer)
+            }
+            return read == -1
+        } catch (IOException e) {
+            // already closed by the reader, or the socket broke; nothing to recycle either way
+            return false
+        } finally {
+            try {
+                stream?.close
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+        Pings the host every intervalMillis so the server doesn't time out our idle keep-alive socket.
+        Only do this while a screen that talks to the API is visible.
+     */
+    synchronized def void keepWarm(URL url, long intervalMillis)
+    {
+        stopKeepWarm
+        if (warmer == null)
+        {
+            warmer = Executors.newSingleThreadScheduledExecutor [ runnable |
+                val thread = new Thread(runnable, TAG + '-warmer')
+                thread.daemon = true
+                thread
+            ]
+        }
+        warmTask = warmer.scheduleWithFixedDelay([| ping(url) ], 0, intervalMillis, TimeUnit.MILLISECONDS)
+    }
+
+    synchronized def void stopKeepWarm()
+    {
+        warmTask?.cancel(false)
+        warmTask = null
+    }
+
+    /**
+        A HEAD round trip, opens (or refreshes) a pooled socket to the host
+     */
+    def void ping(URL url)
+    {
+        var HttpURLConnection connection = null
+        var answered = false
+        try {
+            connection = open(url)
+            connection.requestMethod = 'HEAD'
+            connection.responseCode
+            answered = true
+        } catch (IOException e) {
+            Logger.w(TAG, "Unable to warm up " + url.host, e)
+        } finally {
+            release(connection, !answered)
+        }
+    }
+
+    def int getMaxConnectionsPerHost()
+    {
+        return maxConnectionsPerHost
+    }
+
+    /**
+        Connections handed out by {@link #open}
+     */
+    def long getConnectionCount()
+    {
+        return connectionCount.get
+    }
+
+    /**
+        TLS sockets created, i.e. full handshakes
+     */
+    def long getHandshakeCount()
+    {
+        return sslSocketFactory.socketCount
+    }
+
+    /**
+        https connections that went over an already established socket
+     */
+    def long getReuseCount()
+    {
+        return Math.max(0, secureConnectionCount.get - sslSocketFactory.socketCount)
+    }
+
+    private static synchronized def void raiseIdleConnections(int max)
+    {
+        var current = 0
+        try {
+            current = Integer.parseInt(System.getProperty('http.maxConnections', '0'))
+        } catch (NumberFormatException e) {
+            // unset as far as we're concerned
+        }
+        if (max > current)
+        {
+            System.setProperty('http.maxConnections', Integer.toString(max))
+        }
+    }
+
+    private def Semaphore permitsFor(URL url)
+    {
+        val key = url.host + ':' + url.port
+        var permit = permits.get(key)
+        if (permit == null)
+        {
+            val fresh = new Semaphore(maxConnectionsPerHost, true)
+            permit = permits.putIfAbsent(key, fresh) ?: fresh
+        }
+        return permit
+    }
+}
+
+/**
+    Counts every socket the platform asks for, which is the only way to see a handshake from here.
+    Also times the handshake for the {@link RequestMetrics} of the call that asked.
+ */
+package class CountingSSLSocketFactory extends SSLSocketFactory
+{
+    val SSLSocketFactory delegate
+    val AtomicLong count = new AtomicLong
+
+    new (SSLSocketFactory delegate)
+    {
+        this.delegate = delegate
+    }
+
+    def long getSocketCount()
+    {
+        return count.get
+    }
+
+    override getDefaultCipherSuites()
+    {
+        delegate.defaultCipherSuites
+    }
+
+    override getSupportedCipherSuites()
+    {
+        delegate.supportedCipherSuites
+    }
+
+    /**
+        Unconnected, TCP and the handshake would be one connect. Like SSLSocketFactory's own this
+        refuses, the JDK's HttpsURLConnection then connects a plain socket and layers TLS over it
+     */
+    override createSocket() throws IOException
+    {
+        val refused = new SocketException("Unconnected sockets not implemented")
+        refused.initCause(new UnsupportedOperationException)
+        throw refused
+    }
+
+    override createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException
+    {
+        count.incrementAndGet
+        timed(delegate.createSocket(socket, host, port, autoClose))
+    }
+
+    /**
+        Layered over a connected socket, so the handshake is all that's left. It is started by the
+        connection once it configured the socket, the transport takes the time until connect returns.
+        On the caller's thread, unlike a HandshakeCompletedListener that may not have run by then.
+     */
+    private def Socket timed(Socket socket)
+    {
+        val trace = RequestMetrics.currentTrace
+        if (trace != null && trace.tlsStart == 0)
+        {
+            trace.tlsStart = System.nanoTime
+        }
+        return socket
+    }
+
+    override createSocket(String host, int port) throws IOException
+    {
+        count.incrementAndGet
+        delegate.createSocket(host, port)
+    }
+
+    override createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+    {
+        count.incrementAndGet
+        delegate.createSocket(host, port, localHost, localPort)
+    }
+
+    override createSocket(InetAddress host, int port) throws IOException
+    {
+        count.incrementAndGet
+        delegate.createSocket(host, port)
+    }
+
+    override createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+    {
+        count.incrementAndGet
+        delegate.createSocket(address, port, localAddress, localPort)
+    }
+}
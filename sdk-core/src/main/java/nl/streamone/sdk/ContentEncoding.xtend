@@ -0,0 +1,113 @@
+package nl.streamone.sdk
+
+import java.io.BufferedInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.nio.charset.Charset
+import java.util.zip.GZIPInputStream
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+
+/**
+    What the transports need to negotiate compression and decode the body as it streams in.
+
+    Both transports ask for gzip or deflate themselves instead of leaving it to the platform
+    (HttpURLConnection and OkHttp only do gzip, and hide it), so we can count what it saved,
+    see {@link CallSnapshot#getBytesSaved}.
+ */
+class ContentEncoding
+{
+    public static val ACCEPT_ENCODING = "gzip, deflate"
+
+    /**
+        JSON without a charset is UTF-8
+     */
+    public static val DEFAULT_CHARSET = "UTF-8"
+
+    static val BUFFER_SIZE = 8192
+
+    /**
+        Decodes while the caller reads, nothing is inflated up front
+     */
+    static def InputStream decode(InputStream in, String contentEncoding) throws IOException
+    {
+        if (contentEncoding == null)
+        {
+            return in
+        }
+        val encoding = contentEncoding.trim.toLowerCase
+        val gzip = 'gzip'.equals(encoding) || 'x-gzip'.equals(encoding)
+        if (!gzip && !'deflate'.equals(encoding))
+        {
+            // identity, or something we didn't ask for
+            return in
+        }
+
+        val buffered = new BufferedInputStream(in, BUFFER_SIZE)
+        buffered.mark(2)
+        val first = buffered.read
+        val second = buffered.read
+        buffered.reset
+        if (first == -1)
+        {
+            // e.g. a 204 or an empty error body, there's no header to read
+            return buffered
+        }
+        if (gzip)
+        {
+            return new GZIPInputStream(buffered, BUFFER_SIZE)
+        }
+        return inflate(buffered, first, second)
+    }
+
+    /**
+        "deflate" should be zlib wrapped, some servers send it raw; the zlib header tells them apart
+     */
+    private static def InputStream inflate(InputStream in, int cmf, int flg)
+    {
+        val zlib = flg != -1 && cmf.bitwiseAnd(0x0f) == 8 && (cmf * 256 + flg) % 31 == 0
+        return new InflaterInputStream(in, new Inflater(!zlib), BUFFER_SIZE) {
+            override close() throws IOException {
+                try {
+                    super.close
+                } finally {
+                    // we brought our own Inflater, its native memory is ours to free
+                    inf.end
+                }
+            }
+        }
+    }
+
+    /**
+        The charset parameter of a Content-Type, DEFAULT_CHARSET when absent or unsupported
+     */
+    static def String charsetOf(String contentType)
+    {
+        if (contentType == null)
+        {
+            return DEFAULT_CHARSET
+        }
+        for (parameter : contentType.split(';'))
+        {
+            val pair = parameter.trim
+            if (pair.regionMatches(true, 0, 'charset=', 0, 8))
+            {
+                var charset = pair.substring(8).trim
+                if (charset.length >= 2 && charset.startsWith('"') && charset.endsWith('"'))
+                {
+                    charset = charset.substring(1, charset.length - 1)
+                }
+                try {
+                    if (Charset.isSupported(charset))
+                    {
+                        return charset
+                    }
+                } catch (IllegalArgumentException e) {
+                    // illegal charset name
+                }
+                return DEFAULT_CHARSET
+            }
+        }
+        return DEFAULT_CHARSET
+    }
+}
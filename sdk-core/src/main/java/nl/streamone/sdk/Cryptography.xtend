@@ -0,0 +1,16 @@
+package nl.streamone.sdk
+
+class Cryptography
+{
+    /**
+    password_hash := crypt(md5(password), salt)
+    challenge_hash := sha256(sha256(password_hash) + challenge)
+    response := base64encode(challenge_hash (xor) password_hash)
+
+    See ChallengeCrypto, which can also write into a buffer of your own.
+     */
+    public static def String getChallengeResponse(byte[] password, byte[] challenge, byte[] salt)
+    {
+        return ChallengeCrypto.getChallengeResponse(password, challenge, salt)
+    }
+}
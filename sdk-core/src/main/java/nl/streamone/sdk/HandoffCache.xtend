@@ -0,0 +1,77 @@
+package nl.streamone.sdk
+
+import java.util.LinkedHashMap
+import java.util.Map
+import java.util.UUID
+
+/**
+    Hands big things, like the list of related items, from one screen to the next inside the
+    process. The Intent only carries the key, so nothing is parcelled and the binder
+    transaction stays small.
+
+    Entries are kept until MAX_ENTRIES newer ones push them out, not taken on first read: an
+    Activity that is recreated reads its Intent again. A new process starts empty, so a
+    reader has to cope with null, e.g. by building the list again. The keys carry a nonce of
+    the process that made them, a restored Intent never finds what a new process put under
+    the same counter.
+ */
+class HandoffCache
+{
+    public static val MAX_ENTRIES = 8
+
+    static HandoffCache sDefault
+
+    // access ordered, evicts what was handed off longest ago
+    val Map<String, Object> entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        override protected removeEldestEntry(Map.Entry<String, Object> eldest) {
+            size > MAX_ENTRIES
+        }
+    }
+
+    val String prefix = "handoff-" + UUID.randomUUID + '-'
+
+    long lastKey
+
+    static synchronized def HandoffCache getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new HandoffCache
+        }
+        return sDefault
+    }
+
+    /**
+        Returns the key to put in the Intent
+     */
+    synchronized def String put(Object value)
+    {
+        lastKey++
+        val key = prefix + lastKey
+        entries.put(key, value)
+        return key
+    }
+
+    /**
+        The value put under key, null if it's gone or the key is null
+     */
+    @SuppressWarnings("unchecked")
+    synchronized def <T> T get(String key)
+    {
+        if (key == null)
+        {
+            return null
+        }
+        return entries.get(key) as T
+    }
+
+    synchronized def void remove(String key)
+    {
+        entries.remove(key)
+    }
+
+    synchronized def int size()
+    {
+        entries.size
+    }
+}
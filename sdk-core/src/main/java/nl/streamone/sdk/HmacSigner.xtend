@@ -0,0 +1,173 @@
+package nl.streamone.sdk
+
+import java.nio.ByteBuffer
+import java.util.LinkedHashMap
+import java.util.Map
+import java.util.concurrent.atomic.AtomicInteger
+
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+/**
+    HMAC-SHA1 signing without the per call provider lookup.
+
+    Every thread keeps an initialized Mac per signing key, a thread only ever sees
+    a handful of keys (the psk, psk + session key), so the map stays tiny.
+    The digest and the hex encoding go into per thread buffers.
+
+    {@link #clear} can't reach into other threads, so it bumps a generation instead: every
+    thread drops its Macs the next time it signs.
+ */
+class HmacSigner
+{
+    public static val ALGORITHM = 'HmacSHA1'
+
+    /**
+        SHA-1 digests are 20 bytes
+     */
+    public static val DIGEST_LENGTH = 20
+
+    static val MAX_KEYS_PER_THREAD = 4
+
+    static val HEX = "0123456789abcdef".toCharArray
+
+    static val generation = new AtomicInteger
+
+    static val macs = new ThreadLocal<MacCache> {
+        override protected initialValue() {
+            new MacCache(MAX_KEYS_PER_THREAD)
+        }
+    }
+
+    static val digests = new ThreadLocal<byte[]> {
+        override protected initialValue() {
+            newByteArrayOfSize(DIGEST_LENGTH)
+        }
+    }
+
+    static val hexBuffers = new ThreadLocal<char[]> {
+        override protected initialValue() {
+            newCharArrayOfSize(DIGEST_LENGTH * 2)
+        }
+    }
+
+    /**
+        Lower case hex, like PHP's hash_hmac
+     */
+    static def String sign(String key, byte[] message)
+    {
+        val digest = digest(macFor(key, null), message)
+        val hex = hexBuffers.get
+        toHex(digest, hex)
+        return new String(hex)
+    }
+
+    /**
+        Appends the lower case hex to out, nothing is allocated once the thread is warmed up
+     */
+    static def StringBuilder sign(String key, byte[] message, StringBuilder out)
+    {
+        return sign(key, message, 0, message.length, out)
+    }
+
+    /**
+        Signs part of a (reused) buffer
+     */
+    static def StringBuilder sign(String key, byte[] message, int offset, int length, StringBuilder out)
+    {
+        val mac = macFor(key, null)
+        val digest = digests.get
+        mac.update(message, offset, length)
+        mac.doFinal(digest, 0)
+        for (var i = 0; i < DIGEST_LENGTH; i++)
+        {
+            val b = digest.get(i).bitwiseAnd(0xff)
+            out.append(HEX.get(b / 16)).append(HEX.get(b % 16))
+        }
+        return out
+    }
+
+    /**
+        For raw keys, prefer the String variant, it doesn't need to wrap the key to look it up
+     */
+    static def String sign(byte[] key, byte[] message)
+    {
+        val digest = digest(macFor(ByteBuffer.wrap(key), key), message)
+        val hex = hexBuffers.get
+        toHex(digest, hex)
+        return new String(hex)
+    }
+
+    /**
+        Forgets the keys of every thread, e.g. after logging out.
+        The calling thread right away, the others before they sign again.
+     */
+    static def void clear()
+    {
+        generation.incrementAndGet
+        macs.get.clear
+    }
+
+    private static def byte[] digest(Mac mac, byte[] message)
+    {
+        val digest = digests.get
+        mac.update(message)
+        mac.doFinal(digest, 0)
+        return digest
+    }
+
+    private static def void toHex(byte[] bytes, char[] hex)
+    {
+        for (var i = 0; i < DIGEST_LENGTH; i++)
+        {
+            val b = bytes.get(i).bitwiseAnd(0xff)
+            hex.set(i * 2, HEX.get(b / 16))
+            hex.set(i * 2 + 1, HEX.get(b % 16))
+        }
+    }
+
+    private static def Mac macFor(Object cacheKey, byte[] rawKey)
+    {
+        val cache = macs.get
+        val current = generation.get
+        if (cache.generation != current)
+        {
+            cache.clear
+            cache.generation = current
+        }
+        var mac = cache.get(cacheKey)
+        if (mac == null)
+        {
+            val keyBytes = if (rawKey != null) rawKey.clone else (cacheKey as String).getBytes('UTF-8')
+            mac = Mac.getInstance(ALGORITHM)
+            mac.init(new SecretKeySpec(keyBytes, ALGORITHM))
+            // the caller may reuse its array, don't let that change our key
+            cache.put(if (rawKey != null) ByteBuffer.wrap(keyBytes) else cacheKey, mac)
+        }
+        return mac
+    }
+}
+
+/**
+    A thread's Macs, access ordered so the least recently used key goes first
+ */
+package class MacCache extends LinkedHashMap<Object, Mac>
+{
+    val int maxKeys
+
+    /**
+        Of {@link HmacSigner#clear} when these were made
+     */
+    package int generation
+
+    new (int maxKeys)
+    {
+        super(8, 0.75f, true)
+        this.maxKeys = maxKeys
+    }
+
+    override protected removeEldestEntry(Map.Entry<Object, Mac> eldest)
+    {
+        size > maxKeys
+    }
+}
@@ -0,0 +1,232 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.io.InputStream
+import java.util.List
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    Lets identical requests share one round trip while the first one is still in flight.
+
+    Requests are identical when their {@link RequestBase#getRequestKey} is, i.e. when only
+    the timestamp and the signature differ. Only idempotent requests take part.
+
+    RequestBase.inFlight = InFlightRegistry.getDefault
+ */
+class InFlightRegistry
+{
+    static InFlightRegistry sDefault
+
+    val ConcurrentHashMap<String, InFlightCall> calls = new ConcurrentHashMap
+    val AtomicLong joined = new AtomicLong
+
+    static synchronized def InFlightRegistry getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new InFlightRegistry
+        }
+        return sDefault
+    }
+
+    /**
+        Returns the Response the caller should perform the request with,
+        or null when it was attached to a call that is already in flight.
+        Either way the request learns which call it is part of, see {@link RequestBase#giveUp}.
+     */
+    def Response lead(String key, RequestBase request, Response response)
+    {
+        val call = new InFlightCall(this, key, request, response)
+        var Response result = null
+        var settled = false
+        while (!settled)
+        {
+            val existing = calls.putIfAbsent(key, call)
+            if (existing == null)
+            {
+                request.sharedCall = call
+                result = call
+                settled = true
+            } else if (existing.join(response)) {
+                request.sharedCall = existing
+                joined.incrementAndGet
+                settled = true
+            } else {
+                // it is already handing out its body, it's on its way out of the map
+                calls.remove(key, existing)
+            }
+        }
+        return result
+    }
+
+    /**
+        Requests that didn't go out because an identical one was in flight
+     */
+    def long getJoinedCount()
+    {
+        return joined.get
+    }
+
+    def int getInFlightCount()
+    {
+        return calls.size
+    }
+
+    package def void close(String key, InFlightCall call)
+    {
+        calls.remove(key, call)
+    }
+}
+
+/**
+    Stands in for the first caller, and fans the result out to everyone who joined
+ */
+package class InFlightCall extends Response
+{
+    val InFlightRegistry registry
+    val String key
+    val RequestBase request
+    val Response leader
+    val List<Response> followers = newArrayList
+    boolean closed = false
+    boolean answered = false
+
+    /**
+        The leader and the followers that didn't give up
+     */
+    int waiting = 1
+
+    new (InFlightRegistry registry, String key, RequestBase request, Response leader)
+    {
+        this.registry = registry
+        this.key = key
+        this.request = request
+        this.leader = leader
+    }
+
+    def synchronized boolean join(Response follower)
+    {
+        if (closed)
+        {
+            return false
+        }
+        followers.add(follower)
+        waiting = waiting + 1
+        return true
+    }
+
+    /**
+        One of the callers gave up, its handle drops its callbacks. The last one to go aborts the
+        round trip; the followers of a leader that gave up still get the answer.
+     */
+    def void leave()
+    {
+        synchronized (this)
+        {
+            waiting = waiting - 1
+            if (waiting > 0 || answered)
+            {
+                return
+            }
+        }
+        // nobody joins a call that is about to fail with "Canceled"
+        close
+        request.abort
+    }
+
+    /**
+        Nobody can join once the body starts coming in, so without followers
+        the leader keeps streaming; otherwise everybody gets the body as a String
+     */
+    override consume(InputStream in, String charset) throws IOException
+    {
+        if (close.empty)
+        {
+            leader.consume(in, charset)
+        } else {
+            super.consume(in, charset)
+        }
+    }
+
+    override consume(String body) throws IOException
+    {
+        leader.consume(body)
+        for (follower : close)
+        {
+            follower.consume(body)
+        }
+    }
+
+    override onSuccess(RequestBase request)
+    {
+        markAnswered
+        copyStatusTo(leader)
+        leader.onSuccess(request)
+        for (follower : close)
+        {
+            copyStatusTo(follower)
+            follower.onSuccess(request)
+        }
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        markAnswered
+        copyStatusTo(leader)
+        leader.onError(request, e)
+        for (follower : close)
+        {
+            copyStatusTo(follower)
+            follower.onError(request, e)
+        }
+    }
+
+    /**
+        Called once the leader's send is over. When it ended without a callback, e.g. it threw,
+        the followers get an error instead of waiting forever, and the key is free again.
+        The leader has the exception.
+     */
+    def void abandon(RequestBase request, Exception e)
+    {
+        synchronized (this)
+        {
+            if (answered)
+            {
+                return
+            }
+            answered = true
+        }
+        val error = new IOException("The request this one shared failed", e)
+        for (follower : close)
+        {
+            follower.onError(request, error)
+        }
+    }
+
+    private def synchronized void markAnswered()
+    {
+        answered = true
+    }
+
+    /**
+        Stops accepting followers, returns the ones that made it
+     */
+    private def synchronized List<Response> close()
+    {
+        if (!closed)
+        {
+            closed = true
+            registry.close(key, this)
+        }
+        return followersSnapshot
+    }
+
+    private def synchronized List<Response> followersSnapshot()
+    {
+        return newArrayList(followers)
+    }
+}
@@ -0,0 +1,367 @@
+package nl.streamone.sdk
+
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.InetAddress
+import java.net.Socket
+import java.net.SocketAddress
+import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import javax.net.SocketFactory
+import javax.net.ssl.HttpsURLConnection
+
+import com.squareup.okhttp.Dns
+import com.squareup.okhttp.HttpUrl
+import com.squareup.okhttp.Interceptor
+import com.squareup.okhttp.MediaType
+import com.squareup.okhttp.OkHttpClient
+import com.squareup.okhttp.Protocol
+import com.squareup.okhttp.RequestBody
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    OkHttp backend. All requests share one client, so concurrent calls to the API host
+    are multiplexed over a single HTTP/2 connection when the server negotiates it (ALPN, https only),
+    and fall back to pooled HTTP/1.1 sockets otherwise. A burst of calls to a cold host waits for
+    the first one to connect, so they share its connection, see {@link ConnectionGate}.
+ */
+class OkHttpTransport implements Transport
+{
+    static val FORM = MediaType.parse("application/x-www-form-urlencoded")
+
+    static OkHttpTransport sDefault
+
+    @Accessors(PUBLIC_GETTER)
+    val OkHttpClient client
+
+    /**
+        null for a client of the caller's, it doesn't tell us when it connected
+     */
+    ConnectionGate gate
+
+    new ()
+    {
+        this(new OkHttpClient)
+        client.protocols = #[Protocol.HTTP_2, Protocol.HTTP_1_1]
+        client.setConnectTimeout(RequestBase.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)
+        client.setReadTimeout(RequestBase.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)
+        // the hooks RequestMetrics needs to tell the phases apart
+        client.dns = new TimedDns
+        client.socketFactory = new TimedSocketFactory
+        client.sslSocketFactory = new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory)
+        client.networkInterceptors.add(new TimedHandshake)
+        gate = new ConnectionGate
+        client.networkInterceptors.add(gate)
+    }
+
+    /**
+        Bring your own client, e.g. to share its pool with the image loader
+     */
+    new (OkHttpClient client)
+    {
+        this.client = client
+    }
+
+    static synchronized def OkHttpTransport getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new OkHttpTransport
+        }
+        return sDefault
+    }
+
+    /**
+        The timeouts are per client; a clone shares the pool, so it still multiplexes
+     */
+    private def OkHttpClient clientFor(RequestBase request)
+    {
+        if (client.connectTimeout == request.connectTimeout && client.readTimeout == request.readTimeout)
+        {
+            return client
+        }
+        val perRequest = client.clone
+        perRequest.setConnectTimeout(request.connectTimeout, TimeUnit.MILLISECONDS)
+        perRequest.setReadTimeout(request.readTimeout, TimeUnit.MILLISECONDS)
+        return perRequest
+    }
+
+    override send(RequestBase request, URL url, Response response)
+    {
+        val metrics = request.metrics
+        val trace = metrics?.begin
+        try {
+            send(request, url, response, trace)
+        } finally {
+            metrics?.end(trace, request)
+        }
+    }
+
+    private def void send(RequestBase request, URL url, Response response, CallTrace trace)
+    {
+        var RequestBody body = null
+        if ('POST'.equals(request.method) || 'PUT'.equals(request.method))
+        {
+            // OkHttp wants a body for these, even an empty one
+            body = RequestBody.create(FORM, request.postData ?: '')
+        }
+        if (trace != null)
+        {
+            trace.requestBytes = url.toString.length + (if (body != null) body.contentLength else 0)
+        }
+
+        val call = clientFor(request).newCall(new com.squareup.okhttp.Request.Builder()
+            .url(url)
+            .method(request.method, body)
+            // asking ourselves turns off OkHttp's transparent gzip, we decode below
+            .header('Accept-Encoding', ContentEncoding.ACCEPT_ENCODING)
+            .build)
+        val Runnable aborter = [| call.cancel ]
+        request.onAbort(aborter)
+
+        val host = gate?.enter(url, request.connectTimeout)
+        var com.squareup.okhttp.Response okResponse = null
+        try {
+            val executeStart = System.nanoTime
+            okResponse = call.execute
+            val code = okResponse.code
+            var stream = okResponse.body?.byteStream ?: new ByteArrayInputStream(newByteArrayOfSize(0))
+
+            if (trace != null)
+            {
+                // execute covers everything up to the headers, the hooks timed the connection
+                trace.ttfb = Math.max(0, System.nanoTime - executeStart - trace.dns - trace.connect - trace.tls)
+                trace.code = code
+                stream = trace.count(stream)
+            }
+            stream = ContentEncoding.decode(stream, okResponse.header('Content-Encoding'))
+            if (trace != null)
+            {
+                stream = trace.countDecoded(stream)
+            }
+            val bodyStart = System.nanoTime
+            response.consume(stream, ContentEncoding.charsetOf(okResponse.header('Content-Type')))
+            trace?.setBody(System.nanoTime - bodyStart)
+
+            response.headers = okResponse.headers.toMultimap
+            response.code = code
+
+            okResponse.body?.close
+            okResponse = null
+            trace?.done
+
+            if (HttpURLConnection.HTTP_OK == code) {
+                response.onSuccess(request)
+            } else {
+                response.onError(request, null)
+            }
+        } catch (IOException e) {
+            response.onError(request, e)
+        } finally {
+            host?.leave
+            request.clearAbort(aborter)
+            // returns the connection (or the HTTP/2 stream) to the client
+            try {
+                okResponse?.body?.close
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
+
+/**
+    OkHttp only multiplexes over a connection it already has in its pool. Calls that start together
+    on a cold client each open their own, a handshake each, and the extra connections are idle
+    right after. So while no call to a host is out, the first one goes ahead and the ones that start
+    before it connected wait for it, at most their connect timeout. Being a network interceptor,
+    it hears when a call got its connection.
+ */
+package class ConnectionGate implements Interceptor
+{
+    val ConcurrentHashMap<String, HostGate> hosts = new ConcurrentHashMap
+
+    /**
+        Returns once the call may go out, pair it with {@link HostGate#leave}
+     */
+    def HostGate enter(URL url, int timeoutMillis)
+    {
+        val key = url.host + ':' + (if (url.port == -1) url.defaultPort else url.port)
+        var host = hosts.get(key)
+        if (host == null)
+        {
+            val created = new HostGate
+            host = hosts.putIfAbsent(key, created) ?: created
+        }
+        host.enter(timeoutMillis)
+        return host
+    }
+
+    override intercept(Interceptor.Chain chain) throws IOException
+    {
+        val HttpUrl url = chain.request.httpUrl
+        hosts.get(url.host + ':' + url.port)?.connected(chain.connection.protocol)
+        return chain.proceed(chain.request)
+    }
+}
+
+/**
+    The calls out to one host. A host that answered HTTP/1.1 has nothing to share, from then on
+    nobody waits for it.
+ */
+package class HostGate
+{
+    int active = 0
+    CountDownLatch connecting = new CountDownLatch(0)
+    volatile boolean multiplexed = true
+
+    def void enter(int timeoutMillis)
+    {
+        var CountDownLatch first = null
+        synchronized (this)
+        {
+            active = active + 1
+            if (active == 1)
+            {
+                connecting = new CountDownLatch(1)
+            } else {
+                first = connecting
+            }
+        }
+        if (first != null && multiplexed)
+        {
+            try {
+                first.await(timeoutMillis, TimeUnit.MILLISECONDS)
+            } catch (InterruptedException e) {
+                Thread.currentThread.interrupt
+            }
+        }
+    }
+
+    def void connected(Protocol protocol)
+    {
+        if (protocol != Protocol.HTTP_2)
+        {
+            multiplexed = false
+        }
+        release
+    }
+
+    /**
+        Also when the first call failed before it connected, the others try for themselves
+     */
+    def void leave()
+    {
+        synchronized (this)
+        {
+            active = active - 1
+        }
+        release
+    }
+
+    def boolean isMultiplexed()
+    {
+        return multiplexed
+    }
+
+    private def synchronized void release()
+    {
+        connecting.countDown
+    }
+}
+
+/**
+    The system resolver, timed for the call that asked
+ */
+package class TimedDns implements Dns
+{
+    override lookup(String hostname)
+    {
+        val start = System.nanoTime
+        try {
+            return Dns.SYSTEM.lookup(hostname)
+        } finally {
+            val trace = RequestMetrics.currentTrace
+            if (trace != null)
+            {
+                trace.dns = trace.dns + System.nanoTime - start
+            }
+        }
+    }
+}
+
+/**
+    Ends the handshake the socket factory marked the start of. A network interceptor runs on the
+    calling thread as soon as the call has its connection, the handshake and the hostname check
+    done; the client's own verifier is left alone.
+ */
+package class TimedHandshake implements Interceptor
+{
+    override intercept(Interceptor.Chain chain) throws IOException
+    {
+        val trace = RequestMetrics.currentTrace
+        if (trace != null && trace.tlsStart > 0 && trace.tls == 0)
+        {
+            trace.tls = System.nanoTime - trace.tlsStart
+        }
+        return chain.proceed(chain.request)
+    }
+}
+
+/**
+    Plain sockets that time their connect, OkHttp always creates them unconnected
+ */
+package class TimedSocketFactory extends SocketFactory
+{
+    val SocketFactory delegate = SocketFactory.getDefault
+
+    override createSocket() throws IOException
+    {
+        new TimedSocket
+    }
+
+    override createSocket(String host, int port) throws IOException
+    {
+        delegate.createSocket(host, port)
+    }
+
+    override createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+    {
+        delegate.createSocket(host, port, localHost, localPort)
+    }
+
+    override createSocket(InetAddress host, int port) throws IOException
+    {
+        delegate.createSocket(host, port)
+    }
+
+    override createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+    {
+        delegate.createSocket(address, port, localAddress, localPort)
+    }
+}
+
+package class TimedSocket extends Socket
+{
+    override connect(SocketAddress endpoint, int timeout) throws IOException
+    {
+        val start = System.nanoTime
+        try {
+            super.connect(endpoint, timeout)
+        } finally {
+            val trace = RequestMetrics.currentTrace
+            if (trace != null)
+            {
+                trace.connect = trace.connect + System.nanoTime - start
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package nl.streamone.sdk
+
+import java.util.logging.Level
+
+/**
+    The little the core needs from the platform it runs on: a log.
+
+    On a device the android module's AndroidPlatformAdapter is picked up by name, anywhere
+    else, e.g. a load test on a Linux host, it's plain Java. URLs need nothing of the platform,
+    {@link RequestLineBuilder} encodes them the way android.net.Uri does.
+ */
+abstract class PlatformAdapter
+{
+    public static val VERBOSE = 2
+    public static val DEBUG = 3
+    public static val INFO = 4
+    public static val WARN = 5
+    public static val ERROR = 6
+
+    static val ANDROID_ADAPTER = "nl.streamone.sdk.AndroidPlatformAdapter"
+
+    static volatile PlatformAdapter sCurrent
+
+    static def PlatformAdapter get()
+    {
+        var adapter = sCurrent
+        if (adapter == null)
+        {
+            adapter = find
+            sCurrent = adapter
+        }
+        return adapter
+    }
+
+    /**
+        Replaces whatever was found, e.g. to collect the log in a test
+     */
+    static def void install(PlatformAdapter adapter)
+    {
+        sCurrent = adapter
+    }
+
+    private static def PlatformAdapter find()
+    {
+        try {
+            // the adapter compiles on the JVM against android.jar, check we're on a device
+            Class.forName("android.os.Build")
+            return Class.forName(ANDROID_ADAPTER).newInstance as PlatformAdapter
+        } catch (Exception e) {
+            return new JvmPlatformAdapter
+        } catch (LinkageError e) {
+            return new JvmPlatformAdapter
+        }
+    }
+
+    /**
+        priority is one of VERBOSE .. ERROR, tr may be null
+     */
+    def void log(int priority, String tag, String message, Throwable tr)
+}
+
+/**
+    java.util.logging
+ */
+class JvmPlatformAdapter extends PlatformAdapter
+{
+    override log(int priority, String tag, String message, Throwable tr)
+    {
+        val level = if (priority >= ERROR) Level.SEVERE
+            else if (priority == WARN) Level.WARNING
+            else if (priority == INFO) Level.INFO
+            else Level.FINE
+        java.util.logging.Logger.getLogger(tag).log(level, message, tr)
+    }
+}
+
+/**
+    Same calls as android.util.Log, so the core reads like the rest of the SDK
+ */
+class Logger
+{
+    private new ()
+    {
+    }
+
+    static def void d(String tag, String message)
+    {
+        PlatformAdapter.get.log(PlatformAdapter.DEBUG, tag, message, null)
+    }
+
+    static def void i(String tag, String message)
+    {
+        PlatformAdapter.get.log(PlatformAdapter.INFO, tag, message, null)
+    }
+
+    static def void w(String tag, String message)
+    {
+        PlatformAdapter.get.log(PlatformAdapter.WARN, tag, message, null)
+    }
+
+    static def void w(String tag, String message, Throwable tr)
+    {
+        PlatformAdapter.get.log(PlatformAdapter.WARN, tag, message, tr)
+    }
+
+    static def void e(String tag, String message, Throwable tr)
+    {
+        PlatformAdapter.get.log(PlatformAdapter.ERROR, tag, message, tr)
+    }
+}
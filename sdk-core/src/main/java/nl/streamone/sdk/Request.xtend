@@ -0,0 +1,597 @@
+package nl.streamone.sdk
+
+import java.io.UnsupportedEncodingException
+import java.security.InvalidKeyException
+import java.security.NoSuchAlgorithmException
+
+import java.net.URL
+import java.net.MalformedURLException
+import java.security.GeneralSecurityException
+import java.security.MessageDigest
+import java.io.InputStreamReader
+import java.io.InputStream
+import java.io.IOException
+
+import java.util.Map
+import java.util.List
+import java.util.concurrent.CopyOnWriteArrayList
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+
+abstract class Response
+{
+    @Accessors
+    protected int code
+
+    @Accessors
+    protected String json
+
+    // TODO deterimine that volley also supports this
+    @Accessors
+    protected Map<String, List<String>> headers
+
+    def void onSuccess(RequestBase request)
+    def void onError(RequestBase request, Exception e)
+
+    /**
+        Consumes the body on the thread that runs the request.
+        The default keeps the whole body as a String in json, see StreamingResponse in the android module to avoid that.
+     */
+    def void consume(InputStream in, String charset) throws IOException
+    {
+        val reader = new InputStreamReader(in, charset)
+        try {
+            val body = new StringBuilder
+            val buffer = newCharArrayOfSize(4096)
+            var read = reader.read(buffer)
+            while (read != -1)
+            {
+                body.append(buffer, 0, read)
+                read = reader.read(buffer)
+            }
+            consume(body.toString)
+        } finally {
+            reader.close
+        }
+    }
+
+    /**
+        The body when it is already in memory, e.g. from the cache
+     */
+    def void consume(String body) throws IOException
+    {
+        if (!body.trim.isEmpty)
+        {
+            json = body
+        }
+    }
+
+    /**
+        Hands the status over to another Response, e.g. when wrapping one, the body is the wrapper's business
+     */
+    def void copyStatusTo(Response other)
+    {
+        other.code = code
+        other.headers = headers
+    }
+}
+
+abstract class RequestBase
+{
+    static val TAG = "RequestBase"
+
+    @Accessors
+    String command
+
+    @Accessors
+    String action
+
+    /**
+        For application authentication we only require the psk here.
+        For session authentication we need (psk + post-application-authentication-key)
+     */
+    @Accessors
+    String signingKey
+
+    /**
+        Path data
+     */
+    @Accessors
+    protected val Map<String, String> parameters = newLinkedHashMap(
+        'api' -> '3',
+        'format' -> 'json'
+    )
+
+    @Accessors
+    protected String scheme = 'https'
+
+    @Accessors
+    protected String method = 'POST'
+
+    @Accessors
+    protected boolean useCaches = false
+
+    /**
+    Do it like PHP, see {@link HmacSigner}
+     */
+    static def String getHmacSha1(byte[] key, byte[] message) throws
+        UnsupportedEncodingException, NoSuchAlgorithmException,
+        InvalidKeyException
+    {
+        return HmacSigner.sign(key, message)
+    }
+
+
+    /**
+        POST data
+     */
+    @Accessors
+    protected val Map<String, String> arguments = newLinkedHashMap()
+
+    public static val DEFAULT_TIMEOUT = 10000
+
+    @Accessors
+    protected int connectTimeout = DEFAULT_TIMEOUT
+
+    /**
+        Learned per command/action for idempotent calls when there is a {@link ResiliencePolicy},
+        unless set here
+     */
+    @Accessors(PUBLIC_GETTER)
+    int readTimeout = DEFAULT_TIMEOUT
+
+    boolean readTimeoutSet = false
+
+    def void setReadTimeout(int readTimeout)
+    {
+        this.readTimeout = readTimeout
+        readTimeoutSet = true
+    }
+
+    /**
+        The policy's timeout, when the caller left it at the default
+     */
+    package def void adaptReadTimeout(int readTimeout)
+    {
+        if (!readTimeoutSet)
+        {
+            this.readTimeout = readTimeout
+        }
+    }
+
+    /**
+        Retries, adaptive timeouts and hedging for idempotent calls; null sends every request once
+     */
+    @Accessors
+    protected ResiliencePolicy resilience
+
+    /**
+        Timings, sizes, statuses and cache hits per command/action; null records nothing
+     */
+    @Accessors
+    protected RequestMetrics metrics = RequestMetrics.getDefault
+
+    @Accessors
+    protected boolean closeConnectionAfterUse = false
+
+    /**
+        Logs the signature base and the signed URL, keep this off in release builds
+     */
+    public static volatile boolean DEBUG = false
+
+    /**
+        Decides on which thread the request runs, swap in a RequestExecutor to go async
+     */
+    @Accessors
+    protected RequestDispatcher dispatcher = SynchronousDispatcher.INSTANCE
+
+    /**
+        Only meaningful for pooled dispatchers, e.g. demote prefetching
+     */
+    @Accessors
+    protected RequestPriority priority = RequestPriority.INTERACTIVE
+
+    public def RequestHandle execute(Response response)
+    {
+        return dispatcher.submit(this, response)
+    }
+
+    /**
+        execute, as a future to chain on: completes with response after its onSuccess, fails with
+        a {@link ResponseException} after its onError. Cancelling it cancels the request.
+     */
+    public def <R extends Response> RequestFuture<R> submit(R response)
+    {
+        val future = new RequestFuture<R>
+        val handle = execute(new FutureResponse(response, future))
+        future.canceller = [| handle.cancel ]
+        return future
+    }
+
+    /**
+        The body, for when the JSON is all the next step needs
+     */
+    public def RequestFuture<String> submit()
+    {
+        return submit(new BodyResponse).map [ json ]
+    }
+
+    val List<Runnable> aborters = new CopyOnWriteArrayList
+
+    volatile boolean aborted = false
+
+    /**
+        Stops the request where it is: not sent if it wasn't yet, its connection closed if it is in flight.
+        The response gets an onError; a request is one call, it stays aborted.
+     */
+    def void abort()
+    {
+        aborted = true
+        for (aborter : aborters)
+        {
+            aborter.run
+        }
+    }
+
+    def boolean isAborted()
+    {
+        return aborted
+    }
+
+    /**
+        The round trip this request leads or joined, see {@link InFlightRegistry}
+     */
+    volatile InFlightCall sharedCall
+
+    package def void setSharedCall(InFlightCall call)
+    {
+        sharedCall = call
+    }
+
+    /**
+        For a caller that gives up on the request: a round trip shared with identical requests
+        goes on for the others and is only aborted once none of them waits for it any more
+     */
+    package def void giveUp()
+    {
+        val shared = sharedCall
+        if (shared == null)
+        {
+            abort
+        } else {
+            shared.leave
+        }
+    }
+
+    /**
+        For transports: how to abort the connection they're on, until {@link #clearAbort}.
+        Runs right away when the request was aborted already. Inside a hedged call the attempt
+        gets it too, see {@link ResiliencePolicy}.
+     */
+    def void onAbort(Runnable aborter)
+    {
+        aborters.add(aborter)
+        HedgedAttempt.current?.onAbort(aborter)
+        if (aborted)
+        {
+            aborter.run
+        }
+    }
+
+    def void clearAbort(Runnable aborter)
+    {
+        aborters.remove(aborter)
+        HedgedAttempt.current?.clearAbort(aborter)
+    }
+
+    /**
+        Consulted before going out, e.g. an ApiResponseCache; null disables caching
+     */
+    @Accessors
+    protected ResponseCache cache
+
+    static val HEX = "0123456789abcdef".toCharArray
+
+    static val ESCAPED = '%=;&#'
+    static val String[] ESCAPES = #['%25', '%3D', '%3B', '%26', '%23']
+
+    static val identityDigests = new ThreadLocal<MessageDigest> {
+        override protected initialValue() {
+            MessageDigest.getInstance('SHA-256')
+        }
+    }
+
+    /**
+        Identifies the call: who signs it, where it goes, command, action, parameters and arguments.
+        Leaves out the timestamp and signature, those change on every call.
+        The signing key only goes in as a digest, the key ends up in caches and logs.
+     */
+    def String getRequestKey()
+    {
+        val key = new StringBuilder
+        key.append(scheme).append('://').append(hostname)
+        if (port != null)
+        {
+            key.append(':').append(port)
+        }
+        key.append('/').append(command).append('/').append(action).append('?')
+        appendSorted(key, parameters)
+        key.append('&')
+        appendSorted(key, arguments)
+        key.append('#').append(identity)
+        return key.toString
+    }
+
+    /**
+        Of the signing key, which is the psk or the psk and the session key:
+        the same arguments mean something else to another application, user or session
+     */
+    private def String getIdentity()
+    {
+        if (signingKey == null)
+        {
+            return ''
+        }
+        val digest = identityDigests.get.digest(signingKey.getBytes('UTF-8'))
+        val chars = newCharArrayOfSize(16)
+        for (var i = 0; i < 8; i++)
+        {
+            val b = digest.get(i).bitwiseAnd(0xff)
+            chars.set(i * 2, HEX.get(b >> 4))
+            chars.set(i * 2 + 1, HEX.get(b.bitwiseAnd(0x0f)))
+        }
+        return new String(chars)
+    }
+
+    private static def void appendSorted(StringBuilder key, Map<String, String> map)
+    {
+        for (name : map.keySet.sort)
+        {
+            if (!'timestamp'.equals(name) && !'signature'.equals(name))
+            {
+                appendEscaped(key, name)
+                key.append('=')
+                appendEscaped(key, map.get(name))
+                key.append(';')
+            }
+        }
+    }
+
+    /**
+        Percent-escapes the separators, so no two argument maps make the same key
+     */
+    private static def void appendEscaped(StringBuilder key, String value)
+    {
+        if (value == null)
+        {
+            key.append('%00')
+            return
+        }
+        for (var i = 0; i < value.length; i++)
+        {
+            val c = value.charAt(i)
+            val escaped = ESCAPED.indexOf(c)
+            if (escaped == -1)
+            {
+                key.append(c)
+            } else {
+                key.append(ESCAPES.get(escaped))
+            }
+        }
+    }
+
+    /**
+        Shares the round trip with identical requests in flight, see {@link InFlightRegistry}; null disables it
+     */
+    @Accessors
+    protected InFlightRegistry inFlight
+
+    /**
+        null: derived from the method and action, see {@link #isIdempotent}
+     */
+    @Accessors(PUBLIC_SETTER)
+    protected Boolean idempotent
+
+    /**
+        Safe to share, cache or repeat: GETs and the view actions, unless set explicitly
+     */
+    def boolean isIdempotent()
+    {
+        if (idempotent != null)
+        {
+            return idempotent
+        }
+        return 'GET'.equals(method) || (action != null && action.startsWith('view'))
+    }
+
+    /**
+        Runs the round trip on the calling thread, this is what the dispatchers call
+     */
+    public def void executeNow(Response response)
+    {
+        // a write has to reach the API every time, a cached answer would swallow it
+        if (!isIdempotent || (cache == null && inFlight == null))
+        {
+            send(response)
+            return
+        }
+
+        val key = requestKey
+        if (cache != null)
+        {
+            val cached = cache.get(key)
+            metrics?.recordCache(this, cached != null)
+            if (cached != null)
+            {
+                try {
+                    cached.replay(response)
+                } catch (IOException e) {
+                    response.onError(this, e)
+                    return
+                }
+                response.onSuccess(this)
+                return
+            }
+        }
+
+        var target = response
+        sharedCall = null
+        if (inFlight != null)
+        {
+            target = inFlight.lead(key, this, response)
+            if (target == null)
+            {
+                // an identical request is on its way, we'll hear from it
+                return
+            }
+        }
+
+        // whatever happens to the send, the call must not stay in the registry
+        var RuntimeException failure = null
+        try {
+            send(if (cache != null) new CachingResponse(target, cache, key) else target)
+        } catch (RuntimeException e) {
+            failure = e
+            throw e
+        } finally {
+            if (target instanceof InFlightCall)
+            {
+                target.abandon(this, failure)
+            }
+        }
+    }
+
+    private def void send(Response response)
+    {
+        if (resilience != null)
+        {
+            resilience.perform(this, response)
+        } else {
+            perform(response)
+        }
+    }
+
+    @Accessors
+    protected String hostname
+
+    @Accessors
+    protected String port
+
+    /**
+        Moves the signed request over the wire, see {@link HttpUrlConnectionTransport} and {@link OkHttpTransport}
+     */
+    @Accessors
+    protected Transport transport = HttpUrlConnectionTransport.getDefault
+
+    /**
+        Signs the request and hands it to the transport, the signing is the same whatever the transport
+     */
+    protected def void perform(Response response)
+    {
+        if (signingKey == null)
+        {
+            throw new IllegalArgumentException("You must provide a signing key.")
+        }
+        if (aborted)
+        {
+            response.onError(this, new IOException("Canceled"))
+            return
+        }
+
+        // TODO add builder methods to explicitly add the parameters
+        // necessary for either application or user authentication
+        // the PHP version has a very convoluted way of doing this
+        val line = RequestLineBuilder.forThread.build(this, hostname, port, System.currentTimeMillis)
+
+        var URL url = null
+        try {
+            url = new URL(line.sign(signingKey))
+        } catch (GeneralSecurityException e) {
+            response.onError(this, e)
+            return
+        } catch (MalformedURLException e) {
+            response.onError(this, e)
+            return
+        }
+
+        if (DEBUG)
+        {
+            Logger.d(TAG, line.signatureBase)
+            Logger.d(TAG, url.toString)
+        }
+
+        transport.send(this, url, response)
+    }
+
+    /**
+        The POST/PUT body, null when there is nothing to send
+     */
+    def String getPostData()
+    {
+        if (!('POST'.equals(method) || 'PUT'.equals(method)) || arguments.isEmpty)
+        {
+            return null
+        }
+
+        val sbuilder = new StringBuilder
+        for (arg : arguments.entrySet)
+        {
+            sbuilder.append(arg.key).append('=').append(arg.value).append("\n")
+        }
+        return sbuilder.toString.trim
+    }
+}
+
+class HttpUrlConnectionRequest extends RequestBase
+{
+    new () {
+        super()
+        this.transport = HttpUrlConnectionTransport.getDefault
+    }
+
+    new (String hostname) {
+        this()
+        this.hostname = hostname
+    }
+
+    new (String hostname, int port)
+    {
+        this(hostname)
+        this.port =  Integer.toString(port)
+    }
+}
+
+/**
+    Same requests, over a shared OkHttp client that multiplexes concurrent calls over HTTP/2 where the server speaks it
+ */
+class OkHttpRequest extends RequestBase
+{
+    new () {
+        super()
+        this.transport = OkHttpTransport.getDefault
+    }
+
+    new (String hostname) {
+        this()
+        this.hostname = hostname
+    }
+
+    new (String hostname, int port)
+    {
+        this(hostname)
+        this.port =  Integer.toString(port)
+    }
+}
+
+/*
+// TODO
+class VolleyRequest extends RequestBase
+{
+    override execute()
+    {
+
+    }
+}
+*/
\ No newline at end of file
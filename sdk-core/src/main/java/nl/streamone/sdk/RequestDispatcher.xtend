@@ -0,0 +1,174 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.Executor
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    Interactive calls always jump ahead of prefetching
+ */
+enum RequestPriority {
+    INTERACTIVE,
+    PREFETCH
+}
+
+/**
+    Decides where {@link RequestBase#execute} does its work
+ */
+interface RequestDispatcher
+{
+    def RequestHandle submit(RequestBase request, Response response)
+}
+
+/**
+    The old behaviour: block the caller for the whole round trip
+ */
+class SynchronousDispatcher implements RequestDispatcher
+{
+    public static val INSTANCE = new SynchronousDispatcher
+
+    override submit(RequestBase request, Response response)
+    {
+        val handle = new RequestHandle(request)
+        try {
+            request.executeNow(response)
+        } finally {
+            handle.finish
+        }
+        return handle
+    }
+}
+
+/**
+    Runs requests on an Executor of your choosing and calls back on its thread, for plain Java;
+    on a device use the RequestExecutor of the android module, it calls back on the main thread.
+
+    val dispatcher = new ExecutorDispatcher(Executors.newFixedThreadPool(4))
+ */
+class ExecutorDispatcher implements RequestDispatcher
+{
+    val Executor executor
+
+    new (Executor executor)
+    {
+        this.executor = executor
+    }
+
+    override submit(RequestBase request, Response response)
+    {
+        val handle = new RequestHandle(request)
+        executor.execute [|
+            if (handle.cancelled)
+            {
+                handle.finish
+                return
+            }
+            // done when it answers, a request that joined an identical one hears later than this
+            try {
+                request.executeNow(new HandleResponse(response, handle))
+            } catch (RuntimeException e) {
+                response.onError(request, e)
+                handle.finish
+            }
+        ]
+        return handle
+    }
+}
+
+/**
+    Drops the callbacks once the handle is cancelled, finishes the handle either way
+ */
+package class HandleResponse extends Response
+{
+    val Response target
+    val RequestHandle handle
+
+    new (Response target, RequestHandle handle)
+    {
+        this.target = target
+        this.handle = handle
+    }
+
+    override consume(InputStream in, String charset) throws IOException
+    {
+        target.consume(in, charset)
+    }
+
+    override consume(String body) throws IOException
+    {
+        target.consume(body)
+    }
+
+    override onSuccess(RequestBase request)
+    {
+        if (!handle.cancelled)
+        {
+            copyStatusTo(target)
+            target.onSuccess(request)
+        }
+        handle.finish
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        if (!handle.cancelled)
+        {
+            copyStatusTo(target)
+            target.onError(request, e)
+        }
+        handle.finish
+    }
+}
+
+/**
+    Returned by {@link RequestBase#execute}, cancelling drops a queued request, aborts one
+    that is already running and suppresses its callbacks. A round trip that identical requests
+    share (see {@link InFlightRegistry}) is only aborted once all of them were cancelled.
+ */
+class RequestHandle
+{
+    @Accessors(PUBLIC_GETTER)
+    val RequestBase request
+
+    volatile boolean cancelled = false
+    volatile boolean done = false
+
+    package volatile Runnable canceller
+
+    new (RequestBase request)
+    {
+        this.request = request
+    }
+
+    def boolean isCancelled()
+    {
+        return cancelled
+    }
+
+    def boolean isDone()
+    {
+        return done
+    }
+
+    def void cancel()
+    {
+        if (isDone || cancelled)
+        {
+            return
+        }
+        cancelled = true
+        canceller?.run
+        // closes the connection of a request in flight, unless identical requests share it
+        request.giveUp
+    }
+
+    package def void finish()
+    {
+        done = true
+    }
+}
@@ -0,0 +1,556 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.io.InputStream
+import java.util.ArrayList
+import java.util.List
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    The result of a call that may not be in yet, to chain dependent calls on instead of nesting
+    callbacks, see {@link RequestBase#submit}:
+
+    sessions.sessionFuture
+        .then [ session | itemView(session).submit ]
+        .map [ json | parse(json) ]
+        .timeout(5000)
+        .onSuccess [ items | show(items) ]
+
+    Cancelling goes upstream: whatever this one waits for is cancelled too, down to the request,
+    which aborts its connection. So a future belongs to one chain, cancel a shared one and every
+    chain on it is cancelled.
+
+    Listeners run on the thread that completes the future, e.g. the main thread with a
+    RequestExecutor, or right away on the caller's when it already is.
+ */
+class RequestFuture<T> implements Future<T>
+{
+    static val TAG = "RequestFuture"
+
+    static val PENDING = 0
+    static val SUCCEEDED = 1
+    static val FAILED = 2
+    static val CANCELLED = 3
+
+    static ScheduledExecutorService sTimer
+
+    val CountDownLatch done = new CountDownLatch(1)
+    val List<Runnable> listeners = newArrayList
+
+    int state = PENDING
+    T value
+    Throwable error
+
+    /**
+        What to cancel when this is cancelled: the request, or the futures this one waits for
+     */
+    Runnable canceller
+
+    static def <T> RequestFuture<T> succeeded(T value)
+    {
+        val future = new RequestFuture<T>
+        future.complete(value)
+        return future
+    }
+
+    static def <T> RequestFuture<T> failed(Throwable error)
+    {
+        val future = new RequestFuture<T>
+        future.fail(error)
+        return future
+    }
+
+    /**
+        The values of all of them, in order, once they all succeeded.
+        Fails as soon as one fails, and cancels the others.
+     */
+    static def <T> RequestFuture<List<T>> all(List<? extends RequestFuture<? extends T>> futures)
+    {
+        val all = new RequestFuture<List<T>>
+        val List<RequestFuture<? extends T>> parts = new ArrayList(futures)
+        all.setCanceller [|
+            for (part : parts)
+            {
+                part.cancel(false)
+            }
+        ]
+        if (parts.isEmpty)
+        {
+            all.complete(newArrayList)
+            return all
+        }
+
+        val remaining = new AtomicInteger(parts.size)
+        for (part : parts)
+        {
+            part.addListener [|
+                if (part.isSucceeded)
+                {
+                    if (remaining.decrementAndGet == 0)
+                    {
+                        val List<T> values = newArrayList
+                        for (p : parts)
+                        {
+                            values.add(p.value)
+                        }
+                        all.complete(values)
+                    }
+                } else if (part.isCancelled) {
+                    all.cancel(false)
+                } else if (all.fail(part.error)) {
+                    // nobody is waiting for the rest
+                    for (other : parts)
+                    {
+                        other.cancel(false)
+                    }
+                }
+            ]
+        }
+        return all
+    }
+
+    /**
+        Two calls in parallel, e.g. the item and its related items
+     */
+    static def <A, B> RequestFuture<Pair<A, B>> zip(RequestFuture<A> first, RequestFuture<B> second)
+    {
+        return all(#[first as RequestFuture<?>, second]).map [ values |
+            (values.get(0) as A) -> (values.get(1) as B)
+        ]
+    }
+
+    /**
+        Completes with value, false when it already was completed, failed or cancelled
+     */
+    def boolean complete(T value)
+    {
+        return finish(SUCCEEDED, value, null)
+    }
+
+    def boolean fail(Throwable error)
+    {
+        return finish(FAILED, null, error)
+    }
+
+    /**
+        Cancels this and what it waits for, aborting the connection of a request in flight
+     */
+    override cancel(boolean mayInterruptIfRunning)
+    {
+        if (!finish(CANCELLED, null, new CancellationException))
+        {
+            return false
+        }
+        var Runnable upstream = null
+        synchronized (listeners)
+        {
+            upstream = canceller
+            canceller = null
+        }
+        upstream?.run
+        return true
+    }
+
+    def boolean cancel()
+    {
+        return cancel(false)
+    }
+
+    /**
+        Set by whatever completes the future; runs right away if the future was cancelled already
+     */
+    def void setCanceller(Runnable canceller)
+    {
+        var cancelNow = false
+        synchronized (listeners)
+        {
+            if (state == CANCELLED)
+            {
+                cancelNow = true
+            } else if (state == PENDING) {
+                this.canceller = canceller
+            }
+        }
+        if (cancelNow)
+        {
+            canceller.run
+        }
+    }
+
+    /**
+        Runs once the future is done, whichever way; right away if it is
+     */
+    def RequestFuture<T> addListener(Runnable listener)
+    {
+        synchronized (listeners)
+        {
+            if (state == PENDING)
+            {
+                listeners.add(listener)
+                return this
+            }
+        }
+        run(listener)
+        return this
+    }
+
+    def RequestFuture<T> onSuccess((T)=>void callback)
+    {
+        return addListener [|
+            if (isSucceeded)
+            {
+                callback.apply(value)
+            }
+        ]
+    }
+
+    /**
+        Also called when cancelled, with a CancellationException
+     */
+    def RequestFuture<T> onFailure((Throwable)=>void callback)
+    {
+        return addListener [|
+            if (!isSucceeded)
+            {
+                callback.apply(error)
+            }
+        ]
+    }
+
+    /**
+        The value run through fn, on the thread that completed this one
+     */
+    def <U> RequestFuture<U> map((T)=>U fn)
+    {
+        val next = new RequestFuture<U>
+        next.setCanceller [| cancel(false) ]
+        addListener [|
+            if (isSucceeded)
+            {
+                try {
+                    next.complete(fn.apply(value))
+                } catch (Exception e) {
+                    next.fail(e)
+                }
+            } else {
+                next.copyFailure(this)
+            }
+        ]
+        return next
+    }
+
+    /**
+        The next call, once this one is in: the handshake as a chain instead of a pyramid
+     */
+    def <U> RequestFuture<U> then((T)=>RequestFuture<U> fn)
+    {
+        val next = new RequestFuture<U>
+        next.setCanceller [| cancel(false) ]
+        addListener [|
+            if (isSucceeded)
+            {
+                var RequestFuture<U> inner = null
+                try {
+                    inner = fn.apply(value)
+                } catch (Exception e) {
+                    next.fail(e)
+                    return
+                }
+                val started = inner
+                // from now on cancelling the chain cancels the call in flight
+                next.setCanceller [| started.cancel(false) ]
+                started.addListener [|
+                    if (started.isSucceeded)
+                    {
+                        next.complete(started.value)
+                    } else {
+                        next.copyFailure(started)
+                    }
+                ]
+            } else {
+                next.copyFailure(this)
+            }
+        ]
+        return next
+    }
+
+    /**
+        A value instead of the failure, cancellation isn't a failure and stays one
+     */
+    def RequestFuture<T> recover((Throwable)=>T fn)
+    {
+        val next = new RequestFuture<T>
+        next.setCanceller [| cancel(false) ]
+        addListener [|
+            if (isSucceeded)
+            {
+                next.complete(value)
+            } else if (isCancelled) {
+                next.cancel(false)
+            } else {
+                try {
+                    next.complete(fn.apply(error))
+                } catch (Exception e) {
+                    next.fail(e)
+                }
+            }
+        ]
+        return next
+    }
+
+    /**
+        Fails with a TimeoutException if this isn't done within millis, and cancels it, so the
+        request stops instead of finishing for nobody
+     */
+    def RequestFuture<T> timeout(long millis)
+    {
+        val next = new RequestFuture<T>
+        next.setCanceller [| cancel(false) ]
+        val task = timer.schedule([|
+            if (next.fail(new TimeoutException("No result after " + millis + " ms")))
+            {
+                cancel(false)
+            }
+        ], millis, TimeUnit.MILLISECONDS)
+        addListener [|
+            task.cancel(false)
+            if (isSucceeded)
+            {
+                next.complete(value)
+            } else {
+                next.copyFailure(this)
+            }
+        ]
+        return next
+    }
+
+    override isDone()
+    {
+        synchronized (listeners)
+        {
+            return state != PENDING
+        }
+    }
+
+    override isCancelled()
+    {
+        synchronized (listeners)
+        {
+            return state == CANCELLED
+        }
+    }
+
+    def boolean isSucceeded()
+    {
+        synchronized (listeners)
+        {
+            return state == SUCCEEDED
+        }
+    }
+
+    /**
+        Blocks, don't call this from the main thread
+     */
+    override get() throws InterruptedException, ExecutionException
+    {
+        done.await
+        return result
+    }
+
+    override get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if (!done.await(timeout, unit))
+        {
+            throw new TimeoutException
+        }
+        return result
+    }
+
+    /**
+        The value once succeeded, null otherwise
+     */
+    def T getValue()
+    {
+        synchronized (listeners)
+        {
+            return value
+        }
+    }
+
+    /**
+        The failure, a CancellationException when cancelled, null otherwise
+     */
+    def Throwable getError()
+    {
+        synchronized (listeners)
+        {
+            return error
+        }
+    }
+
+    private def T getResult() throws ExecutionException
+    {
+        synchronized (listeners)
+        {
+            if (state == SUCCEEDED)
+            {
+                return value
+            }
+            if (state == CANCELLED)
+            {
+                throw error as CancellationException
+            }
+            throw new ExecutionException(error)
+        }
+    }
+
+    private def void copyFailure(RequestFuture<?> other)
+    {
+        if (other.isCancelled)
+        {
+            cancel(false)
+        } else {
+            fail(other.error)
+        }
+    }
+
+    private def boolean finish(int newState, T newValue, Throwable newError)
+    {
+        var List<Runnable> toRun = null
+        synchronized (listeners)
+        {
+            if (state != PENDING)
+            {
+                return false
+            }
+            state = newState
+            value = newValue
+            error = newError
+            if (newState != CANCELLED)
+            {
+                canceller = null
+            }
+            toRun = new ArrayList(listeners)
+            listeners.clear
+        }
+        done.countDown
+        for (listener : toRun)
+        {
+            run(listener)
+        }
+        return true
+    }
+
+    private def void run(Runnable listener)
+    {
+        try {
+            listener.run
+        } catch (RuntimeException e) {
+            Logger.w(TAG, "Listener failed", e)
+        }
+    }
+
+    private static synchronized def ScheduledExecutorService getTimer()
+    {
+        if (sTimer == null)
+        {
+            sTimer = Executors.newSingleThreadScheduledExecutor [ runnable |
+                val thread = new Thread(runnable, TAG)
+                thread.daemon = true
+                thread
+            ]
+        }
+        return sTimer
+    }
+}
+
+/**
+    Completes the future from the callbacks, after the wrapped response had them
+ */
+package class FutureResponse<R extends Response> extends Response
+{
+    val R target
+    val RequestFuture<R> future
+
+    new (R target, RequestFuture<R> future)
+    {
+        this.target = target
+        this.future = future
+    }
+
+    override consume(InputStream in, String charset) throws IOException
+    {
+        target.consume(in, charset)
+    }
+
+    override consume(String body) throws IOException
+    {
+        target.consume(body)
+    }
+
+    override onSuccess(RequestBase request)
+    {
+        copyStatusTo(target)
+        try {
+            target.onSuccess(request)
+        } catch (RuntimeException e) {
+            future.fail(e)
+            return
+        }
+        future.complete(target)
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        copyStatusTo(target)
+        try {
+            target.onError(request, e)
+        } finally {
+            future.fail(new ResponseException(request, code, e))
+        }
+    }
+}
+
+/**
+    A call that didn't succeed: the status code, 0 for a network error, and the cause if any
+ */
+class ResponseException extends IOException
+{
+    val int code
+
+    new (RequestBase request, int code, Exception cause)
+    {
+        super(request.command + '/' + request.action + (if (code > 0) " answered " + code else " failed"), cause)
+        this.code = code
+    }
+
+    def int getCode()
+    {
+        return code
+    }
+}
+
+/**
+    Keeps the body, for calls whose future only needs the JSON, see {@link RequestBase#submit()}
+ */
+class BodyResponse extends Response
+{
+    override onSuccess(RequestBase request)
+    {
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+    }
+}
@@ -0,0 +1,179 @@
+package nl.streamone.sdk
+
+import java.util.Map
+
+import nl.streamone.sdk.RequestBase
+
+/**
+    Builds the signed URL and the signature base in one pass, into buffers owned by the thread.
+
+    The signature base is the path and query of the URL (percent encoded, like android.net.Uri does)
+    followed by the POST arguments as they are: /api/command/action?timestamp=..&api=3..&arg=value
+
+    val url = RequestLineBuilder.forThread.build(request, hostname, port, timestamp).sign(signingKey)
+ */
+class RequestLineBuilder
+{
+    static val HEX = "0123456789ABCDEF".toCharArray
+
+    static val builders = new ThreadLocal<RequestLineBuilder> {
+        override protected initialValue() {
+            new RequestLineBuilder
+        }
+    }
+
+    val StringBuilder line = new StringBuilder(512)
+    byte[] signatureBase = newByteArrayOfSize(512)
+    int signatureBaseLength = 0
+
+    /**
+        Don't hold on to it, the next request on this thread reuses it
+     */
+    static def RequestLineBuilder forThread()
+    {
+        return builders.get
+    }
+
+    def RequestLineBuilder build(RequestBase request, String hostname, String port, long timestamp)
+    {
+        return build(request.scheme, hostname, port, request.command, request.action, timestamp,
+            request.parameters, request.arguments)
+    }
+
+    def RequestLineBuilder build(String scheme, String hostname, String port, String command, String action,
+        long timestamp, Map<String, String> parameters, Map<String, String> arguments)
+    {
+        line.setLength(0)
+        line.append(scheme).append('://').append(hostname)
+        if (port != null && !port.isEmpty)
+        {
+            line.append(':').append(port)
+        }
+
+        val pathStart = line.length
+        line.append('/api/')
+        encode(command)
+        line.append('/')
+        encode(action)
+
+        line.append('?timestamp=').append(timestamp)
+        for (p : parameters.entrySet)
+        {
+            line.append('&')
+            encode(p.key)
+            line.append('=')
+            encode(p.value)
+        }
+
+        signatureBaseLength = 0
+        appendAscii(line, pathStart, line.length)
+        for (arg : arguments.entrySet)
+        {
+            appendAscii('&')
+            appendAscii(arg.key)
+            appendAscii('=')
+            appendAscii(arg.value)
+        }
+        return this
+    }
+
+    /**
+        Appends the signature, returns the URL to open
+     */
+    def String sign(String signingKey)
+    {
+        line.append('&signature=')
+        HmacSigner.sign(signingKey, signatureBase, 0, signatureBaseLength, line)
+        return line.toString
+    }
+
+    /**
+        For debugging and tests only, allocates
+     */
+    def String getSignatureBase()
+    {
+        return new String(signatureBase, 0, signatureBaseLength, 'US-ASCII')
+    }
+
+    /**
+        The URL so far, without the signature until {@link #sign} is called
+     */
+    def CharSequence getLine()
+    {
+        return line
+    }
+
+    /**
+        Same as android.net.Uri.encode: everything but the unreserved characters as UTF-8 %XX
+     */
+    private def void encode(String s)
+    {
+        if (s == null)
+        {
+            return
+        }
+
+        var i = 0
+        while (i < s.length)
+        {
+            val c = s.charAt(i)
+            if (isUnreserved(c))
+            {
+                line.append(c)
+                i = i + 1
+            } else {
+                val codePoint = s.codePointAt(i)
+                val chars = Character.charCount(codePoint)
+                // rare, e.g. a title in a search query
+                for (b : s.substring(i, i + chars).getBytes('UTF-8'))
+                {
+                    val v = b.bitwiseAnd(0xff)
+                    line.append('%').append(HEX.get(v / 16)).append(HEX.get(v % 16))
+                }
+                i = i + chars
+            }
+        }
+    }
+
+    private static def boolean isUnreserved(char c)
+    {
+        return (c >= 'a'.charAt(0) && c <= 'z'.charAt(0))
+            || (c >= 'A'.charAt(0) && c <= 'Z'.charAt(0))
+            || (c >= '0'.charAt(0) && c <= '9'.charAt(0))
+            || "_-!.~'()*".indexOf(c) >= 0
+    }
+
+    /**
+        Like String.getBytes("ASCII"), anything else becomes '?'
+     */
+    private def void appendAscii(CharSequence s, int start, int end)
+    {
+        ensureCapacity(signatureBaseLength + end - start)
+        for (var i = start; i < end; i++)
+        {
+            val c = s.charAt(i)
+            signatureBase.set(signatureBaseLength, (if (c < 128) c else '?'.charAt(0)) as byte)
+            signatureBaseLength = signatureBaseLength + 1
+        }
+    }
+
+    private def void appendAscii(String s)
+    {
+        if (s == null)
+        {
+            appendAscii('null')
+        } else {
+            appendAscii(s, 0, s.length)
+        }
+    }
+
+    private def void ensureCapacity(int capacity)
+    {
+        if (signatureBase.length < capacity)
+        {
+            val grown = newByteArrayOfSize(Math.max(capacity, signatureBase.length * 2))
+            System.arraycopy(signatureBase, 0, grown, 0, signatureBaseLength)
+            signatureBase = grown
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package nl.streamone.sdk
+
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.List
+import java.util.Map
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+
+/**
+    Gets the snapshots, on the thread that called {@link RequestMetrics#publish}
+ */
+interface MetricsListener
+{
+    def void onMetrics(Map<String, CallSnapshot> snapshot)
+}
+
+/**
+    What the SDK did, per command/action: phase timings, bytes, status codes and cache hits.
+
+    Recording is a few atomic increments per call and never blocks, so it is on by default,
+    also in release builds. Nothing leaves the device unless a listener sends it somewhere.
+
+    - dns: OkHttp only, HttpURLConnection resolves inside connect
+    - connect: TCP, for new sockets only; HttpURLConnection doesn't say, a reused one counts as ~0
+    - tls: the handshake, for new https sockets only
+    - ttfb: request written until the status line is in
+    - body: reading (and decoding) the body
+    - total: the whole round trip, as the transport sees it
+
+    RequestMetrics.getDefault.addListener [ snapshot | ... ]
+    RequestMetrics.getDefault.publishEvery(60 * 1000)
+ */
+class RequestMetrics
+{
+    static val TAG = "RequestMetrics"
+
+    static RequestMetrics sDefault
+
+    static val traces = new ThreadLocal<CallTrace>
+
+    val ConcurrentHashMap<String, CallMetrics> calls = new ConcurrentHashMap
+    val List<MetricsListener> listeners = new CopyOnWriteArrayList
+
+    ScheduledExecutorService publisher
+    ScheduledFuture<?> publishTask
+
+    static synchronized def RequestMetrics getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new RequestMetrics
+        }
+        return sDefault
+    }
+
+    def void addListener(MetricsListener listener)
+    {
+        listeners.add(listener)
+    }
+
+    def void removeListener(MetricsListener listener)
+    {
+        listeners.remove(listener)
+    }
+
+    /**
+        Everything recorded since the start (or the last {@link #reset}), keyed on command/action
+     */
+    def Map<String, CallSnapshot> snapshot()
+    {
+        val Map<String, CallSnapshot> snapshot = newTreeMap[ a, b | a.compareTo(b) ]
+        for (entry : calls.entrySet)
+        {
+            snapshot.put(entry.key, entry.value.snapshot)
+        }
+        return snapshot
+    }
+
+    def void publish()
+    {
+        val snapshot = snapshot
+        for (listener : listeners)
+        {
+            try {
+                listener.onMetrics(snapshot)
+            } catch (RuntimeException e) {
+                Logger.w(TAG, "Metrics listener failed", e)
+            }
+        }
+    }
+
+    synchronized def void publishEvery(long intervalMillis)
+    {
+        stopPublishing
+        if (publisher == null)
+        {
+            publisher = Executors.newSingleThreadScheduledExecutor [ runnable |
+                val thread = new Thread(runnable, TAG)
+                thread.daemon = true
+                thread
+            ]
+        }
+        publishTask = publisher.scheduleWithFixedDelay([| publish ], intervalMillis, intervalMillis,
+            TimeUnit.MILLISECONDS)
+    }
+
+    synchronized def void stopPublishing()
+    {
+        publishTask?.cancel(false)
+        publishTask = null
+    }
+
+    def void reset()
+    {
+        calls.clear
+    }
+
+    /**
+        Over all calls, see {@link CallSnapshot#getBytesSaved}
+     */
+    def long getBytesSaved()
+    {
+        var saved = 0L
+        for (call : calls.values)
+        {
+            saved = saved + Math.max(0, call.decodedBytes.get - call.responseBytes.get)
+        }
+        return saved
+    }
+
+    /**
+        Called by the transport before it opens the connection, the trace is the thread's until {@link #end}
+     */
+    def CallTrace begin()
+    {
+        val trace = new CallTrace(traces.get)
+        traces.set(trace)
+        return trace
+    }
+
+    /**
+        Records the call, the total runs until {@link CallTrace#done} if the transport called it
+     */
+    def void end(CallTrace trace, RequestBase request)
+    {
+        // a callback may have chained the next request on this thread
+        traces.set(trace.previous)
+        val finished = if (trace.finished > 0) trace.finished else System.nanoTime
+        metricsFor(request).record(trace, finished - trace.start)
+    }
+
+    def void recordCache(RequestBase request, boolean hit)
+    {
+        val metrics = metricsFor(request)
+        if (hit)
+        {
+            metrics.cacheHits.incrementAndGet
+        } else {
+            metrics.cacheMisses.incrementAndGet
+        }
+    }
+
+    /**
+        The trace of the call running on this thread, for the socket and dns hooks; null if none
+     */
+    package static def CallTrace currentTrace()
+    {
+        return traces.get
+    }
+
+    private def CallMetrics metricsFor(RequestBase request)
+    {
+        val key = request.command + '/' + request.action
+        var metrics = calls.get(key)
+        if (metrics == null)
+        {
+            val created = new CallMetrics
+            metrics = calls.putIfAbsent(key, created) ?: created
+        }
+        return metrics
+    }
+}
+
+/**
+    One round trip, filled in by the transport on its thread; in nanoseconds, 0 when it didn't happen
+ */
+class CallTrace
+{
+    @Accessors(PUBLIC_GETTER)
+    val long start = System.nanoTime
+
+    @Accessors(PACKAGE_GETTER)
+    val CallTrace previous
+
+    @Accessors(PACKAGE_GETTER)
+    long finished
+
+    @Accessors
+    long dns
+
+    @Accessors
+    long connect
+
+    @Accessors
+    long tls
+
+    /**
+        When the socket was layered for TLS, the handshake follows right away and connect
+        returns once it is done; 0 when no new socket was made
+     */
+    @Accessors
+    long tlsStart
+
+    @Accessors
+    long ttfb
+
+    @Accessors
+    long body
+
+    @Accessors
+    long requestBytes
+
+    /**
+        As they came over the wire
+     */
+    @Accessors
+    long responseBytes
+
+    /**
+        After decompression
+     */
+    @Accessors
+    long decodedBytes
+
+    /**
+        0 for a network error
+     */
+    @Accessors
+    int code
+
+    new (CallTrace previous)
+    {
+        this.previous = previous
+    }
+
+    /**
+        The round trip is over, what follows are the callbacks
+     */
+    def void done()
+    {
+        finished = System.nanoTime
+    }
+
+    /**
+        Counts the body as it came over the wire into responseBytes
+     */
+    def InputStream count(InputStream in)
+    {
+        return count(in, false)
+    }
+
+    /**
+        Counts the decompressed body into decodedBytes
+     */
+    def InputStream countDecoded(InputStream in)
+    {
+        return count(in, true)
+    }
+
+    private def InputStream count(InputStream in, boolean decoded)
+    {
+        return new FilterInputStream(in) {
+            override read() throws IOException {
+                val b = super.read
+                if (b != -1) {
+                    add(decoded, 1)
+                }
+                return b
+            }
+
+            override read(byte[] buffer, int offset, int length) throws IOException {
+                val read = super.read(buffer, offset, length)
+                if (read > 0) {
+                    add(decoded, read)
+                }
+                return read
+            }
+        }
+    }
+
+    private def void add(boolean decoded, int count)
+    {
+        if (decoded)
+        {
+            decodedBytes = decodedBytes + count
+        } else {
+            responseBytes = responseBytes + count
+        }
+    }
+}
+
+package class CallMetrics
+{
+    /**
+        0: network error, 1-5: 1xx-5xx
+     */
+    package val AtomicLongArray statuses = new AtomicLongArray(6)
+    package val AtomicLong cacheHits = new AtomicLong
+    package val AtomicLong cacheMisses = new AtomicLong
+    package val AtomicLong requestBytes = new AtomicLong
+    package val AtomicLong responseBytes = new AtomicLong
+    package val AtomicLong decodedBytes = new AtomicLong
+
+    package val LatencyHistogram dns = new LatencyHistogram
+    package val LatencyHistogram connect = new LatencyHistogram
+    package val LatencyHistogram tls = new LatencyHistogram
+    package val LatencyHistogram ttfb = new LatencyHistogram
+    package val LatencyHistogram body = new LatencyHistogram
+    package val LatencyHistogram total = new LatencyHistogram
+
+    def void record(CallTrace trace, long totalNanos)
+    {
+        val code = trace.code
+        statuses.incrementAndGet(if (code >= 100 && code < 600) code / 100 else 0)
+        requestBytes.addAndGet(trace.requestBytes)
+        responseBytes.addAndGet(trace.responseBytes)
+        decodedBytes.addAndGet(trace.decodedBytes)
+
+        val tlsNanos = trace.tls
+        if (trace.dns > 0) dns.record(trace.dns)
+        if (trace.connect > 0) connect.record(trace.connect)
+        if (tlsNanos > 0) tls.record(tlsNanos)
+        if (trace.ttfb > 0) ttfb.record(trace.ttfb)
+        if (trace.body > 0) body.record(trace.body)
+        total.record(totalNanos)
+    }
+
+    def CallSnapshot snapshot()
+    {
+        val counts = newLongArrayOfSize(6)
+        for (var i = 0; i < 6; i++)
+        {
+            counts.set(i, statuses.get(i))
+        }
+        return new CallSnapshot(counts, cacheHits.get, cacheMisses.get, requestBytes.get, responseBytes.get,
+            decodedBytes.get, dns.snapshot, connect.snapshot, tls.snapshot, ttfb.snapshot, body.snapshot, total.snapshot)
+    }
+}
+
+/**
+    A command/action at one point in time, all totals since the start
+ */
+class CallSnapshot
+{
+    val long[] statuses
+
+    @Accessors(PUBLIC_GETTER)
+    val long cacheHits
+    @Accessors(PUBLIC_GETTER)
+    val long cacheMisses
+    @Accessors(PUBLIC_GETTER)
+    val long requestBytes
+    @Accessors(PUBLIC_GETTER)
+    val long responseBytes
+    @Accessors(PUBLIC_GETTER)
+    val long decodedBytes
+
+    @Accessors(PUBLIC_GETTER)
+    val HistogramSnapshot dns
+    @Accessors(PUBLIC_GETTER)
+    val HistogramSnapshot connect
+    @Accessors(PUBLIC_GETTER)
+    val HistogramSnapshot tls
+    @Accessors(PUBLIC_GETTER)
+    val HistogramSnapshot ttfb
+    @Accessors(PUBLIC_GETTER)
+    val HistogramSnapshot body
+    @Accessors(PUBLIC_GETTER)
+    val HistogramSnapshot total
+
+    new (long[] statuses, long cacheHits, long cacheMisses, long requestBytes, long responseBytes,
+        long decodedBytes, HistogramSnapshot dns, HistogramSnapshot connect, HistogramSnapshot tls, HistogramSnapshot ttfb,
+        HistogramSnapshot body, HistogramSnapshot total)
+    {
+        this.statuses = statuses
+        this.cacheHits = cacheHits
+        this.cacheMisses = cacheMisses
+        this.requestBytes = requestBytes
+        this.responseBytes = responseBytes
+        this.decodedBytes = decodedBytes
+        this.dns = dns
+        this.connect = connect
+        this.tls = tls
+        this.ttfb = ttfb
+        this.body = body
+        this.total = total
+    }
+
+    /**
+        Calls that got a status in the 1xx-5xx class, e.g. getStatusCount(5)
+     */
+    def long getStatusCount(int statusClass)
+    {
+        return statuses.get(statusClass)
+    }
+
+    def long getNetworkErrorCount()
+    {
+        return statuses.get(0)
+    }
+
+    /**
+        What compression kept off the wire
+     */
+    def long getBytesSaved()
+    {
+        return Math.max(0, decodedBytes - responseBytes)
+    }
+
+    override toString()
+    {
+        String.format("%d calls, %d errors, 5xx %d, cache %d/%d, %d B out, %d B in (%d B saved), total %s",
+            total.count, networkErrorCount, getStatusCount(5), cacheHits, cacheHits + cacheMisses,
+            requestBytes, responseBytes, bytesSaved, total)
+    }
+}
+
+/**
+    Log-linear buckets of microseconds: every power of two split in SUB_BUCKETS, so any value is
+    within 1/SUB_BUCKETS of its bucket. Recording is one atomic increment per counter, no locks.
+ */
+class LatencyHistogram
+{
+    static val SUB_BUCKET_BITS = 3
+    static val SUB_BUCKETS = 1 << SUB_BUCKET_BITS
+
+    /**
+        Up to 2^36 us, i.e. ~19 hours
+     */
+    static val MAGNITUDES = 36
+
+    val AtomicLongArray buckets = new AtomicLongArray((MAGNITUDES + 1) * SUB_BUCKETS)
+    val AtomicLong count = new AtomicLong
+    val AtomicLong sum = new AtomicLong
+    val AtomicLong max = new AtomicLong
+
+    def void record(long nanos)
+    {
+        val micros = nanos / 1000
+        buckets.incrementAndGet(indexFor(micros))
+        count.incrementAndGet
+        sum.addAndGet(micros)
+        var current = max.get
+        while (micros > current && !max.compareAndSet(current, micros))
+        {
+            current = max.get
+        }
+    }
+
+    def HistogramSnapshot snapshot()
+    {
+        val counts = newLongArrayOfSize(buckets.length)
+        for (var i = 0; i < counts.length; i++)
+        {
+            counts.set(i, buckets.get(i))
+        }
+        return new HistogramSnapshot(counts, count.get, sum.get, max.get)
+    }
+
+    package static def int indexFor(long micros)
+    {
+        if (micros < SUB_BUCKETS)
+        {
+            return Math.max(0, micros as int)
+        }
+        val magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS
+        if (magnitude >= MAGNITUDES)
+        {
+            return (MAGNITUDES + 1) * SUB_BUCKETS - 1
+        }
+        val sub = (micros >> magnitude) as int - SUB_BUCKETS
+        return (magnitude + 1) * SUB_BUCKETS + sub
+    }
+
+    /**
+        The upper bound of the bucket, in microseconds
+     */
+    package static def long valueFor(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index
+        }
+        val magnitude = index / SUB_BUCKETS - 1
+        val sub = index % SUB_BUCKETS + SUB_BUCKETS
+        return ((sub + 1L) << magnitude) - 1
+    }
+}
+
+class HistogramSnapshot
+{
+    val long[] counts
+
+    @Accessors(PUBLIC_GETTER)
+    val long count
+
+    /**
+        In microseconds
+     */
+    @Accessors(PUBLIC_GETTER)
+    val long sum
+
+    @Accessors(PUBLIC_GETTER)
+    val long max
+
+    new (long[] counts, long count, long sum, long max)
+    {
+        this.counts = counts
+        this.count = count
+        this.sum = sum
+        this.max = max
+    }
+
+    def double getMeanMillis()
+    {
+        return if (count == 0) 0 else sum / 1000.0 / count
+    }
+
+    /**
+        e.g. percentileMillis(0.95), 0 when nothing was recorded
+     */
+    def double percentileMillis(double p)
+    {
+        // a concurrent record may have bumped a bucket but not the count yet, go by the buckets
+        var total = 0L
+        for (c : counts)
+        {
+            total = total + c
+        }
+        if (total == 0)
+        {
+            return 0
+        }
+        val rank = Math.max(1, Math.ceil(p * total) as long)
+        var seen = 0L
+        for (var i = 0; i < counts.length; i++)
+        {
+            seen = seen + counts.get(i)
+            if (seen >= rank)
+            {
+                return Math.min(LatencyHistogram.valueFor(i), max) / 1000.0
+            }
+        }
+        return max / 1000.0
+    }
+
+    override toString()
+    {
+        String.format("mean %.1f p50 %.1f p95 %.1f p99 %.1f max %.1f ms", meanMillis, percentileMillis(0.5),
+            percentileMillis(0.95), percentileMillis(0.99), max / 1000.0)
+    }
+}
@@ -0,0 +1,603 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.net.SocketTimeoutException
+import java.util.Arrays
+import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+import java.util.List
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    Keeps one slow node or a dropped packet from stalling a screen, per command/action:
+
+    - the read timeout of idempotent calls follows the latency we actually see, a few times
+      the p99, instead of a flat 10 seconds; a timed out attempt counts as taking the timeout,
+      so a slower API raises it again. A timeout the caller set is left alone
+    - idempotent calls (GETs and view actions) are retried on network errors, 408, 429 and 5xx,
+      with jittered exponential backoff
+    - optionally, an idempotent call that is still out after the p95 gets a duplicate,
+      whichever answers first wins and the other one is aborted
+
+    Retries and duplicates draw from a shared budget that only grows with regular calls,
+    so together they add at most budgetRatio to the load, also when the API is down.
+    Writes are never repeated, see OutboundQueue for those.
+
+    request.resilience = ResiliencePolicy.getDefault
+ */
+class ResiliencePolicy
+{
+    static val TAG = "ResiliencePolicy"
+
+    public static val DEFAULT_MAX_ATTEMPTS = 3
+    public static val BASE_BACKOFF_MILLIS = 100L
+    public static val MAX_BACKOFF_MILLIS = 2000L
+
+    /**
+        Extra attempts per regular call, in the long run
+     */
+    public static val DEFAULT_BUDGET_RATIO = 0.1
+
+    /**
+        How many extra attempts can be saved up for a burst of failures
+     */
+    public static val MAX_BUDGET = 10
+
+    public static val MIN_TIMEOUT = 2000
+    public static val MAX_TIMEOUT = 3 * RequestBase.DEFAULT_TIMEOUT
+
+    /**
+        The read timeout is this many times the p99
+     */
+    public static val TIMEOUT_FACTOR = 3
+
+    /**
+        Below this the percentiles are noise, the defaults stand
+     */
+    public static val MIN_SAMPLES = 20
+
+    static ResiliencePolicy sDefault
+
+    @Accessors
+    volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS
+
+    @Accessors
+    volatile boolean hedging = false
+
+    @Accessors
+    volatile double budgetRatio = DEFAULT_BUDGET_RATIO
+
+    val ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap
+
+    /**
+        In thousandths of an attempt
+     */
+    val AtomicLong budget = new AtomicLong(MAX_BUDGET * 1000L)
+
+    val AtomicLong retryCount = new AtomicLong
+    val AtomicLong hedgeCount = new AtomicLong
+    val AtomicLong deniedCount = new AtomicLong
+    val Random random = new Random
+
+    ExecutorService hedger
+
+    static synchronized def ResiliencePolicy getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new ResiliencePolicy
+        }
+        return sDefault
+    }
+
+    /**
+        The read timeout we'd use for the request right now
+     */
+    def int getTimeout(RequestBase request)
+    {
+        val window = latencies.get(keyFor(request))
+        if (window == null || window.count < MIN_SAMPLES)
+        {
+            return RequestBase.DEFAULT_TIMEOUT
+        }
+        val timeout = window.percentile(0.99) * TIMEOUT_FACTOR
+        return Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, timeout as int))
+    }
+
+    /**
+        When a duplicate would go out, -1 while we don't know the p95 yet
+     */
+    def long getHedgeDelay(RequestBase request)
+    {
+        val window = latencies.get(keyFor(request))
+        if (window == null || window.count < MIN_SAMPLES)
+        {
+            return -1
+        }
+        return window.percentile(0.95)
+    }
+
+    def long getRetryCount()
+    {
+        return retryCount.get
+    }
+
+    def long getHedgeCount()
+    {
+        return hedgeCount.get
+    }
+
+    /**
+        Retries and duplicates we skipped because the budget ran out
+     */
+    def long getDeniedCount()
+    {
+        return deniedCount.get
+    }
+
+    /**
+        Runs the round trip on the calling thread, in place of {@link RequestBase#perform}
+     */
+    package def void perform(RequestBase request, Response response)
+    {
+        val window = windowFor(request)
+        deposit
+
+        if (!request.isIdempotent)
+        {
+            val start = System.nanoTime
+            request.perform(new TimingResponse(response, window, start))
+            return
+        }
+
+        request.adaptReadTimeout(getTimeout(request))
+        var attempt = 1
+        var AttemptResponse result = null
+        var done = false
+        while (!done)
+        {
+            val hedgeDelay = if (hedging) getHedgeDelay(request) else -1
+            result = if (hedgeDelay >= 0) race(request, window, hedgeDelay) else attempt(request, window)
+
+            // an aborted request stays aborted, nobody wants the retry
+            if (result.outcome != Outcome.RETRY || attempt >= maxAttempts || request.aborted || !withdraw)
+            {
+                done = true
+            } else {
+                retryCount.incrementAndGet
+                try {
+                    Thread.sleep(backoff(attempt))
+                } catch (InterruptedException e) {
+                    Thread.currentThread.interrupt
+                    done = true
+                }
+                attempt = attempt + 1
+            }
+        }
+
+        result.copyTo(response)
+        if (result.outcome == Outcome.DELIVERED)
+        {
+            response.onSuccess(request)
+        } else {
+            response.onError(request, result.error)
+        }
+    }
+
+    private def AttemptResponse attempt(RequestBase request, LatencyWindow window)
+    {
+        return attempt(request, window, null)
+    }
+
+    /**
+        An attempt that lost a race and was aborted says nothing about the latency
+     */
+    private def AttemptResponse attempt(RequestBase request, LatencyWindow window, HedgedAttempt hedged)
+    {
+        val result = new AttemptResponse
+        val start = System.nanoTime
+        try {
+            request.perform(result)
+        } catch (RuntimeException e) {
+            result.onError(request, e)
+            result.permanent = true
+        }
+        if (hedged != null && hedged.aborted)
+        {
+            return result
+        }
+        if (result.outcome == Outcome.DELIVERED)
+        {
+            window.add((System.nanoTime - start) / 1000000)
+        } else if (result.timedOut) {
+            // at least this slow, leaving it out would only ever let the timeout shrink
+            window.add(request.readTimeout)
+        }
+        return result
+    }
+
+    /**
+        Both attempts run on the hedger, the caller waits for the first success or the last failure.
+        The first success aborts the other attempt, so it gives back its connection right away.
+     */
+    private def AttemptResponse race(RequestBase request, LatencyWindow window, long hedgeDelay)
+    {
+        val executor = getHedger()
+        val race = new HedgedCall
+        race.start(executor, [ hedged | attempt(request, window, hedged) ])
+        try {
+            if (!race.await(hedgeDelay) && !request.aborted && withdraw)
+            {
+                hedgeCount.incrementAndGet
+                Logger.i(TAG, request.command + '/' + request.action + " is past its p95 of " + hedgeDelay + " ms, hedging")
+                race.start(executor, [ hedged | attempt(request, window, hedged) ])
+            }
+            race.await(-1)
+        } catch (InterruptedException e) {
+            Thread.currentThread.interrupt
+            race.abort
+        }
+        return race.result ?: {
+            val interrupted = new AttemptResponse
+            interrupted.onError(request, new IOException("Interrupted"))
+            interrupted.permanent = true
+            interrupted
+        }
+    }
+
+    private def synchronized ExecutorService getHedger()
+    {
+        if (hedger == null)
+        {
+            val threadCount = new AtomicInteger
+            hedger = Executors.newCachedThreadPool [ runnable |
+                val thread = new Thread(runnable, TAG + '-' + threadCount.incrementAndGet)
+                thread.daemon = true
+                thread
+            ]
+        }
+        return hedger
+    }
+
+    private def LatencyWindow windowFor(RequestBase request)
+    {
+        val key = keyFor(request)
+        var window = latencies.get(key)
+        if (window == null)
+        {
+            val created = new LatencyWindow
+            window = latencies.putIfAbsent(key, created) ?: created
+        }
+        return window
+    }
+
+    private static def String keyFor(RequestBase request)
+    {
+        return request.command + '/' + request.action
+    }
+
+    private def void deposit()
+    {
+        val add = (budgetRatio * 1000) as long
+        var current = budget.get
+        while (current < MAX_BUDGET * 1000L && !budget.compareAndSet(current, Math.min(MAX_BUDGET * 1000L, current + add)))
+        {
+            current = budget.get
+        }
+    }
+
+    private def boolean withdraw()
+    {
+        var current = budget.get
+        while (current >= 1000)
+        {
+            if (budget.compareAndSet(current, current - 1000))
+            {
+                return true
+            }
+            current = budget.get
+        }
+        deniedCount.incrementAndGet
+        return false
+    }
+
+    /**
+        Full jitter: anywhere up to the exponential delay
+     */
+    private def long backoff(int attempt)
+    {
+        val exponential = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1))
+        return (random.nextDouble * exponential) as long
+    }
+}
+
+package enum Outcome {
+    DELIVERED,
+    DROPPED,
+    RETRY
+}
+
+/**
+    Holds on to the result of one attempt, only the last attempt reaches the caller's response
+ */
+package class AttemptResponse extends Response
+{
+    @Accessors(PACKAGE_GETTER)
+    Exception error
+
+    boolean succeeded = false
+    boolean failed = false
+
+    @Accessors(PACKAGE_SETTER)
+    boolean permanent = false
+
+    override onSuccess(RequestBase request)
+    {
+        succeeded = true
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        failed = true
+        error = e
+    }
+
+    def Outcome getOutcome()
+    {
+        if (succeeded)
+        {
+            return Outcome.DELIVERED
+        }
+        if (permanent)
+        {
+            return Outcome.DROPPED
+        }
+        // no status: the network, 408/429/5xx: the server, all worth another try
+        if (code == 0 || code == 408 || code == 429 || code >= 500 || !failed)
+        {
+            return Outcome.RETRY
+        }
+        return Outcome.DROPPED
+    }
+
+    def boolean isTimedOut()
+    {
+        return error instanceof SocketTimeoutException || error?.cause instanceof SocketTimeoutException
+    }
+
+    def void copyTo(Response response)
+    {
+        copyStatusTo(response)
+        if (json != null)
+        {
+            try {
+                response.consume(json)
+            } catch (IOException e) {
+                Logger.w("AttemptResponse", "Unable to hand over the response body", e)
+            }
+        }
+    }
+}
+
+/**
+    Records the latency of a call we don't buffer, e.g. a write
+ */
+package class TimingResponse extends Response
+{
+    val Response target
+    val LatencyWindow window
+    val long start
+
+    new (Response target, LatencyWindow window, long start)
+    {
+        this.target = target
+        this.window = window
+        this.start = start
+    }
+
+    override consume(java.io.InputStream in, String charset) throws IOException
+    {
+        target.consume(in, charset)
+    }
+
+    override consume(String body) throws IOException
+    {
+        target.consume(body)
+    }
+
+    override onSuccess(RequestBase request)
+    {
+        window.add((System.nanoTime - start) / 1000000)
+        copyStatusTo(target)
+        target.onSuccess(request)
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        copyStatusTo(target)
+        target.onError(request, e)
+    }
+}
+
+/**
+    One of the attempts of a hedged call. Both go out for the same request, so aborting the request
+    aborts both; what the transport registers on the attempt's thread also lands here, to abort
+    just this one.
+ */
+package class HedgedAttempt
+{
+    static val running = new ThreadLocal<HedgedAttempt>
+
+    val List<Runnable> aborters = new CopyOnWriteArrayList
+
+    volatile boolean aborted = false
+
+    /**
+        The attempt running on this thread, for {@link RequestBase#onAbort}; null if none
+     */
+    package static def HedgedAttempt current()
+    {
+        return running.get
+    }
+
+    def void run(() => void attempt)
+    {
+        running.set(this)
+        try {
+            attempt.apply
+        } finally {
+            running.remove
+        }
+    }
+
+    def void onAbort(Runnable aborter)
+    {
+        aborters.add(aborter)
+        if (aborted)
+        {
+            aborter.run
+        }
+    }
+
+    def void clearAbort(Runnable aborter)
+    {
+        aborters.remove(aborter)
+    }
+
+    def void abort()
+    {
+        aborted = true
+        for (aborter : aborters)
+        {
+            aborter.run
+        }
+    }
+
+    def boolean isAborted()
+    {
+        return aborted
+    }
+}
+
+/**
+    First success wins and aborts the others, otherwise the last one to fail
+ */
+package class HedgedCall
+{
+    val CountDownLatch finished = new CountDownLatch(1)
+    val List<HedgedAttempt> attempts = newArrayList
+    int completed = 0
+    AttemptResponse result
+
+    def synchronized void start(ExecutorService executor, (HedgedAttempt) => AttemptResponse attempt)
+    {
+        if (finished.count == 0)
+        {
+            return
+        }
+        val hedged = new HedgedAttempt
+        attempts.add(hedged)
+        executor.execute [|
+            hedged.run [| complete(hedged, attempt.apply(hedged)) ]
+        ]
+    }
+
+    private def void complete(HedgedAttempt hedged, AttemptResponse attempt)
+    {
+        var List<HedgedAttempt> losers = null
+        synchronized (this)
+        {
+            completed = completed + 1
+            if (finished.count == 0)
+            {
+                return
+            }
+            if (attempt.outcome == Outcome.DELIVERED || completed == attempts.size)
+            {
+                result = attempt
+                finished.countDown
+                losers = attempts.filter[it !== hedged].toList
+            }
+        }
+        // outside the lock, aborting closes a socket
+        losers?.forEach[abort]
+    }
+
+    /**
+        Aborts what is still out, for a caller that stops waiting
+     */
+    def void abort()
+    {
+        var List<HedgedAttempt> running = null
+        synchronized (this)
+        {
+            running = newArrayList(attempts)
+        }
+        running.forEach[abort]
+    }
+
+    /**
+        false when it timed out, -1 waits for good
+     */
+    def boolean await(long millis) throws InterruptedException
+    {
+        if (millis < 0)
+        {
+            finished.await
+            return true
+        }
+        return finished.await(millis, TimeUnit.MILLISECONDS)
+    }
+
+    def synchronized AttemptResponse getResult()
+    {
+        return result
+    }
+}
+
+/**
+    The last SIZE latencies of a command/action, in milliseconds
+ */
+package class LatencyWindow
+{
+    static val SIZE = 128
+
+    val long[] samples = newLongArrayOfSize(SIZE)
+    val long[] sorted = newLongArrayOfSize(SIZE)
+    int next = 0
+    int count = 0
+
+    def synchronized void add(long millis)
+    {
+        samples.set(next, millis)
+        next = (next + 1) % SIZE
+        count = Math.min(count + 1, SIZE)
+    }
+
+    def synchronized int getCount()
+    {
+        return count
+    }
+
+    def synchronized long percentile(double p)
+    {
+        if (count == 0)
+        {
+            return 0
+        }
+        System.arraycopy(samples, 0, sorted, 0, count)
+        Arrays.sort(sorted, 0, count)
+        return sorted.get(Math.min(count - 1, (p * count) as int))
+    }
+}
@@ -0,0 +1,98 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.util.List
+import java.util.Map
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    What {@link RequestBase#executeNow} consults before going out, keyed on {@link RequestBase#getRequestKey}.
+    The android module's ApiResponseCache is the one to use.
+ */
+interface ResponseCache
+{
+    /**
+        Returns null on a miss or when the entry expired
+     */
+    def CachedResponse get(String key)
+
+    /**
+        Returns whether the response was worth keeping
+     */
+    def boolean put(String key, Response response)
+}
+
+class CachedResponse
+{
+    @Accessors(PUBLIC_GETTER)
+    val String json
+
+    /**
+        Not persisted, null when the entry came from disk
+     */
+    @Accessors(PUBLIC_GETTER)
+    val Map<String, List<String>> headers
+
+    @Accessors(PUBLIC_GETTER)
+    val long expires
+
+    new (String json, Map<String, List<String>> headers, long expires)
+    {
+        this.json = json
+        this.headers = headers
+        this.expires = expires
+    }
+
+    /**
+        As if it just came in over the wire
+     */
+    def void replay(Response response) throws IOException
+    {
+        response.code = 200
+        response.headers = headers
+        response.consume(json)
+    }
+}
+
+/**
+    Stores the result on the way back to the caller
+ */
+package class CachingResponse extends Response
+{
+    val Response target
+    val ResponseCache cache
+    val String key
+
+    new (Response target, ResponseCache cache, String key)
+    {
+        this.target = target
+        this.cache = cache
+        this.key = key
+    }
+
+    /**
+        The cache needs the whole String, the target decodes it from there
+     */
+    override consume(String body) throws IOException
+    {
+        super.consume(body)
+        target.consume(body)
+    }
+
+    override onSuccess(RequestBase request)
+    {
+        cache.put(key, this)
+        copyStatusTo(target)
+        target.onSuccess(request)
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        copyStatusTo(target)
+        target.onError(request, e)
+    }
+}
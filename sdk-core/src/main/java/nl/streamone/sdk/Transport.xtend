@@ -0,0 +1,181 @@
+package nl.streamone.sdk
+
+import java.io.ByteArrayInputStream
+import java.io.OutputStreamWriter
+import java.net.HttpURLConnection
+import java.net.URL
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    Moves a signed request over the wire.
+
+    The request is signed by the time it gets here; a transport only has to send the method,
+    the POST data and the URL, feed the body to {@link Response#consume}, fill in code and headers
+    and end in exactly one onSuccess or onError.
+ */
+interface Transport
+{
+    def void send(RequestBase request, URL url, Response response)
+}
+
+/**
+    The platform's HttpURLConnection, sockets are managed by a {@link ConnectionManager}
+ */
+class HttpUrlConnectionTransport implements Transport
+{
+    static HttpUrlConnectionTransport sDefault
+
+    @Accessors(PUBLIC_GETTER)
+    val ConnectionManager connectionManager
+
+    new ()
+    {
+        this(ConnectionManager.getDefault)
+    }
+
+    new (ConnectionManager connectionManager)
+    {
+        this.connectionManager = connectionManager
+    }
+
+    static synchronized def HttpUrlConnectionTransport getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new HttpUrlConnectionTransport
+        }
+        return sDefault
+    }
+
+    override send(RequestBase request, URL url, Response response)
+    {
+        val metrics = request.metrics
+        val trace = metrics?.begin
+        try {
+            send(request, url, response, trace)
+        } finally {
+            metrics?.end(trace, request)
+        }
+    }
+
+    private def void send(RequestBase request, URL url, Response response, CallTrace trace)
+    {
+        var HttpURLConnection connection = null
+        try {
+            connection = connectionManager.open(url, request.connectTimeout)
+        } catch(java.io.IOException e) {
+            response.onError(request, e)
+            return
+        }
+
+        // disconnect from another thread closes the socket, a blocked read or write throws
+        val opened = connection
+        val Runnable aborter = [| opened.disconnect ]
+        request.onAbort(aborter)
+
+        try {
+            connection.requestMethod = request.method
+        } catch(java.net.ProtocolException e) {
+            connectionManager.release(connection, true)
+            response.onError(request, e)
+            return
+        }
+
+        connection.doInput = true
+        connection.useCaches = request.useCaches
+
+        connection.connectTimeout = request.connectTimeout
+        connection.readTimeout = request.readTimeout
+        // asking ourselves turns off the platform's transparent gzip, we decode below
+        connection.setRequestProperty('Accept-Encoding', ContentEncoding.ACCEPT_ENCODING)
+
+        try {
+            var postData = null as String
+            var postLength = 0
+            if ('POST'.equals(request.method) || 'PUT'.equals(request.method))
+            {
+                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded")
+                postData = request.postData
+                if (postData != null)
+                {
+                    postLength = postData.bytes.size
+                    connection.setRequestProperty("Content-Length", Integer.toString(postLength))
+                    connection.doOutput = true
+                }
+            }
+
+            if (trace != null)
+            {
+                // a no-op on a reused socket, on a new one it is DNS, TCP and the handshake
+                val connectStart = System.nanoTime
+                connection.connect
+                val connected = System.nanoTime
+                // the socket factory marked where TCP ended and the handshake began
+                val tlsStart = trace.tlsStart
+                if (tlsStart >= connectStart)
+                {
+                    trace.tls = connected - tlsStart
+                    trace.connect = tlsStart - connectStart
+                } else {
+                    trace.connect = connected - connectStart
+                }
+                trace.requestBytes = url.toString.length + postLength
+            }
+
+            if (postData != null)
+            {
+                val out = new OutputStreamWriter(connection.outputStream)
+                out.write(postData)
+                out.close
+            }
+
+            // the body of a 4xx/5xx is only available through the error stream
+            val waitStart = System.nanoTime
+            val code = connection.responseCode
+            var stream = if (code >= HttpURLConnection.HTTP_BAD_REQUEST) connection.errorStream else connection.inputStream
+            stream = stream ?: new ByteArrayInputStream(newByteArrayOfSize(0))
+
+            if (trace != null)
+            {
+                trace.ttfb = System.nanoTime - waitStart
+                trace.code = code
+                stream = trace.count(stream)
+            }
+            stream = ContentEncoding.decode(stream, connection.contentEncoding)
+            if (trace != null)
+            {
+                stream = trace.countDecoded(stream)
+            }
+            val bodyStart = System.nanoTime
+            response.consume(stream, ContentEncoding.charsetOf(connection.contentType))
+            trace?.setBody(System.nanoTime - bodyStart)
+
+            response.headers = connection.headerFields
+            response.code = code
+
+            // give the socket back before the callbacks, they may well chain the next request
+            connectionManager.release(connection, request.closeConnectionAfterUse)
+            connection = null
+            trace?.done
+
+            // is HTTP_OK the only valid response code? Is this the only _happy flow_?
+            if (HttpURLConnection.HTTP_OK == code) {
+                // handle success
+                response.onSuccess(request)
+            } else {
+                // handle error code
+                response.onError(request, null)
+            }
+        } catch(java.io.IOException e) {
+            response.onError(request, if (request.aborted) new java.io.IOException("Canceled", e) else e)
+        } finally {
+            request.clearAbort(aborter)
+            // still ours when it failed or was aborted, don't read anything off it, that might send it again
+            connectionManager.release(connection, true)
+        }
+    }
+}
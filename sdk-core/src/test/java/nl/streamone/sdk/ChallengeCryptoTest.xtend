@@ -0,0 +1,43 @@
+package nl.streamone.sdk
+
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ * The challenge response against what the PHP SDK computes, and bcrypt against its reference vectors
+ */
+class ChallengeCryptoTest {
+    static val password = "password".getBytes("UTF-8")
+    static val challenge = "coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6".getBytes("US-ASCII")
+    static val salt = "$2y$12$baztaaydu13s4ah6y6pegt".getBytes("US-ASCII")
+
+    static def String crypt(String key, String setting) {
+        val out = newByteArrayOfSize(ChallengeCrypto.HASH_LENGTH)
+        ChallengeCrypto.forThread.crypt(key.getBytes("UTF-8"), setting.getBytes("US-ASCII"), out)
+        return new String(out, "US-ASCII")
+    }
+
+    @Test
+    public def void same_response_as_php() {
+        assertEquals("HQtJEAcGEwAASEJTUx0GRQYKRAACUQ8YD0BdXlVZVC90TBwgdhBlLm9RA1R5N0AFW25wUVMNHHpeY1QD",
+            Cryptography.getChallengeResponse(password, challenge, salt))
+
+        val out = newByteArrayOfSize(ChallengeCrypto.RESPONSE_LENGTH + 2)
+        ChallengeCrypto.forThread.response(password, challenge, salt, out, 2)
+        assertEquals(Cryptography.getChallengeResponse(password, challenge, salt),
+            new String(out, 2, ChallengeCrypto.RESPONSE_LENGTH, "US-ASCII"))
+    }
+
+    @Test
+    public def void bcrypt_vectors() {
+        assertEquals("$2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s.",
+            crypt("", "$2a$06$DCq7YPn5Rq63x1Lad4cll."))
+        assertEquals("$2a$06$If6bvum7DFjUnE9p2uDeDu0YHzrHM6tf.iqN8.yx.jNN1ILEf7h0i",
+            crypt("abc", "$2a$06$If6bvum7DFjUnE9p2uDeDu"))
+    }
+
+    @Test(expected = IllegalArgumentException)
+    public def void rejects_other_salts() {
+        crypt("abc", "$1$saltsalt$")
+    }
+}
@@ -0,0 +1,117 @@
+package nl.streamone.sdk
+
+import java.net.URL
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+import com.squareup.okhttp.Protocol
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.mockwebserver.RecordedRequest
+
+/**
+ * A burst to a cold host waits for the first call to connect, then shares its connection
+ */
+class ConnectionGateTest {
+    val url = new URL('https://api.streamone.nl/api/item/view')
+
+    def Thread entering(ConnectionGate gate, CountDownLatch entered) {
+        val thread = new Thread [|
+            gate.enter(url, 5000)
+            entered.countDown
+        ]
+        thread.start
+        return thread
+    }
+
+    @Test
+    public def void a_burst_waits_for_the_first_connection() {
+        val gate = new ConnectionGate
+        val first = gate.enter(url, 5000)
+
+        val entered = new CountDownLatch(2)
+        entering(gate, entered)
+        entering(gate, entered)
+        assertFalse("still connecting", entered.await(100, TimeUnit.MILLISECONDS))
+
+        first.connected(Protocol.HTTP_2)
+        assertTrue(entered.await(5, TimeUnit.SECONDS))
+        assertTrue(first.multiplexed)
+    }
+
+    @Test
+    public def void a_first_call_that_fails_lets_the_others_go() {
+        val gate = new ConnectionGate
+        val first = gate.enter(url, 5000)
+
+        val entered = new CountDownLatch(1)
+        entering(gate, entered)
+        assertFalse(entered.await(100, TimeUnit.MILLISECONDS))
+
+        first.leave
+        assertTrue(entered.await(5, TimeUnit.SECONDS))
+    }
+
+    @Test
+    public def void nobody_waits_for_an_http1_host() {
+        val gate = new ConnectionGate
+        val first = gate.enter(url, 5000)
+        first.connected(Protocol.HTTP_1_1)
+        first.leave
+        assertFalse(first.multiplexed)
+
+        // a new burst: the first is still connecting, nothing to share anyway
+        gate.enter(url, 5000)
+        val entered = new CountDownLatch(1)
+        entering(gate, entered)
+        assertTrue(entered.await(1, TimeUnit.SECONDS))
+    }
+
+    @Test
+    public def void every_call_of_a_burst_hears_about_its_own() {
+        val server = new MockWebServer
+        server.dispatcher = [ RecordedRequest request |
+            new MockResponse().setBody('{"arguments": "' + request.body.readUtf8 + '"}')
+        ]
+        server.start
+        val workers = Executors.newFixedThreadPool(4)
+        try {
+            val transport = new OkHttpTransport
+            val finished = new CountDownLatch(4)
+            val responses = newArrayList
+            for (i : 0 ..< 4) {
+                val request = prepare(new OkHttpRequest('localhost', server.port), 'item', 'view')
+                request.transport = transport
+                request.dispatcher = new ExecutorDispatcher(workers)
+                request.arguments.put('category', 'row' + i)
+                val response = new Recorder {
+                    override onSuccess(RequestBase request) {
+                        super.onSuccess(request)
+                        finished.countDown
+                    }
+
+                    override onError(RequestBase request, Exception e) {
+                        super.onError(request, e)
+                        finished.countDown
+                    }
+                }
+                responses.add(response)
+                request.execute(response)
+            }
+            assertTrue(finished.await(5, TimeUnit.SECONDS))
+            for (i : 0 ..< 4) {
+                assertEquals(1, responses.get(i).successes)
+                assertTrue(responses.get(i).json.contains('category=row' + i))
+            }
+            assertEquals(4, server.requestCount)
+        } finally {
+            workers.shutdownNow
+            server.shutdown
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.net.HttpURLConnection
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+
+/**
+ * Releasing a connection never sends what wasn't sent, and frees the permit it took
+ */
+class ConnectionManagerTest {
+    MockWebServer server
+    ConnectionManager connections
+
+    @Before
+    public def void startServer() {
+        server = new MockWebServer
+        server.start
+        connections = new ConnectionManager(2)
+    }
+
+    @After
+    public def void stopServer() {
+        server.shutdown
+    }
+
+    @Test
+    public def void releasing_an_unsent_connection_sends_nothing() {
+        val connection = connections.open(server.getUrl('/api/item/view'))
+        connections.release(connection, true)
+
+        // the permit is back
+        connections.release(connections.open(server.getUrl('/')), true)
+        connections.release(connections.open(server.getUrl('/')), true)
+        connections.release(connections.open(server.getUrl('/')), true)
+        assertEquals(0, server.requestCount)
+    }
+
+    @Test
+    public def void a_request_that_fails_before_sending_is_not_sent_on_release() {
+        val request = prepare(new HttpUrlConnectionRequest('localhost', server.port), 'item', 'create')
+        request.method = 'BOGUS'
+        request.transport = new HttpUrlConnectionTransport(connections)
+
+        val response = new BodyResponse
+        request.execute(response)
+
+        assertEquals(0, response.code)
+        assertEquals(0, server.requestCount)
+    }
+
+    @Test
+    public def void an_answered_connection_goes_back_to_the_pool() {
+        server.enqueue(new MockResponse().setBody('first'))
+        server.enqueue(new MockResponse().setBody('second'))
+
+        for (i : 0 ..< 2) {
+            val connection = connections.open(server.getUrl('/api/item/view'))
+            assertEquals(HttpURLConnection.HTTP_OK, connection.responseCode)
+            connections.release(connection, false)
+        }
+        server.takeRequest
+        assertEquals(1, server.takeRequest.sequenceNumber)
+    }
+
+    @Test
+    public def void a_redirect_gives_the_permit_back_to_the_first_host() {
+        val other = new MockWebServer
+        other.enqueue(new MockResponse().setBody('moved'))
+        other.start
+        try {
+            val single = new ConnectionManager(1)
+            server.enqueue(new MockResponse().setResponseCode(302).setHeader('Location', other.getUrl('/moved')))
+
+            val connection = single.open(server.getUrl('/api/item/view'))
+            assertEquals(HttpURLConnection.HTTP_OK, connection.responseCode)
+            assertEquals(other.port, connection.URL.port)
+            single.release(connection, false)
+
+            single.release(single.open(server.getUrl('/'), 100), true)
+            val held = single.open(other.getUrl('/'), 100)
+            try {
+                single.open(other.getUrl('/'), 100)
+                fail("the other host is over its cap")
+            } catch (IOException e) {
+                // expected
+            } finally {
+                single.release(held, true)
+            }
+        } finally {
+            other.shutdown
+        }
+    }
+}
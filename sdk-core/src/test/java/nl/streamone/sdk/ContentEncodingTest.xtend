@@ -0,0 +1,107 @@
+package nl.streamone.sdk
+
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPOutputStream
+
+import okio.Buffer
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+
+/**
+ * Compressed bodies and charsets over both transports
+ */
+class ContentEncodingTest {
+    static val json = '{"header":{"status":0,"statusmessage":"OK"},"body":[' +
+        (1 .. 200).map[ '{"id":"item' + it + '","title":"Café ' + it + '"}' ].join(',') + ']}'
+
+    MockWebServer server
+
+    @Before
+    public def void startServer() {
+        server = new MockWebServer
+        server.start
+    }
+
+    @After
+    public def void stopServer() {
+        server.shutdown
+    }
+
+    static def byte[] gzip(byte[] bytes) {
+        val out = new ByteArrayOutputStream
+        val gzip = new GZIPOutputStream(out)
+        gzip.write(bytes)
+        gzip.close
+        return out.toByteArray
+    }
+
+    static def byte[] deflate(byte[] bytes, boolean zlib) {
+        val out = new ByteArrayOutputStream
+        val deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, !zlib))
+        deflater.write(bytes)
+        deflater.close
+        return out.toByteArray
+    }
+
+    def CallSnapshot fetch(RequestBase request, MockResponse mock) {
+        server.enqueue(mock)
+        val metrics = new RequestMetrics
+        prepare(request, 'item', 'view')
+        request.metrics = metrics
+
+        val response = new Recorder
+        request.execute(response)
+
+        assertTrue(response.succeeded)
+        assertEquals(json, response.json)
+        assertEquals(ContentEncoding.ACCEPT_ENCODING, server.takeRequest.getHeader('Accept-Encoding'))
+        return metrics.snapshot.get('item/view')
+    }
+
+    def void decodes(RequestBase request, String encoding, byte[] body) {
+        val item = fetch(request, new MockResponse()
+            .setHeader('Content-Type', 'application/json; charset=utf-8')
+            .setHeader('Content-Encoding', encoding)
+            .setBody(new Buffer().write(body)))
+        assertEquals(body.length, item.responseBytes)
+        assertEquals(json.getBytes('UTF-8').length, item.decodedBytes)
+        assertTrue(item.bytesSaved > json.length / 2)
+    }
+
+    @Test
+    public def void gzip_over_http_url_connection() {
+        decodes(new HttpUrlConnectionRequest('localhost', server.port), 'gzip', gzip(json.getBytes('UTF-8')))
+    }
+
+    @Test
+    public def void gzip_over_okhttp() {
+        decodes(new OkHttpRequest('localhost', server.port), 'gzip', gzip(json.getBytes('UTF-8')))
+    }
+
+    @Test
+    public def void zlib_and_raw_deflate() {
+        decodes(new HttpUrlConnectionRequest('localhost', server.port), 'deflate', deflate(json.getBytes('UTF-8'), true))
+        decodes(new OkHttpRequest('localhost', server.port), 'deflate', deflate(json.getBytes('UTF-8'), false))
+    }
+
+    @Test
+    public def void charset_from_content_type() {
+        fetch(new HttpUrlConnectionRequest('localhost', server.port), new MockResponse()
+            .setHeader('Content-Type', 'application/json; charset="ISO-8859-1"')
+            .setBody(new Buffer().write(json.getBytes('ISO-8859-1'))))
+
+        assertEquals('UTF-8', ContentEncoding.charsetOf(null))
+        assertEquals('UTF-8', ContentEncoding.charsetOf('application/json'))
+        assertEquals('UTF-8', ContentEncoding.charsetOf('application/json; charset=bogus-charset'))
+        assertEquals('utf-16', ContentEncoding.charsetOf('text/plain;Charset=utf-16'))
+    }
+}
@@ -0,0 +1,47 @@
+package nl.streamone.sdk
+
+/**
+ * What the tests build their requests from
+ */
+class Fixtures {
+    public static val SIGNING_KEY = 'secret'
+
+    /**
+     * command/action, signed with a test key, over plain http, recording no metrics;
+     * set the transport, metrics or policy the test is about afterwards
+     */
+    static def <T extends RequestBase> T prepare(T request, String command, String action) {
+        request.scheme = 'http'
+        request.command = command
+        request.action = action
+        request.signingKey = SIGNING_KEY
+        request.metrics = null
+        return request
+    }
+}
+
+/**
+ * Remembers how a call ended
+ */
+class Recorder extends Response {
+    public int successes
+    public int errors
+    public Exception error
+
+    override onSuccess(RequestBase request) {
+        successes++
+    }
+
+    override onError(RequestBase request, Exception e) {
+        errors++
+        error = e
+    }
+
+    def boolean isSucceeded() {
+        successes > 0
+    }
+
+    def boolean isFailed() {
+        errors > 0
+    }
+}
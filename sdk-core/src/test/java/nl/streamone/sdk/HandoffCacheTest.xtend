@@ -0,0 +1,39 @@
+package nl.streamone.sdk
+
+import java.util.List
+
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ * The latest handoffs stay readable, and a key from another process finds nothing
+ */
+class HandoffCacheTest {
+    val related = #['first', 'second']
+
+    @Test
+    public def void keeps_the_latest() {
+        val cache = new HandoffCache
+        val first = cache.put(related)
+        assertSame(related, cache.<List<String>>get(first))
+        assertSame("reading doesn't take it", related, cache.<List<String>>get(first))
+
+        for (var i = 0; i < HandoffCache.MAX_ENTRIES; i++) {
+            cache.put(i)
+        }
+        assertNull(cache.get(first))
+        assertNull(cache.get(null))
+        assertEquals(HandoffCache.MAX_ENTRIES, cache.size)
+    }
+
+    @Test
+    public def void keys_of_another_process_dont_match() {
+        val before = new HandoffCache
+        val key = before.put(related)
+
+        // a restored Intent in a new process, whose counter starts over as well
+        val after = new HandoffCache
+        after.put('something else')
+        assertNull(after.get(key))
+    }
+}
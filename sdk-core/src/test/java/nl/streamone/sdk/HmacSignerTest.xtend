@@ -0,0 +1,59 @@
+package nl.streamone.sdk
+
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ * The cached Macs sign like the provider lookup, new key spec and StringBuffer per call did
+ */
+class HmacSignerTest {
+    static val key = "AAAAABBBBBCCCCCDDDDD000000111111222222gR92jURda7mEqiDzhcz2bC1FtIzS8wxe"
+    static val message = ("/api/user/viewme?api=3&format=json&authentication_type=application" +
+        "&timestamp=1452846289&application=APPLICATION&session=sC5tGogRgBow").getBytes("ASCII")
+
+    static def String legacyHmacSha1(byte[] key, byte[] message) {
+        val mac = Mac.getInstance("HmacSHA1")
+        mac.init(new SecretKeySpec(key, "HmacSHA1"))
+
+        val bytes = mac.doFinal(message)
+
+        val StringBuffer hash = new StringBuffer
+        for (var i = 0; i < bytes.length; i++) {
+            val hex = Integer.toHexString(0xFF.bitwiseAnd(bytes.get(i)))
+            if (hex.length == 1) {
+                hash.append('0')
+            }
+            hash.append(hex)
+        }
+        return hash.toString
+    }
+
+    @Test
+    public def void same_signature_as_before() {
+        val expected = legacyHmacSha1(key.getBytes("UTF-8"), message)
+        assertEquals(expected, HmacSigner.sign(key, message))
+        assertEquals(expected, HmacSigner.sign(key.getBytes("UTF-8"), message))
+        assertEquals(expected, HmacSigner.sign(key, message, new StringBuilder).toString)
+        // the cached Mac is reset, the second call isn't signing both messages
+        assertEquals(expected, HmacSigner.sign(key, message))
+    }
+
+    @Test
+    public def void signs_part_of_a_buffer() {
+        val padded = newByteArrayOfSize(message.length + 8)
+        System.arraycopy(message, 0, padded, 4, message.length)
+
+        val out = new StringBuilder('signature=')
+        HmacSigner.sign(key, padded, 4, message.length, out)
+        assertEquals('signature=' + legacyHmacSha1(key.getBytes("UTF-8"), message), out.toString)
+    }
+
+    @Test
+    public def void another_key_another_signature() {
+        assertEquals(legacyHmacSha1('other'.getBytes("UTF-8"), message), HmacSigner.sign('other', message))
+        assertNotEquals(HmacSigner.sign('other', message), HmacSigner.sign(key, message))
+    }
+}
@@ -0,0 +1,179 @@
+package nl.streamone.sdk
+
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+/**
+ * Identical requests share a round trip, and a leader that blows up or is cancelled doesn't
+ * strand the others
+ */
+class InFlightRegistryTest {
+    val registry = new InFlightRegistry
+    val sends = new AtomicInteger
+
+    def RequestBase request(Transport transport) {
+        val request = prepare(new HttpUrlConnectionRequest('localhost', 1), 'item', 'view')
+        request.inFlight = registry
+        request.transport = transport
+        return request
+    }
+
+    @Test
+    public def void a_leader_that_throws_fails_its_followers_and_frees_the_key() {
+        val sending = new CountDownLatch(1)
+        val release = new CountDownLatch(1)
+        val Transport blowsUp = [ request, url, response |
+            sends.incrementAndGet
+            sending.countDown
+            release.await
+            throw new IllegalStateException("transport bug")
+        ]
+
+        val leaderFailure = new AtomicReference<Throwable>
+        val leader = new Thread [|
+            try {
+                request(blowsUp).executeNow(new Recorder)
+            } catch (IllegalStateException e) {
+                leaderFailure.set(e)
+            }
+        ]
+        leader.start
+        assertTrue(sending.await(5, TimeUnit.SECONDS))
+
+        val follower = new Recorder
+        request(blowsUp).executeNow(follower)
+        assertEquals("joined, not sent", 1, sends.get)
+        assertEquals(1, registry.joinedCount)
+
+        release.countDown
+        leader.join(5000)
+        assertTrue(leaderFailure.get instanceof IllegalStateException)
+        assertTrue(follower.failed)
+        assertTrue(follower.error.cause instanceof IllegalStateException)
+        assertEquals(0, registry.inFlightCount)
+
+        // the next one goes out again instead of joining a call that never ends
+        val Transport answers = [ request, url, response |
+            sends.incrementAndGet
+            response.code = 200
+            response.onSuccess(request)
+        ]
+        val next = new Recorder
+        request(answers).executeNow(next)
+        assertEquals(2, sends.get)
+        assertTrue(next.succeeded)
+    }
+
+    @Test
+    public def void a_request_without_signing_key_doesnt_stay_in_flight() {
+        val unsigned = request([ request, url, response | sends.incrementAndGet ])
+        unsigned.signingKey = null
+        try {
+            unsigned.executeNow(new Recorder)
+            fail()
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, registry.inFlightCount)
+        assertEquals(0, sends.get)
+    }
+
+    /**
+     * Out until released or aborted, then answers
+     */
+    def Transport hanging(CountDownLatch sending, CountDownLatch release) {
+        return [ request, url, response |
+            sends.incrementAndGet
+            request.onAbort [| release.countDown ]
+            sending.countDown
+            release.await
+            if (request.aborted) {
+                response.onError(request, new IOException("Canceled"))
+            } else {
+                response.code = 200
+                response.consume('{}')
+                response.onSuccess(request)
+            }
+        ]
+    }
+
+    @Test
+    public def void cancelling_the_leader_keeps_the_call_for_its_followers() {
+        val sending = new CountDownLatch(1)
+        val release = new CountDownLatch(1)
+        val transport = hanging(sending, release)
+        val pool = Executors.newFixedThreadPool(2)
+        try {
+            val leader = request(transport)
+            leader.dispatcher = new ExecutorDispatcher(pool)
+            val leaderResponse = new Recorder
+            val leaderHandle = leader.execute(leaderResponse)
+            assertTrue(sending.await(5, TimeUnit.SECONDS))
+
+            val follower = new Recorder
+            request(transport).executeNow(follower)
+            assertEquals(1, registry.joinedCount)
+
+            leaderHandle.cancel
+            assertFalse("a follower still waits for it", leader.aborted)
+
+            release.countDown
+            for (var i = 0; i < 500 && !follower.succeeded; i++) {
+                Thread.sleep(10)
+            }
+            assertTrue(follower.succeeded)
+            assertEquals(1, sends.get)
+            assertEquals("cancelled, it hears nothing", 0, leaderResponse.successes + leaderResponse.errors)
+            assertTrue(leaderHandle.done)
+        } finally {
+            pool.shutdownNow
+        }
+    }
+
+    @Test
+    public def void the_call_is_aborted_once_every_caller_cancelled() {
+        val sending = new CountDownLatch(1)
+        val release = new CountDownLatch(1)
+        val transport = hanging(sending, release)
+        val pool = Executors.newFixedThreadPool(2)
+        try {
+            val leader = request(transport)
+            leader.dispatcher = new ExecutorDispatcher(pool)
+            val leaderHandle = leader.execute(new Recorder)
+            assertTrue(sending.await(5, TimeUnit.SECONDS))
+
+            val follower = request(transport)
+            follower.dispatcher = new ExecutorDispatcher(pool)
+            val followerResponse = new Recorder
+            val followerHandle = follower.execute(followerResponse)
+            for (var i = 0; i < 500 && registry.joinedCount == 0; i++) {
+                Thread.sleep(10)
+            }
+            assertEquals(1, registry.joinedCount)
+            assertFalse("joined, so not done before the answer", followerHandle.done)
+
+            followerHandle.cancel
+            assertFalse(leader.aborted)
+            leaderHandle.cancel
+            assertTrue("nobody waits for it any more", leader.aborted)
+
+            for (var i = 0; i < 500 && !(leaderHandle.done && followerHandle.done); i++) {
+                Thread.sleep(10)
+            }
+            assertTrue(leaderHandle.done && followerHandle.done)
+            assertEquals(0, followerResponse.successes + followerResponse.errors)
+            assertEquals(0, registry.inFlightCount)
+            assertEquals(1, sends.get)
+        } finally {
+            pool.shutdownNow
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package nl.streamone.sdk
+
+import org.junit.After
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ * What the core gets from the platform when there is no android around
+ */
+class PlatformAdapterTest {
+    @After
+    public def void forgetAdapter() {
+        PlatformAdapter.install(null)
+    }
+
+    @Test
+    public def void plain_java_off_device() {
+        assertTrue(PlatformAdapter.get instanceof JvmPlatformAdapter)
+    }
+
+    @Test
+    public def void logger_goes_through_the_installed_adapter() {
+        val logged = new StringBuilder
+        PlatformAdapter.install(new JvmPlatformAdapter {
+            override log(int priority, String tag, String message, Throwable tr) {
+                logged.append(priority).append(' ').append(tag).append(': ').append(message)
+            }
+        })
+        Logger.w("Test", "careful")
+        assertEquals(PlatformAdapter.WARN + " Test: careful", logged.toString)
+    }
+}
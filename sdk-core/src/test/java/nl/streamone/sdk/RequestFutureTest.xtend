@@ -0,0 +1,174 @@
+package nl.streamone.sdk
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.mockwebserver.RecordedRequest
+import com.squareup.okhttp.mockwebserver.SocketPolicy
+
+/**
+ * Chaining the handshake, zipping, timeouts, and cancellation down to the connection
+ */
+class RequestFutureTest {
+    static val initializeJson = '{"header":{"status":0},"body":{"challenge":"coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6","salt":"$2y$04$baztaaydu13s4ah6y6pegt","needsv2hash":false}}'
+    static val createJson = '{"header":{"status":0},"body":{"id":"sC5tGogRgBow","key":"gR92jURda7mEqiDzhcz2bC1FtIzS8wxe","timeout":3600,"user":"USER"}}'
+
+    MockWebServer server
+    ExecutorService workers
+
+    /**
+     * The slow calls wait for each other, they only get an answer when they are out together
+     */
+    val slowCalls = new CountDownLatch(2)
+
+    @Before
+    public def void startServer() {
+        server = new MockWebServer
+        server.dispatcher = [ RecordedRequest request |
+            val path = request.path
+            if (path.contains('api/item/hang')) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE)
+            }
+            if (path.contains('api/item/slow')) {
+                slowCalls.countDown
+                if (!slowCalls.await(2, TimeUnit.SECONDS)) {
+                    return new MockResponse().setResponseCode(503)
+                }
+            }
+            val body = if (path.contains('api/session/initialize')) initializeJson
+                else if (path.contains('api/session/create')) createJson
+                else if (path.contains('api/item/missing')) null
+                else '{"header":{"status":0},"body":"' + path.substring(5, path.indexOf('?')) + '"}'
+            return if (body == null) new MockResponse().setResponseCode(404) else new MockResponse().setBody(body)
+        ]
+        server.start
+        workers = Executors.newFixedThreadPool(2)
+    }
+
+    @After
+    public def void stopServer() {
+        workers.shutdownNow
+        server.shutdown
+    }
+
+    def RequestBase request(RequestBase request, String command, String action) {
+        prepare(request, command, action)
+        request.dispatcher = new ExecutorDispatcher(workers)
+        return request
+    }
+
+    def RequestBase request(String command, String action) {
+        request(new HttpUrlConnectionRequest('localhost', server.port), command, action)
+    }
+
+    static def String field(String json, String name) {
+        val start = json.indexOf('"' + name + '":"') + name.length + 4
+        return json.substring(start, json.indexOf('"', start))
+    }
+
+    @Test
+    public def void chains_the_handshake() {
+        val session = request('session', 'initialize').submit
+            .then [ json |
+                val create = request('session', 'create')
+                create.arguments.put('challenge', field(json, 'challenge'))
+                create.arguments.put('response', ChallengeCrypto.getChallengeResponse('password'.bytes,
+                    field(json, 'challenge').bytes, field(json, 'salt').bytes))
+                create.submit
+            ]
+            .map [ json | field(json, 'id') ]
+
+        assertEquals('sC5tGogRgBow', session.get(5, TimeUnit.SECONDS))
+        assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    public def void zips_parallel_calls() {
+        val both = RequestFuture.zip(request('item', 'slow').submit, request('item', 'slow').submit)
+
+        // one after the other, the first would get a 503 and fail the zip
+        val pair = both.get(5, TimeUnit.SECONDS)
+        assertEquals('item/slow', field(pair.key, 'body'))
+        assertEquals('item/slow', field(pair.value, 'body'))
+    }
+
+    @Test
+    public def void a_failure_fails_the_zip_and_the_chain() {
+        val both = RequestFuture.zip(request('item', 'missing').submit, request('item', 'view').submit)
+        try {
+            both.map [ it.key ].get(5, TimeUnit.SECONDS)
+            fail("404 should fail it")
+        } catch (ExecutionException e) {
+            assertEquals(404, (e.cause as ResponseException).code)
+        }
+
+        val recovered = request('item', 'missing').submit.recover [ 'fallback' ]
+        assertEquals('fallback', recovered.get(5, TimeUnit.SECONDS))
+    }
+
+    @Test
+    public def void cancel_aborts_the_connection() {
+        for (transport : #['urlconnection', 'okhttp']) {
+            val hanging = if ('okhttp' == transport) request(new OkHttpRequest('localhost', server.port), 'item', 'hang')
+                else request('item', 'hang')
+            val chain = hanging.submit.map [ it.length ]
+            // let it get on the wire
+            Thread.sleep(200)
+            assertTrue(chain.cancel)
+
+            assertTrue(chain.isCancelled)
+            assertTrue(transport, hanging.aborted)
+            try {
+                chain.get
+                fail()
+            } catch (CancellationException e) {
+                // expected
+            }
+            // both workers are free again long before the read timeout
+            val next = RequestFuture.zip(request('item', 'view').submit, request('item', 'view').submit)
+            assertNotNull(transport, next.get(2, TimeUnit.SECONDS))
+        }
+    }
+
+    @Test
+    public def void timeout_fails_and_cancels_the_call() {
+        val hanging = request('item', 'hang')
+        val timed = hanging.submit.timeout(200)
+        try {
+            timed.get(5, TimeUnit.SECONDS)
+            fail()
+        } catch (ExecutionException e) {
+            assertTrue(e.cause instanceof TimeoutException)
+        }
+        // the timer aborts it right after failing the future
+        for (var i = 0; i < 100 && !hanging.aborted; i++) {
+            Thread.sleep(10)
+        }
+        assertTrue(hanging.aborted)
+    }
+
+    @Test
+    public def void a_chain_cancelled_before_it_started_never_sends() {
+        val first = new RequestFuture<String>
+        val second = request('item', 'view')
+        val chain = first.then [ second.submit ]
+        chain.cancel
+
+        assertTrue(first.isCancelled)
+        assertFalse(first.complete('too late'))
+        assertEquals(0, server.requestCount)
+    }
+}
@@ -0,0 +1,95 @@
+package nl.streamone.sdk
+
+import java.util.Map
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+
+/**
+ * What makes two requests the same, for the cache and for sharing a round trip
+ */
+class RequestKeyTest {
+    static val cacheableJson = '{"header":{"status":0,"cacheable":true},"body":[]}'
+
+    MockWebServer server
+
+    @Before
+    public def void startServer() {
+        server = new MockWebServer
+        server.start
+    }
+
+    @After
+    public def void stopServer() {
+        server.shutdown
+    }
+
+    def RequestBase request(String hostname, String signingKey) {
+        val request = prepare(new HttpUrlConnectionRequest(hostname, server.port), 'item', 'view')
+        request.signingKey = signingKey
+        return request
+    }
+
+    @Test
+    public def void separators_in_values_dont_collide() {
+        val first = request('localhost', 'psk')
+        first.arguments.put('a', 'b;c=d')
+        val second = request('localhost', 'psk')
+        second.arguments.put('a', 'b')
+        second.arguments.put('c', 'd')
+
+        assertNotEquals(first.requestKey, second.requestKey)
+    }
+
+    @Test
+    public def void host_and_signer_are_part_of_the_key() {
+        val key = request('localhost', 'psk').requestKey
+        assertEquals(key, request('localhost', 'psk').requestKey)
+        assertNotEquals(key, request('127.0.0.1', 'psk').requestKey)
+        assertNotEquals(key, request('localhost', 'psk' + 'sessionkey').requestKey)
+        assertFalse(key.contains('psk'))
+    }
+
+    @Test
+    public def void writes_are_never_answered_from_the_cache() {
+        for (i : 0 ..< 4) {
+            server.enqueue(new MockResponse().setBody(cacheableJson))
+        }
+        val cache = new MapCache
+
+        for (i : 0 ..< 2) {
+            val view = request('localhost', 'psk')
+            view.method = 'GET'
+            view.cache = cache
+            view.execute(new BodyResponse)
+        }
+        assertEquals(1, server.requestCount)
+
+        for (i : 0 ..< 2) {
+            val create = request('localhost', 'psk')
+            create.action = 'create'
+            create.cache = cache
+            create.execute(new BodyResponse)
+        }
+        assertEquals(3, server.requestCount)
+    }
+}
+
+package class MapCache implements ResponseCache {
+    val Map<String, CachedResponse> entries = newHashMap
+
+    override get(String key) {
+        entries.get(key)
+    }
+
+    override put(String key, Response response) {
+        entries.put(key, new CachedResponse(response.json, response.headers, Long.MAX_VALUE))
+        return true
+    }
+}
@@ -0,0 +1,57 @@
+package nl.streamone.sdk
+
+import java.util.Map
+
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ * The signature base and URL are what android.net.Uri built before: Uri.encode'd path and
+ * query, the arguments as they are, and the HMAC of both
+ */
+class RequestLineBuilderTest {
+    static val timestamp = 1452846289L
+    static val psk = "AAAAABBBBBCCCCCDDDDD000000111111222222"
+
+    val Map<String, String> parameters = newLinkedHashMap(
+        'api' -> '3',
+        'format' -> 'json',
+        'authentication_type' -> 'application',
+        'application' -> 'APPLICATION',
+        'session' -> 'sC5tGogRgBow',
+        'title' -> 'Zeitgeist 2010: Year in Review'
+    )
+    val Map<String, String> arguments = newLinkedHashMap('challenge' -> 'coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6', 'limit' -> '3')
+
+    @Test
+    public def void same_signature_base_and_url_as_uri() {
+        val builder = RequestLineBuilder.forThread.build('https', 'api.streamone.nl', '443', 'user', 'viewme',
+            timestamp, parameters, arguments)
+        val query = '/api/user/viewme?timestamp=1452846289&api=3&format=json&authentication_type=application' +
+            '&application=APPLICATION&session=sC5tGogRgBow&title=Zeitgeist%202010%3A%20Year%20in%20Review'
+
+        assertEquals(query + '&challenge=coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6&limit=3', builder.signatureBase)
+        assertEquals('https://api.streamone.nl:443' + query + '&signature=be36cbaf82df3fdb4ce576540a39d769572ef9f0',
+            builder.sign(psk))
+    }
+
+    @Test
+    public def void encodes_like_uri() {
+        val builder = RequestLineBuilder.forThread.build('http', 'localhost', null, 'item', 'view',
+            timestamp, newLinkedHashMap('title' -> 'Caf\u00e9 & more \u20ac'), newLinkedHashMap)
+
+        assertEquals('/api/item/view?timestamp=1452846289&title=Caf%C3%A9%20%26%20more%20%E2%82%AC', builder.signatureBase)
+        assertEquals('http://localhost' + builder.signatureBase + '&signature=96bbc68f334c2b06af7ffd034dc4f7d4290b11cb',
+            builder.sign(psk))
+    }
+
+    @Test
+    public def void the_next_request_starts_over() {
+        val first = RequestLineBuilder.forThread.build('https', 'api.streamone.nl', '443', 'user', 'viewme',
+            timestamp, parameters, arguments).sign(psk)
+        RequestLineBuilder.forThread.build('http', 'localhost', null, 'item', 'view', timestamp, newLinkedHashMap, newLinkedHashMap)
+            .sign(psk)
+        assertEquals(first, RequestLineBuilder.forThread.build('https', 'api.streamone.nl', '443', 'user', 'viewme',
+            timestamp, parameters, arguments).sign(psk))
+    }
+}
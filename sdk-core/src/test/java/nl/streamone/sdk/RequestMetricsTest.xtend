@@ -0,0 +1,150 @@
+package nl.streamone.sdk
+
+import java.security.cert.X509Certificate
+
+import javax.net.ssl.HttpsURLConnection
+import javax.net.ssl.SSLContext
+import javax.net.ssl.SSLSocketFactory
+import javax.net.ssl.X509TrustManager
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.internal.SslContextBuilder
+
+/**
+ * The histograms, and what a round trip over either transport leaves in {@link RequestMetrics}
+ */
+class RequestMetricsTest {
+    static val body = '{"header":{"status":0,"statusmessage":"OK","apiversion":3,"cacheable":false},"body":[]}'
+
+    MockWebServer server
+
+    @Before
+    public def void startServer() {
+        server = new MockWebServer
+        server.start
+    }
+
+    @After
+    public def void stopServer() {
+        server.shutdown
+    }
+
+    @Test
+    public def void buckets_are_within_an_eighth() {
+        for (micros : #[0L, 7L, 8L, 9L, 100L, 1000L, 12345L, 999999L, 60000000L]) {
+            val upper = LatencyHistogram.valueFor(LatencyHistogram.indexFor(micros))
+            assertTrue(micros + " -> " + upper, upper >= micros && upper <= micros + micros / 8 + 1)
+        }
+    }
+
+    @Test
+    public def void percentiles() {
+        val histogram = new LatencyHistogram
+        for (var i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L)
+        }
+        val snapshot = histogram.snapshot
+        assertEquals(100, snapshot.count)
+        assertEquals(50.5, snapshot.meanMillis, 0.01)
+        assertEquals(50, snapshot.percentileMillis(0.5), 50 / 8.0)
+        assertEquals(95, snapshot.percentileMillis(0.95), 95 / 8.0)
+        assertEquals(100, snapshot.percentileMillis(1.0), 0.01)
+    }
+
+    def CallSnapshot records_a_round_trip(RequestBase request) {
+        records_a_round_trip(request, 'http')
+    }
+
+    def CallSnapshot records_a_round_trip(RequestBase request, String scheme) {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(body))
+        server.enqueue(new MockResponse().setResponseCode(503).setBody(body))
+
+        val metrics = new RequestMetrics
+        prepare(request, 'item', 'view')
+        request.scheme = scheme
+        request.metrics = metrics
+        for (var i = 0; i < 2; i++) {
+            request.execute(new Recorder)
+        }
+
+        val item = metrics.snapshot.get('item/view')
+        assertEquals(2, item.total.count)
+        assertEquals(1, item.getStatusCount(2))
+        assertEquals(1, item.getStatusCount(5))
+        assertEquals(2 * body.length, item.responseBytes)
+        assertTrue(item.requestBytes > 0)
+        assertEquals(2, item.ttfb.count)
+        return item
+    }
+
+    @Test
+    public def void records_a_round_trip_over_http_url_connection() {
+        records_a_round_trip(new HttpUrlConnectionRequest('localhost', server.port))
+    }
+
+    @Test
+    public def void records_a_round_trip_over_okhttp() {
+        val item = records_a_round_trip(new OkHttpRequest('localhost', server.port))
+        assertEquals("the second call reuses the socket", 1, item.connect.count)
+    }
+
+    /**
+     * The test certificate is self-signed and no CA, newer JDKs won't take it as a trust anchor;
+     * TLS 1.2, MockWebServer 2.7 predates 1.3
+     */
+    static def SSLSocketFactory trustingEverything() {
+        val context = SSLContext.getInstance('TLSv1.2')
+        context.init(null, #[new X509TrustManager {
+            override checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            override checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            override getAcceptedIssuers() {
+                newArrayOfSize(0)
+            }
+        }], null)
+        return context.socketFactory
+    }
+
+    def CallSnapshot records_a_handshake(() => RequestBase request) {
+        server.useHttps(SslContextBuilder.localhost.socketFactory, false)
+        val trusted = HttpsURLConnection.defaultSSLSocketFactory
+        HttpsURLConnection.defaultSSLSocketFactory = trustingEverything
+        try {
+            val item = records_a_round_trip(request.apply, 'https')
+            assertEquals("one new socket, one handshake", 1, item.tls.count)
+            assertTrue(item.tls.percentileMillis(1.0) > 0)
+            return item
+        } finally {
+            HttpsURLConnection.defaultSSLSocketFactory = trusted
+        }
+    }
+
+    @Test
+    public def void times_the_handshake_over_http_url_connection() {
+        records_a_handshake [|
+            val request = new HttpUrlConnectionRequest('localhost', server.port)
+            request.transport = new HttpUrlConnectionTransport(new ConnectionManager(2))
+            request
+        ]
+    }
+
+    @Test
+    public def void times_the_handshake_over_okhttp() {
+        val item = records_a_handshake [|
+            val request = new OkHttpRequest('localhost', server.port)
+            request.transport = new OkHttpTransport
+            request
+        ]
+        assertEquals(1, item.connect.count)
+    }
+}
@@ -0,0 +1,208 @@
+package nl.streamone.sdk
+
+import java.io.ByteArrayInputStream
+import java.net.SocketTimeoutException
+import java.net.URL
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.junit.Test
+import static org.junit.Assert.*
+import static nl.streamone.sdk.Fixtures.*
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.mockwebserver.RecordedRequest
+
+/**
+ * Retries and the budget, against a transport that fails the first calls with a 503,
+ * the read timeout it learns, and hedging a call that is stuck on a slow node
+ */
+class ResiliencePolicyTest {
+    static class FlakyTransport implements Transport {
+        val AtomicInteger calls = new AtomicInteger
+        val int failures
+
+        new (int failures) {
+            this.failures = failures
+        }
+
+        override send(RequestBase request, URL url, Response response) {
+            val call = calls.incrementAndGet
+            response.code = if (call <= failures) 503 else 200
+            response.consume(new ByteArrayInputStream(('{"call": ' + call + '}').bytes), 'UTF-8')
+            if (response.code == 200) {
+                response.onSuccess(request)
+            } else {
+                response.onError(request, null)
+            }
+        }
+    }
+
+    /**
+     * Answers at once, or times out, and remembers the read timeout it was given
+     */
+    static class TimingTransport implements Transport {
+        volatile boolean timingOut
+        volatile int readTimeout
+
+        override send(RequestBase request, URL url, Response response) {
+            readTimeout = request.readTimeout
+            if (timingOut) {
+                response.onError(request, new SocketTimeoutException("Read timed out"))
+            } else {
+                response.code = 200
+                response.consume(new ByteArrayInputStream('{}'.bytes), 'UTF-8')
+                response.onSuccess(request)
+            }
+        }
+    }
+
+    static def RequestBase request(String action, Transport transport, ResiliencePolicy policy) {
+        val request = prepare(new HttpUrlConnectionRequest('localhost'), 'item', action)
+        request.transport = transport
+        request.resilience = policy
+        return request
+    }
+
+    @Test
+    public def void retries_idempotent_calls() {
+        val transport = new FlakyTransport(2)
+        val response = new Recorder
+        request('view', transport, new ResiliencePolicy).execute(response)
+
+        assertEquals(3, transport.calls.get)
+        assertEquals(1, response.successes)
+        assertEquals(0, response.errors)
+        assertEquals("only the last attempt reaches the response", '{"call": 3}', response.json)
+    }
+
+    @Test
+    public def void never_repeats_writes() {
+        val transport = new FlakyTransport(2)
+        val response = new Recorder
+        request('create', transport, new ResiliencePolicy).execute(response)
+
+        assertEquals(1, transport.calls.get)
+        assertEquals(1, response.errors)
+        assertEquals(503, response.code)
+    }
+
+    @Test
+    public def void budget_caps_the_extra_load() {
+        val policy = new ResiliencePolicy
+        val transport = new FlakyTransport(Integer.MAX_VALUE)
+        for (var i = 0; i < 50; i++) {
+            request('view', transport, policy).execute(new Recorder)
+        }
+
+        val extra = transport.calls.get - 50
+        assertEquals(policy.retryCount, extra)
+        assertTrue("saved up budget plus a tenth of the calls, got " + extra,
+            extra <= ResiliencePolicy.MAX_BUDGET + 50 * ResiliencePolicy.DEFAULT_BUDGET_RATIO + 1)
+        assertTrue(policy.deniedCount > 0)
+    }
+
+    @Test
+    public def void timeouts_raise_the_learned_timeout() {
+        val policy = new ResiliencePolicy
+        policy.maxAttempts = 1
+        val transport = new TimingTransport
+        for (i : 0 ..< ResiliencePolicy.MIN_SAMPLES) {
+            request('view', transport, policy).execute(new Recorder)
+        }
+        assertEquals(ResiliencePolicy.MIN_TIMEOUT, policy.getTimeout(request('view', transport, policy)))
+
+        transport.timingOut = true
+        request('view', transport, policy).execute(new Recorder)
+        assertEquals(ResiliencePolicy.MIN_TIMEOUT, transport.readTimeout)
+        // counted as taking the whole timeout, which is the p99 now
+        assertEquals(ResiliencePolicy.MIN_TIMEOUT * ResiliencePolicy.TIMEOUT_FACTOR,
+            policy.getTimeout(request('view', transport, policy)))
+
+        for (i : 0 ..< 3) {
+            request('view', transport, policy).execute(new Recorder)
+        }
+        assertEquals(ResiliencePolicy.MAX_TIMEOUT, policy.getTimeout(request('view', transport, policy)))
+    }
+
+    @Test
+    public def void keeps_the_timeout_of_the_caller_and_of_writes() {
+        val policy = new ResiliencePolicy
+        val transport = new TimingTransport
+        for (i : 0 ..< ResiliencePolicy.MIN_SAMPLES) {
+            request('view', transport, policy).execute(new Recorder)
+            request('create', transport, policy).execute(new Recorder)
+        }
+
+        request('view', transport, policy).execute(new Recorder)
+        assertEquals(ResiliencePolicy.MIN_TIMEOUT, transport.readTimeout)
+
+        val patient = request('view', transport, policy)
+        patient.readTimeout = 30000
+        patient.execute(new Recorder)
+        assertEquals(30000, transport.readTimeout)
+
+        request('create', transport, policy).execute(new Recorder)
+        assertEquals(RequestBase.DEFAULT_TIMEOUT, transport.readTimeout)
+    }
+
+    @Test
+    public def void a_slow_call_is_hedged_and_the_loser_aborted() {
+        val stuck = new CountDownLatch(1)
+        val calls = new AtomicInteger
+        val server = new MockWebServer
+        server.dispatcher = [ RecordedRequest recorded |
+            val call = calls.incrementAndGet
+            // the first call after the warm up sits on a slow node
+            if (call == ResiliencePolicy.MIN_SAMPLES + 1) {
+                stuck.await(30, TimeUnit.SECONDS)
+            }
+            new MockResponse().setBody('{"call": ' + call + '}')
+        ]
+        server.start
+        try {
+            val out = new AtomicInteger
+            val http = new HttpUrlConnectionTransport(new ConnectionManager(2))
+            val Transport counting = [ request, url, response |
+                out.incrementAndGet
+                try {
+                    http.send(request, url, response)
+                } finally {
+                    out.decrementAndGet
+                }
+            ]
+            val policy = new ResiliencePolicy
+            policy.hedging = true
+            for (i : 0 ..< ResiliencePolicy.MIN_SAMPLES) {
+                val request = request('view', counting, policy)
+                request.port = Integer.toString(server.port)
+                request.execute(new Recorder)
+            }
+            assertEquals(0, policy.hedgeCount)
+
+            val request = request('view', counting, policy)
+            request.port = Integer.toString(server.port)
+            // longer than the server holds the slow one, it can't time out on its own
+            request.readTimeout = 30000
+            val response = new Recorder
+            request.execute(response)
+
+            assertEquals(1, policy.hedgeCount)
+            assertEquals(ResiliencePolicy.MIN_SAMPLES + 2, server.requestCount)
+            assertEquals(1, response.successes)
+            assertEquals("the duplicate answered first", '{"call": ' + (ResiliencePolicy.MIN_SAMPLES + 2) + '}', response.json)
+            assertFalse(request.aborted)
+
+            // the server still holds the slow one, only an abort frees it this soon
+            for (var i = 0; i < 500 && out.get > 0; i++) {
+                Thread.sleep(10)
+            }
+            assertEquals("the loser is aborted", 0, out.get)
+        } finally {
+            stuck.countDown
+            server.shutdown
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nl.streamone.sdk
+
+import android.util.Log
+
+/**
+ * Poor man's JMH for what only runs on a device, like Parcel: warm up, then measure the average
+ * time per call. Numbers from a device are only comparable to numbers from the same device.
+ * Code in sdk-core is measured on the host, in the :benchmark module.
+ */
+class Benchmark {
+    static val TAG = "Benchmark"
+
+    public static val WARMUP_ITERATIONS = 5
+    public static val MEASUREMENT_ITERATIONS = 10
+
+    /**
+     * Returns the best average in ns/op over the measurement iterations
+     */
+    static def double measure(String name, int operationsPerIteration, Runnable operation) {
+        for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+            run(operationsPerIteration, operation)
+        }
+
+        var best = Double.MAX_VALUE
+        for (var i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            best = Math.min(best, run(operationsPerIteration, operation))
+        }
+        Log.i(TAG, String.format("%-40s %12.1f ns/op", name, best))
+        return best
+    }
+
+    /**
+     * Logs how the two compare; only logs, a busy or emulated device makes any threshold flaky
+     */
+    static def void compare(String name, double before, double after) {
+        Log.i(TAG, String.format("%-40s %12.2fx", name, before / after))
+    }
+
+    private static def double run(int operations, Runnable operation) {
+        val start = System.nanoTime
+        for (var i = 0; i < operations; i++) {
+            operation.run
+        }
+        return (System.nanoTime - start) as double / operations
+    }
+}
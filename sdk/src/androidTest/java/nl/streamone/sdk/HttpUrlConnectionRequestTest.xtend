@@ -36,7 +36,7 @@ class HttpUrlConnectionRequestTest {
     @Rule public var MockWebServer mServer = new MockWebServer
 
     final static String hostName = 'localhost'
-    final static int    port     = 6969
+    protected final static int port = 6969
 
     final static String user = "user"
     final static String psk = "AAAAABBBBBCCCCCDDDDD000000111111222222"
@@ -54,6 +54,13 @@ class HttpUrlConnectionRequestTest {
     PreSessionAuthentication preSessionAuth = new PreSessionAuthentication(new JSONObject(sessionInitializeJsonRaw).getJSONObject("body"))
     Session session = new Session(new JSONObject(sessionCreateJsonRaw).getJSONObject("body"))
 
+    /**
+     * Every scenario runs through this, subclasses swap the transport
+     */
+    protected def RequestBase newRequest() {
+        new HttpUrlConnectionRequest('localhost', port)
+    }
+
     // run exactly once
     @Before
     public def void initializeMockWebServer() {
@@ -105,7 +112,7 @@ class HttpUrlConnectionRequestTest {
          * Content-Type: application/x-www-form-urlencoded
          * application=APPLICATION&limit=3
          */
-        var HttpUrlConnectionRequest connReq = new HttpUrlConnectionRequest('localhost', port)
+        var RequestBase connReq = newRequest
         // TODO chain this mofo
         connReq.scheme = 'http'
         connReq.setCommand("application")
@@ -144,7 +151,7 @@ class HttpUrlConnectionRequestTest {
          * Content-Type: application/x-www-form-urlencoded
          * user=user&userip=127.0.0.2
          */
-        var HttpUrlConnectionRequest connReq = new HttpUrlConnectionRequest('localhost', port)
+        var RequestBase connReq = newRequest
         // TODO chain this mofo
         connReq.scheme = 'http'
         connReq.setCommand("session")
@@ -170,6 +177,40 @@ class HttpUrlConnectionRequestTest {
         })
     }
 
+    /**
+     * Same call, decoded straight off the socket
+     */
+    @Test
+    public def void initializeUserSessionStreaming() {
+        var RequestBase connReq = newRequest
+        connReq.scheme = 'http'
+        connReq.setCommand("session")
+        connReq.setAction("initialize")
+        connReq.setSigningKey(psk)
+        var Map<String, String> params = connReq.parameters
+        params.put("authentication_type", "application")
+        params.put("application", "APPLICATION")
+        var Map<String, String> args = connReq.arguments
+        args.put("user", "user")
+        args.put("userip", "127.0.0.2")
+        connReq.execute(new ModelResponse<PreSessionAuthentication>() {
+            override create(JSONObject json) {
+                new PreSessionAuthentication(json)
+            }
+
+            override void onSuccess(RequestBase request) {
+                assertNull("json is opt-in", json)
+                assertFalse(header.cacheable)
+                assertEquals("coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6", item.challenge)
+                preSessionAuth = item
+            }
+
+            override void onError(RequestBase request, Exception e) {
+                fail(e?.message)
+            }
+        })
+    }
+
     /**
      * How to get the response:
      * public static function generatePasswordResponse($password, $salt, $challenge)
@@ -191,7 +232,7 @@ class HttpUrlConnectionRequestTest {
          * Content-Type: application/x-www-form-urlencoded
          * challenge=coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6&response=HQtJEAcGEwAASEJTUx0GRQYKRAACUQ8YD0BdXlVZVC90TBwgdhBlLm9RA1R5N0AFW25wUVMNHHpeY1QD
          */
-        var HttpUrlConnectionRequest connReq = new HttpUrlConnectionRequest('localhost', port)
+        var RequestBase connReq = newRequest
         // TODO chain this mofo
         connReq.scheme = 'http'
         connReq.setCommand("session")
@@ -227,7 +268,7 @@ class HttpUrlConnectionRequestTest {
          * Host: api.nicky.test
          * Content-Type: application/x-www-form-urlencoded
          */
-        var HttpUrlConnectionRequest connReq = new HttpUrlConnectionRequest('localhost', port)
+        var RequestBase connReq = newRequest
         // TODO chain this mofo
         connReq.scheme = 'http'
         connReq.setCommand("user")
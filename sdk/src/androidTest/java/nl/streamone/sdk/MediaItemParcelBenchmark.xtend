@@ -0,0 +1,132 @@
+package nl.streamone.sdk
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.Serializable
+
+import org.json.JSONObject
+
+import org.junit.Test
+import org.junit.runner.RunWith
+import static org.junit.Assert.*
+
+import android.os.Parcel
+import android.support.test.runner.AndroidJUnit4
+import android.test.suitebuilder.annotation.LargeTest
+import android.util.Log
+
+/**
+ * Handing an item to the next screen as a Parcel, against the Serializable the TV app used to
+ * put in its Intents
+ */
+@RunWith(AndroidJUnit4)
+@LargeTest
+class MediaItemParcelBenchmark {
+    static val TAG = "MediaItemParcelBenchmark"
+
+    static val OPERATIONS = 1000
+
+    static val item = new MediaItem(new JSONObject('{"id":"hJCtpIGbK9Ur","title":"Introducing Gmail Blue",' +
+        '"description":"Fusce id nisi turpis. Praesent viverra bibendum semper.","account":"Studio Two",' +
+        '"playoutlink":"https://content.streamonecloud.net/hJCtpIGbK9Ur/playout.mp4",' +
+        '"selectedthumbnail":{"id":"0c9wZ7jA3IYf","url":"https://content.streamonecloud.net/0c9wZ7jA3IYf.jpg",' +
+        '"width":1280,"height":720}}'))
+
+    /**
+     * The fields the TV app's Movie carried when it was Serializable
+     */
+    static class SerializableItem implements Serializable {
+        static val serialVersionUID = 727566175075960653L
+        long id
+        String title
+        String description
+        String bgImageUrl
+        String cardImageUrl
+        String videoUrl
+        String studio
+        String category
+
+        new (MediaItem item) {
+            title = item.title
+            description = item.description
+            bgImageUrl = item.selectedthumbnail.url
+            cardImageUrl = item.selectedthumbnail.url
+            videoUrl = item.playoutlink
+            studio = item.account
+            category = "Category Two"
+        }
+    }
+
+    static def byte[] marshall(MediaItem item) {
+        val parcel = Parcel.obtain
+        try {
+            item.writeToParcel(parcel, 0)
+            return parcel.marshall
+        } finally {
+            parcel.recycle
+        }
+    }
+
+    static def MediaItem unmarshall(byte[] bytes) {
+        val parcel = Parcel.obtain
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length)
+            parcel.setDataPosition(0)
+            return MediaItem.CREATOR.createFromParcel(parcel)
+        } finally {
+            parcel.recycle
+        }
+    }
+
+    static def byte[] serialize(Serializable value) {
+        val out = new ByteArrayOutputStream
+        val objects = new ObjectOutputStream(out)
+        objects.writeObject(value)
+        objects.close
+        return out.toByteArray
+    }
+
+    static def Object deserialize(byte[] bytes) {
+        val objects = new ObjectInputStream(new ByteArrayInputStream(bytes))
+        try {
+            return objects.readObject
+        } finally {
+            objects.close
+        }
+    }
+
+    @Test
+    public def void round_trips_through_a_parcel() {
+        val copy = unmarshall(marshall(item))
+        assertEquals(item.id, copy.id)
+        assertEquals(item.title, copy.title)
+        assertEquals(item.description, copy.description)
+        assertEquals(item.account, copy.account)
+        assertEquals(item.playoutlink, copy.playoutlink)
+        assertEquals(item.selectedthumbnail.url, copy.selectedthumbnail.url)
+        assertEquals(720, copy.selectedthumbnail.height)
+    }
+
+    @Test
+    public def void benchmark_parcel_against_serializable() {
+        val serializable = new SerializableItem(item)
+        val parcelled = marshall(item)
+        val serialized = serialize(serializable)
+        Log.i(TAG, "Parcel " + parcelled.length + " bytes, Serializable " + serialized.length + " bytes")
+
+        Benchmark.measure("MediaItem, Parcel marshal", OPERATIONS, [|
+            marshall(item)
+        ])
+        Benchmark.measure("MediaItem, Parcel unmarshal", OPERATIONS, [|
+            unmarshall(parcelled)
+        ])
+        Benchmark.measure("Movie, Serializable marshal", OPERATIONS, [|
+            serialize(serializable)
+        ])
+        Benchmark.measure("Movie, Serializable unmarshal", OPERATIONS, [|
+            deserialize(serialized)
+        ])
+    }
+}
@@ -0,0 +1,17 @@
+package nl.streamone.sdk
+
+import org.junit.runner.RunWith
+
+import android.support.test.runner.AndroidJUnit4
+import android.test.suitebuilder.annotation.MediumTest
+
+/**
+ * The {@link HttpUrlConnectionRequestTest} scenarios, over OkHttp
+ */
+@RunWith(AndroidJUnit4)
+@MediumTest
+class OkHttpTransportTest extends HttpUrlConnectionRequestTest {
+    override protected newRequest() {
+        new OkHttpRequest('localhost', port)
+    }
+}
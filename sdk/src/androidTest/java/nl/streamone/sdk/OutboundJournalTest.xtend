@@ -0,0 +1,132 @@
+package nl.streamone.sdk
+
+import java.io.File
+import java.io.FileOutputStream
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import static org.junit.Assert.*
+
+import android.support.test.runner.AndroidJUnit4
+import android.test.suitebuilder.annotation.MediumTest
+
+/**
+ * What {@link OutboundQueue} finds back after the process died
+ */
+@RunWith(AndroidJUnit4)
+@MediumTest
+class OutboundJournalTest {
+    File directory
+
+    @Before
+    public def void createDirectory() {
+        directory = File.createTempFile("outbound", "")
+        directory.delete
+        directory.mkdirs
+    }
+
+    @After
+    public def void deleteDirectory() {
+        directory.listFiles?.forEach[ delete ]
+        directory.delete
+    }
+
+    static def JournalEntry entry(String title) {
+        val request = new HttpUrlConnectionRequest('localhost')
+        request.command = 'item'
+        request.action = 'create'
+        request.signingKey = 'secret'
+        request.parameters.put('session', 'sC5tGogRgBow')
+        request.arguments.put('title', title)
+        return new JournalEntry(request, null, null)
+    }
+
+    @Test
+    public def void replays_what_was_not_acked() {
+        val journal = new OutboundJournal(directory, OutboundJournal.DEFAULT_SEGMENT_BYTES)
+        assertTrue(journal.open.isEmpty)
+        val first = entry('first')
+        val second = entry('second')
+        journal.append(first)
+        journal.append(second)
+        journal.append(entry('third'))
+        journal.ack(second)
+        journal.close
+
+        val reopened = new OutboundJournal(directory, OutboundJournal.DEFAULT_SEGMENT_BYTES).open
+        assertEquals(#['first', 'third'], reopened.map[ arguments.get('title') ])
+        assertEquals('create', reopened.head.action)
+        assertNull("the session is signed in at send time", reopened.head.parameters.get('session'))
+
+        val request = reopened.head.toRequest(new HttpUrlConnectionRequest)
+        assertEquals('localhost', request.hostname)
+        assertNull(request.signingKey)
+    }
+
+    @Test
+    public def void stops_at_a_torn_record() {
+        val journal = new OutboundJournal(directory, OutboundJournal.DEFAULT_SEGMENT_BYTES)
+        journal.open
+        journal.append(entry('complete'))
+        journal.close
+
+        // the process died halfway through the next append
+        val out = new FileOutputStream(directory.listFiles.head, true)
+        val torn = newByteArrayOfSize(7)
+        torn.set(3, 42 as byte)
+        out.write(torn)
+        out.close
+
+        val reopened = new OutboundJournal(directory, OutboundJournal.DEFAULT_SEGMENT_BYTES)
+        assertEquals(#['complete'], reopened.open.map[ arguments.get('title') ])
+        reopened.append(entry('after'))
+        reopened.close
+        assertEquals(#['complete', 'after'],
+            new OutboundJournal(directory, OutboundJournal.DEFAULT_SEGMENT_BYTES).open.map[ arguments.get('title') ])
+    }
+
+    @Test
+    public def void compacts_acked_segments() {
+        val journal = new OutboundJournal(directory, 256)
+        journal.open
+        val stuck = entry('stuck')
+        journal.append(stuck)
+        for (var i = 0; i < 50; i++) {
+            val e = entry('entry ' + i)
+            journal.append(e)
+            journal.ack(e)
+        }
+        assertTrue("dead segments behind a stuck entry get rewritten",
+            journal.segmentCount <= OutboundJournal.MAX_SEGMENTS)
+        journal.ack(stuck)
+        assertTrue(journal.segmentCount <= 1)
+        journal.close
+
+        assertTrue(new OutboundJournal(directory, 256).open.isEmpty)
+    }
+
+    @Test
+    public def void a_long_queue_is_not_rewritten_on_every_ack() {
+        val journal = new OutboundJournal(directory, 256)
+        journal.open
+        val entries = (0 ..< 40).map[ entry('entry ' + it) ].toList
+        entries.forEach[ journal.append(it) ]
+        val segments = journal.segmentCount
+        assertTrue(segments > OutboundJournal.MAX_SEGMENTS)
+        val written = directory.list.toList
+
+        for (i : 0 ..< 5) {
+            journal.ack(entries.get(39 - i))
+        }
+        // the acks may start a segment of their own
+        assertTrue(journal.segmentCount >= segments)
+        for (name : written) {
+            assertTrue("nothing dead, nothing copied: " + name, new File(directory, name).exists)
+        }
+        journal.close
+
+        assertEquals(35, new OutboundJournal(directory, 256).open.size)
+    }
+}
@@ -0,0 +1,178 @@
+package nl.streamone.sdk
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import static org.junit.Assert.*
+
+import android.support.test.runner.AndroidJUnit4
+import android.test.suitebuilder.annotation.MediumTest
+
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.mockwebserver.RecordedRequest
+
+/**
+ * One handshake for many callers, and renewal before the session runs out
+ */
+@RunWith(AndroidJUnit4)
+@MediumTest
+class SessionManagerTest {
+    static val psk = "AAAAABBBBBCCCCCDDDDD000000111111222222"
+    // cost 4, the point is the handshake count, not bcrypt
+    static val initializeJson = '{"header":{"status":0},"body":{"challenge":"coRUuWCVY3pqiEt69i9IaU8d9E0Q4zz6","salt":"$2y$04$baztaaydu13s4ah6y6pegt","needsv2hash":false}}'
+
+    MockWebServer server
+    SessionManager sessions
+
+    val AtomicInteger initializes = new AtomicInteger
+    val AtomicInteger creates = new AtomicInteger
+
+    /**
+     * Seconds, session/create answers with it
+     */
+    volatile int timeout = 3600
+
+    @Before
+    public def void startServer() {
+        server = new MockWebServer
+        server.dispatcher = [ RecordedRequest request |
+            val path = request.path
+            if (path.contains('api/session/initialize')) {
+                initializes.incrementAndGet
+                // long enough for all callers to pile up on the one handshake
+                Thread.sleep(100)
+                return new MockResponse().setBody(initializeJson)
+            }
+            if (path.contains('api/session/create')) {
+                val id = 'session' + creates.incrementAndGet
+                return new MockResponse().setBody('{"header":{"status":0},"body":{"id":"' + id
+                    + '","key":"gR92jURda7mEqiDzhcz2bC1FtIzS8wxe","timeout":' + timeout + ',"user":"USER"}}')
+            }
+            return new MockResponse().setResponseCode(404)
+        ]
+        server.start
+
+        val auth = new Authentication
+        auth.hostname = 'localhost'
+        auth.authenticationType = 'application'
+        auth.loginId = 'APPLICATION'
+        auth.preSharedKey = psk
+        sessions = new SessionManager(auth, 'user', 'password', [|
+            val request = new HttpUrlConnectionRequest('localhost', server.port)
+            request.scheme = 'http'
+            request
+        ])
+    }
+
+    @After
+    public def void stopServer() {
+        sessions.shutdown
+        server.shutdown
+    }
+
+    def RequestBase request() {
+        val request = new HttpUrlConnectionRequest('localhost', server.port)
+        request.scheme = 'http'
+        request.command = 'item'
+        request.action = 'view'
+        return request
+    }
+
+    def String getSessionId() {
+        val session = sessions.session
+        return if (session == null) null else session.id
+    }
+
+    @Test
+    public def void parallel_requests_share_one_handshake() {
+        val callers = 20
+        val pool = Executors.newFixedThreadPool(callers)
+        val start = new CountDownLatch(1)
+        val done = new CountDownLatch(callers)
+        val failures = new AtomicInteger
+        for (i : 0 ..< callers) {
+            pool.execute [|
+                try {
+                    start.await
+                    val request = request()
+                    sessions.authorize(request)
+                    assertEquals('session1', request.parameters.get('session'))
+                } catch (Throwable e) {
+                    failures.incrementAndGet
+                } finally {
+                    done.countDown
+                }
+            ]
+        }
+        start.countDown
+        assertTrue(done.await(10, TimeUnit.SECONDS))
+        pool.shutdownNow
+
+        assertEquals(0, failures.get)
+        assertEquals(1, initializes.get)
+        assertEquals(1, creates.get)
+    }
+
+    @Test
+    public def void renews_before_the_timeout() {
+        timeout = 3
+        sessions.authorize(request())
+        assertEquals('session1', sessions.session.id)
+
+        // renewed at RENEW_AT of the 3 s, the first one never runs out
+        for (var i = 0; i < 290 && !'session2'.equals(sessionId); i++) {
+            Thread.sleep(10)
+            assertTrue(sessions.valid)
+        }
+        assertEquals('session2', sessions.session.id)
+
+        val renewed = request()
+        sessions.authorize(renewed)
+        assertEquals('session2', renewed.parameters.get('session'))
+        assertEquals(2, creates.get)
+    }
+
+    @Test
+    public def void a_session_without_timeout_is_kept() {
+        timeout = 0
+        sessions.authorize(request())
+        sessions.authorize(request())
+        sessions.authorize(request())
+
+        assertTrue(sessions.valid)
+        assertEquals(1, creates.get)
+    }
+
+    @Test
+    public def void authorize_from_a_callback_fails_instead_of_hanging() {
+        val failure = new AtomicReference<Throwable>
+        val done = new CountDownLatch(1)
+        sessions.getSession(new SessionCallback {
+            override onSession(SessionManager manager, Session session) {
+                manager.invalidate
+                try {
+                    manager.authorize(request())
+                } catch (Throwable e) {
+                    failure.set(e)
+                }
+                done.countDown
+            }
+
+            override onError(SessionManager manager, Exception e) {
+                failure.set(e)
+                done.countDown
+            }
+        })
+
+        assertTrue(done.await(5, TimeUnit.SECONDS))
+        assertTrue(String.valueOf(failure.get), failure.get instanceof IllegalStateException)
+    }
+}
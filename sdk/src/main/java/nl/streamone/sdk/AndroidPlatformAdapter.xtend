@@ -0,0 +1,14 @@
+package nl.streamone.sdk
+
+import android.util.Log
+
+/**
+    Found by name by {@link PlatformAdapter#get}, keep the class name and the public constructor
+ */
+class AndroidPlatformAdapter extends PlatformAdapter
+{
+    override log(int priority, String tag, String message, Throwable tr)
+    {
+        Log.println(priority, tag, if (tr == null) message else message + '\n' + Log.getStackTraceString(tr))
+    }
+}
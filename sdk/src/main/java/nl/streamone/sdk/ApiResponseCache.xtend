@@ -0,0 +1,354 @@
+package nl.streamone.sdk
+
+import android.util.JsonReader
+import android.util.Log
+import android.util.LruCache
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.IOException
+import java.io.StringReader
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    Caches the responses the API marks as "cacheable" in its header.
+
+    Keyed on {@link RequestBase#getRequestKey}, so the per request timestamp and signature
+    don't get in the way. Memory is an LRU bounded in bytes, the disk tier is optional and
+    bounded too: past maxDiskBytes the least recently used files go first.
+
+    val cache = new ApiResponseCache(2 * 1024 * 1024, new File(context.cacheDir, "streamone"), 5 * 60 * 1000)
+    request.cache = cache
+ */
+class ApiResponseCache implements ResponseCache
+{
+    static val TAG = "ApiResponseCache"
+
+    public static val DEFAULT_TTL_MILLIS = 5 * 60 * 1000L
+
+    public static val DEFAULT_MAX_DISK_BYTES = 10 * 1024 * 1024L
+
+    /**
+        Trim to this fraction of maxDiskBytes, so not every write past the cap trims again
+     */
+    static val TRIM_TO = 0.9
+
+    static val HEX = "0123456789abcdef".toCharArray
+
+    /**
+        Entries being written, not counted and never trimmed
+     */
+    static val TMP_SUFFIX = '.tmp'
+
+    val LruCache<String, CachedResponse> memory
+
+    /**
+        null means memory only
+     */
+    val File directory
+
+    val long maxDiskBytes
+    val AtomicLong diskBytes = new AtomicLong
+
+    @Accessors
+    volatile long ttlMillis
+
+    val AtomicLong hits = new AtomicLong
+    val AtomicLong misses = new AtomicLong
+
+    new (int maxMemoryBytes)
+    {
+        this(maxMemoryBytes, null, DEFAULT_TTL_MILLIS)
+    }
+
+    new (int maxMemoryBytes, File directory, long ttlMillis)
+    {
+        this(maxMemoryBytes, directory, ttlMillis, DEFAULT_MAX_DISK_BYTES)
+    }
+
+    new (int maxMemoryBytes, File directory, long ttlMillis, long maxDiskBytes)
+    {
+        this.memory = new LruCache<String, CachedResponse>(maxMemoryBytes) {
+            override protected sizeOf(String key, CachedResponse value) {
+                // UTF-16 chars
+                2 * (key.length + value.json.length)
+            }
+        }
+        this.directory = directory
+        this.ttlMillis = ttlMillis
+        this.maxDiskBytes = maxDiskBytes
+        if (directory != null)
+        {
+            directory.mkdirs
+            directory.listFiles?.forEach[
+                // left over from a write that didn't finish
+                if (name.endsWith(TMP_SUFFIX)) it.delete else diskBytes.addAndGet(length)
+            ]
+            trimDisk
+        }
+    }
+
+    /**
+        Returns null on a miss or when the entry expired
+     */
+    override CachedResponse get(String key)
+    {
+        val now = System.currentTimeMillis
+        var cached = memory.get(key)
+        if (cached == null && directory != null)
+        {
+            cached = readFromDisk(key)
+            if (cached != null)
+            {
+                memory.put(key, cached)
+            }
+        }
+
+        if (cached == null || cached.expires < now)
+        {
+            if (cached != null)
+            {
+                remove(key)
+            }
+            misses.incrementAndGet
+            return null
+        }
+
+        hits.incrementAndGet
+        return cached
+    }
+
+    /**
+        Only stores successful responses with "cacheable": true in the header
+     */
+    override boolean put(String key, Response response)
+    {
+        if (response.code != 200 || response.json == null || !isCacheable(response.json))
+        {
+            return false
+        }
+
+        val cached = new CachedResponse(response.json, response.headers, System.currentTimeMillis + ttlMillis)
+        memory.put(key, cached)
+        if (directory != null)
+        {
+            writeToDisk(key, cached)
+        }
+        return true
+    }
+
+    def void remove(String key)
+    {
+        memory.remove(key)
+        if (directory != null)
+        {
+            delete(fileFor(key))
+        }
+    }
+
+    def void clear()
+    {
+        memory.evictAll
+        entries?.forEach[ delete(it) ]
+    }
+
+    /**
+        What the entries on disk take now
+     */
+    def long getDiskBytes()
+    {
+        return diskBytes.get
+    }
+
+    def long getHitCount()
+    {
+        return hits.get
+    }
+
+    def long getMissCount()
+    {
+        return misses.get
+    }
+
+    /**
+        Only looks at the header, which the API sends first, then stops reading
+     */
+    static def boolean isCacheable(String json)
+    {
+        val reader = new JsonReader(new StringReader(json))
+        try {
+            reader.beginObject
+            while (reader.hasNext)
+            {
+                if ('header'.equals(reader.nextName))
+                {
+                    reader.beginObject
+                    while (reader.hasNext)
+                    {
+                        if ('cacheable'.equals(reader.nextName))
+                        {
+                            return reader.nextBoolean
+                        }
+                        reader.skipValue
+                    }
+                    return false
+                }
+                reader.skipValue
+            }
+        } catch (IOException e) {
+            // not our JSON
+        } catch (IllegalStateException e) {
+            // "cacheable" of the wrong type
+        } finally {
+            try {
+                reader.close
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        return false
+    }
+
+    private def CachedResponse readFromDisk(String key)
+    {
+        val file = fileFor(key)
+        if (!file.exists)
+        {
+            return null
+        }
+
+        var DataInputStream in = null
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+            val expires = in.readLong
+            val bytes = newByteArrayOfSize(in.readInt)
+            in.readFully(bytes)
+            // the age the trim goes by
+            file.setLastModified(System.currentTimeMillis)
+            return new CachedResponse(new String(bytes, 'UTF-8'), null, expires)
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.name, e)
+            delete(file)
+            return null
+        } finally {
+            try {
+                in?.close
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private def void writeToDisk(String key, CachedResponse cached)
+    {
+        val file = fileFor(key)
+        // write aside and rename, readers never see half an entry; a file of its own per write,
+        // two puts of the same key don't write into or rename each other's
+        var File tmp = null
+        var DataOutputStream out = null
+        try {
+            tmp = File.createTempFile(file.name + '-', TMP_SUFFIX, directory)
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))
+            val bytes = cached.json.getBytes('UTF-8')
+            out.writeLong(cached.expires)
+            out.writeInt(bytes.length)
+            out.write(bytes)
+            out.close
+            out = null
+            replace(file, tmp)
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write cache entry " + file.name, e)
+            tmp?.delete
+        } finally {
+            try {
+                out?.close
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        if (diskBytes.get > maxDiskBytes)
+        {
+            trimDisk
+        }
+    }
+
+    /**
+        Locked, so what the replaced entry took and what the new one takes are counted in one go
+     */
+    private def synchronized void replace(File file, File tmp)
+    {
+        val replaced = file.length
+        if (tmp.renameTo(file))
+        {
+            diskBytes.addAndGet(file.length - replaced)
+        } else {
+            tmp.delete
+        }
+    }
+
+    /**
+        Deletes the least recently used files until the disk tier is back under TRIM_TO of the cap
+     */
+    private def synchronized void trimDisk()
+    {
+        if (diskBytes.get <= maxDiskBytes)
+        {
+            return
+        }
+        val files = entries
+        if (files == null)
+        {
+            return
+        }
+        val target = (maxDiskBytes * TRIM_TO) as long
+        for (file : files.sortBy[ lastModified ])
+        {
+            if (diskBytes.get <= target)
+            {
+                return
+            }
+            delete(file)
+        }
+    }
+
+    private def synchronized void delete(File file)
+    {
+        val length = file.length
+        if (file.delete)
+        {
+            diskBytes.addAndGet(-length)
+        }
+    }
+
+    /**
+        The files of the disk tier, without those still being written
+     */
+    private def File[] entries()
+    {
+        return directory?.listFiles[ dir, name | !name.endsWith(TMP_SUFFIX) ]
+    }
+
+    private def File fileFor(String key)
+    {
+        val digest = MessageDigest.getInstance('SHA-1').digest(key.getBytes('UTF-8'))
+        val chars = newCharArrayOfSize(digest.length * 2)
+        for (var i = 0; i < digest.length; i++)
+        {
+            val b = digest.get(i).bitwiseAnd(0xff)
+            chars.set(i * 2, HEX.get(b / 16))
+            chars.set(i * 2 + 1, HEX.get(b % 16))
+        }
+        return new File(directory, new String(chars))
+    }
+}
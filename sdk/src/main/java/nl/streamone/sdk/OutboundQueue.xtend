@@ -0,0 +1,770 @@
+package nl.streamone.sdk
+
+import android.util.Log
+
+import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.ArrayList
+import java.util.LinkedHashMap
+import java.util.LinkedList
+import java.util.List
+import java.util.Map
+import java.util.Random
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.zip.CRC32
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    Adds the signing key (and session) to a request right before it goes out,
+    e.g. [ r | sessions.authorize(r) ] or [ r | r.signingKey = psk ]
+ */
+interface RequestAuthorizer
+{
+    def void authorize(RequestBase request) throws IOException
+}
+
+/**
+    Hears about every write the queue is done with, also the ones journaled by an earlier process
+ */
+abstract class OutboundListener
+{
+    def void onDelivered(OutboundQueue queue, RequestBase request, Response response)
+
+    /**
+        The API refused it (4xx), kept failing it (see {@link OutboundQueue#setMaxAttempts})
+        or it was cancelled, it won't be retried
+     */
+    def void onDropped(OutboundQueue queue, RequestBase request, Exception e)
+}
+
+/**
+    Offline first writes: the mutating requests (see {@link RequestBase#isIdempotent}) are appended
+    to a journal on disk and sent one at a time, in order. A network error or a 5xx keeps the request
+    at the head of the queue and retries with exponential backoff; tell the queue when the
+    network is back and it tries right away. Network errors are retried for as long as it takes,
+    the API answering 408, 429 or 5xx only maxAttempts times, then the write is dropped so it
+    doesn't hold up the ones behind it. Whatever is still journaled when the process dies is
+    sent after the next start.
+
+    Nothing is signed before it is sent, the timestamp would go stale: the authorizer runs
+    before every attempt and the signing key is never written to disk.
+
+    Other requests go straight to the target dispatcher. The callbacks of a queued request
+    run on the queue's thread, once, when it was delivered or dropped.
+
+    val queue = new OutboundQueue(new File(context.filesDir, "outbound"),
+        [| new HttpUrlConnectionRequest(hostname) ], [ r | sessions.authorize(r) ], RequestExecutor.getDefault)
+    request.dispatcher = queue
+    request.execute(response)
+    // from a CONNECTIVITY_ACTION receiver
+    queue.onNetworkAvailable
+ */
+class OutboundQueue implements RequestDispatcher
+{
+    static val TAG = "OutboundQueue"
+
+    public static val INITIAL_BACKOFF_MILLIS = 1000L
+    public static val MAX_BACKOFF_MILLIS = 5 * 60 * 1000L
+
+    /**
+        Attempts the API answered with a retryable error, about a quarter of an hour of backoff
+     */
+    public static val DEFAULT_MAX_ATTEMPTS = 10
+
+    val OutboundJournal journal
+    val RequestFactory requestFactory
+    val RequestAuthorizer authorizer
+    val RequestDispatcher target
+    val ScheduledExecutorService sender
+    val Random random = new Random
+
+    /**
+        Only touched on the sender thread
+     */
+    val LinkedList<JournalEntry> pending = new LinkedList
+    int failures = 0
+    ScheduledFuture<?> retry
+
+    @Accessors
+    volatile OutboundListener listener
+
+    @Accessors
+    volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS
+
+    volatile int pendingCount = 0
+
+    new (File directory, RequestFactory requestFactory, RequestAuthorizer authorizer)
+    {
+        this(directory, requestFactory, authorizer, SynchronousDispatcher.INSTANCE)
+    }
+
+    new (File directory, RequestFactory requestFactory, RequestAuthorizer authorizer, RequestDispatcher target)
+    {
+        this.journal = new OutboundJournal(directory, OutboundJournal.DEFAULT_SEGMENT_BYTES)
+        this.requestFactory = requestFactory
+        this.authorizer = authorizer
+        this.target = target
+        this.sender = Executors.newSingleThreadScheduledExecutor [ runnable |
+            val thread = new Thread(runnable, TAG)
+            thread.daemon = true
+            thread
+        ]
+        sender.execute [|
+            try {
+                pending.addAll(journal.open)
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to open the journal, writes are not durable", e)
+            }
+            pendingCount = pending.size
+            drain
+        ]
+    }
+
+    override submit(RequestBase request, Response response)
+    {
+        if (request.isIdempotent)
+        {
+            return target.submit(request, response)
+        }
+
+        val handle = new RequestHandle(request)
+        val entry = new JournalEntry(request, response, handle)
+        handle.canceller = [| entry.cancelled = true ]
+        sender.execute [|
+            try {
+                journal.append(entry)
+            } catch (IOException e) {
+                // still worth a try while we're running
+                Log.w(TAG, "Unable to journal " + request.command + '/' + request.action, e)
+            }
+            pending.add(entry)
+            pendingCount = pending.size
+            if (retry == null)
+            {
+                drain
+            }
+        ]
+        return handle
+    }
+
+    /**
+        Skips the backoff, e.g. when connectivity returns
+     */
+    def void onNetworkAvailable()
+    {
+        sender.execute [|
+            failures = 0
+            retry?.cancel(false)
+            retry = null
+            drain
+        ]
+    }
+
+    /**
+        Journaled writes that weren't delivered or dropped yet
+     */
+    def int getPendingCount()
+    {
+        return pendingCount
+    }
+
+    def void shutdown()
+    {
+        sender.shutdownNow
+        journal.close
+    }
+
+    private def void drain()
+    {
+        var blocked = false
+        while (!blocked && !pending.isEmpty)
+        {
+            val entry = pending.peek
+            if (entry.cancelled)
+            {
+                finish(entry, false, new IOException("Cancelled"))
+            } else {
+                val outcome = send(entry)
+                if (outcome == Outcome.RETRY && entry.result.code != 0)
+                {
+                    entry.answers = entry.answers + 1
+                }
+                if (outcome == Outcome.RETRY && entry.answers >= maxAttempts)
+                {
+                    failures = 0
+                    Log.w(TAG, "Dropping " + entry.command + '/' + entry.action + " after " + entry.answers
+                        + " attempts, the last one answered " + entry.result.code)
+                    finish(entry, false, new IOException("Gave up after " + entry.answers + " attempts", entry.result.error))
+                } else if (outcome == Outcome.RETRY)
+                {
+                    failures = failures + 1
+                    val delay = backoff(failures)
+                    Log.i(TAG, "Retrying " + entry.command + '/' + entry.action + " in " + delay + " ms")
+                    retry = sender.schedule([|
+                        retry = null
+                        drain
+                    ], delay, TimeUnit.MILLISECONDS)
+                    blocked = true
+                } else {
+                    failures = 0
+                    finish(entry, outcome == Outcome.DELIVERED, entry.result.error)
+                }
+            }
+        }
+    }
+
+    private def Outcome send(JournalEntry entry)
+    {
+        var request = entry.request
+        if (request == null)
+        {
+            // journaled by an earlier process
+            request = entry.toRequest(requestFactory.create)
+            entry.request = request
+        }
+
+        val result = new AttemptResponse
+        entry.result = result
+        try {
+            authorizer?.authorize(request)
+            request.executeNow(result)
+        } catch (IOException e) {
+            result.onError(request, e)
+        } catch (RuntimeException e) {
+            // e.g. no signing key, another try won't fix that
+            result.onError(request, e)
+            result.permanent = true
+        }
+        return result.outcome
+    }
+
+    private def void finish(JournalEntry entry, boolean delivered, Exception e)
+    {
+        pending.remove
+        pendingCount = pending.size
+        try {
+            journal.ack(entry)
+        } catch (IOException ioe) {
+            // it will be sent again after a restart, better than losing it
+            Log.w(TAG, "Unable to ack " + entry.id, ioe)
+        }
+
+        val request = entry.request
+        val response = entry.response
+        if (response != null && !entry.cancelled)
+        {
+            entry.result?.copyTo(response)
+            if (delivered)
+            {
+                response.onSuccess(request)
+            } else {
+                response.onError(request, e)
+            }
+        }
+        entry.handle?.finish
+
+        val listener = this.listener
+        if (listener != null && request != null)
+        {
+            if (delivered)
+            {
+                listener.onDelivered(this, request, entry.result)
+            } else {
+                listener.onDropped(this, request, e)
+            }
+        }
+    }
+
+    /**
+        Exponential, with half of it random so a fleet of clients doesn't come back at the same moment
+     */
+    private def long backoff(int failures)
+    {
+        val exponential = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(failures - 1, 20))
+        return exponential / 2 + (random.nextDouble * exponential / 2) as long
+    }
+}
+
+/**
+    A queued write, as much of the request as can be replayed without the secrets
+ */
+package class JournalEntry
+{
+    @Accessors(PACKAGE_GETTER, PACKAGE_SETTER)
+    long id
+
+    @Accessors(PACKAGE_GETTER)
+    val String method
+    @Accessors(PACKAGE_GETTER)
+    val String scheme
+    @Accessors(PACKAGE_GETTER)
+    val String hostname
+    @Accessors(PACKAGE_GETTER)
+    val String port
+    @Accessors(PACKAGE_GETTER)
+    val String command
+    @Accessors(PACKAGE_GETTER)
+    val String action
+    @Accessors(PACKAGE_GETTER)
+    val Map<String, String> parameters
+    @Accessors(PACKAGE_GETTER)
+    val Map<String, String> arguments
+
+    /**
+        In memory only, null for an entry read back from the journal
+     */
+    @Accessors(PACKAGE_GETTER, PACKAGE_SETTER)
+    RequestBase request
+    @Accessors(PACKAGE_GETTER)
+    Response response
+    @Accessors(PACKAGE_GETTER)
+    RequestHandle handle
+    @Accessors(PACKAGE_GETTER, PACKAGE_SETTER)
+    AttemptResponse result
+    @Accessors(PACKAGE_GETTER, PACKAGE_SETTER)
+    volatile boolean cancelled = false
+
+    /**
+        Attempts the API answered with a retryable status, in this process
+     */
+    @Accessors(PACKAGE_GETTER, PACKAGE_SETTER)
+    int answers = 0
+
+    /**
+        The segment the entry was last written to
+     */
+    @Accessors(PACKAGE_GETTER, PACKAGE_SETTER)
+    JournalSegment segment
+
+    new (RequestBase request, Response response, RequestHandle handle)
+    {
+        this(request.method, request.scheme, request.hostname, request.port, request.command, request.action,
+            withoutSignature(request.parameters), new LinkedHashMap(request.arguments))
+        this.request = request
+        this.response = response
+        this.handle = handle
+    }
+
+    new (String method, String scheme, String hostname, String port, String command, String action,
+        Map<String, String> parameters, Map<String, String> arguments)
+    {
+        this.method = method
+        this.scheme = scheme
+        this.hostname = hostname
+        this.port = port
+        this.command = command
+        this.action = action
+        this.parameters = parameters
+        this.arguments = arguments
+    }
+
+    /**
+        The session is the authorizer's business, it will be a new one by the time we replay
+     */
+    private static def Map<String, String> withoutSignature(Map<String, String> parameters)
+    {
+        val copy = newLinkedHashMap
+        for (p : parameters.entrySet)
+        {
+            if (!'timestamp'.equals(p.key) && !'signature'.equals(p.key) && !'session'.equals(p.key))
+            {
+                copy.put(p.key, p.value)
+            }
+        }
+        return copy
+    }
+
+    def RequestBase toRequest(RequestBase request)
+    {
+        request.method = method
+        request.scheme = scheme
+        if (hostname != null)
+        {
+            request.hostname = hostname
+        }
+        if (port != null)
+        {
+            request.port = port
+        }
+        request.command = command
+        request.action = action
+        request.parameters.putAll(parameters)
+        request.arguments.putAll(arguments)
+        return request
+    }
+}
+
+package class JournalSegment
+{
+    @Accessors(PACKAGE_GETTER)
+    val File file
+
+    @Accessors(PACKAGE_GETTER)
+    val long index
+
+    /**
+        Entries written here that weren't acked yet
+     */
+    @Accessors(PACKAGE_GETTER)
+    val List<Long> live = newArrayList
+
+    new (File file, long index)
+    {
+        this.file = file
+        this.index = index
+    }
+}
+
+/**
+    Append only, in segments: a record is [length][crc32][type][id][entry], an ack only names the id.
+    Segments are only deleted from the head, once everything written to them was acked, so an ack
+    can't disappear before the entry it acks. When a stuck entry keeps the head alive while dead
+    segments pile up behind it, the live entries are copied to a fresh segment; only once at least
+    half the segments are dead, so a long queue isn't copied again on every ack.
+
+    A torn write at the end of a segment (the process died mid append) fails the crc and ends the
+    segment, nothing after it can be trusted. Appends always go to a new segment after opening.
+
+    Not thread safe, the queue only uses it from its sender thread.
+ */
+package class OutboundJournal
+{
+    static val TAG = "OutboundJournal"
+
+    public static val DEFAULT_SEGMENT_BYTES = 64 * 1024
+
+    /**
+        Rewrite the live entries once there are more segments than this, and half of them are dead
+     */
+    public static val MAX_SEGMENTS = 4
+
+    static val SEGMENT_PREFIX = "segment-"
+
+    /**
+        Anything longer is a torn length
+     */
+    static val MAX_RECORD_BYTES = 4 * 1024 * 1024
+
+    static val ENQUEUE = 1 as byte
+    static val ACK = 2 as byte
+
+    val File directory
+    val int segmentBytes
+    val LinkedList<JournalSegment> segments = new LinkedList
+    val Map<Long, JournalEntry> live = newLinkedHashMap
+    val CRC32 crc = new CRC32
+    val ByteArrayOutputStream record = new ByteArrayOutputStream(512)
+
+    FileOutputStream active
+    long activeBytes
+    long nextId = 1
+    long nextSegment = 1
+
+    new (File directory, int segmentBytes)
+    {
+        this.directory = directory
+        this.segmentBytes = segmentBytes
+    }
+
+    /**
+        Reads the segments back, returns the entries that weren't acked, oldest first
+     */
+    def List<JournalEntry> open() throws IOException
+    {
+        directory.mkdirs
+        val listed = directory.listFiles
+        if (listed == null)
+        {
+            throw new IOException("Unable to list " + directory)
+        }
+
+        for (file : listed.filter[ name.startsWith(SEGMENT_PREFIX) ].sortBy[ segmentIndex(name) ])
+        {
+            val segment = new JournalSegment(file, segmentIndex(file.name))
+            segments.add(segment)
+            nextSegment = segment.index + 1
+            read(segment)
+        }
+        for (entry : live.values)
+        {
+            entry.segment.live.add(entry.id)
+            nextId = Math.max(nextId, entry.id + 1)
+        }
+
+        compact
+        return new ArrayList(live.values)
+    }
+
+    def void append(JournalEntry entry) throws IOException
+    {
+        entry.id = nextId
+        nextId = nextId + 1
+        write(ENQUEUE, entry)
+        entry.segment.live.add(entry.id)
+        live.put(entry.id, entry)
+    }
+
+    def void ack(JournalEntry entry) throws IOException
+    {
+        if (live.remove(entry.id) == null)
+        {
+            // never made it to disk
+            return
+        }
+        write(ACK, entry)
+        entry.segment.live.remove(entry.id)
+        compact
+    }
+
+    def int getSegmentCount()
+    {
+        return segments.size
+    }
+
+    def void close()
+    {
+        try {
+            active?.close
+        } catch (IOException e) {
+            // ignore
+        }
+        active = null
+    }
+
+    private def void write(byte type, JournalEntry entry) throws IOException
+    {
+        record.reset
+        val out = new DataOutputStream(record)
+        out.writeByte(type)
+        out.writeLong(entry.id)
+        if (type == ENQUEUE)
+        {
+            writeString(out, entry.method)
+            writeString(out, entry.scheme)
+            writeString(out, entry.hostname)
+            writeString(out, entry.port)
+            writeString(out, entry.command)
+            writeString(out, entry.action)
+            writeMap(out, entry.parameters)
+            writeMap(out, entry.arguments)
+        }
+        out.flush
+
+        if (active == null || activeBytes >= segmentBytes)
+        {
+            roll
+        }
+
+        val bytes = record.toByteArray
+        crc.reset
+        crc.update(bytes)
+        val framed = new DataOutputStream(active)
+        framed.writeInt(bytes.length)
+        framed.writeInt(crc.value as int)
+        framed.write(bytes)
+        framed.flush
+        // the point of the journal: it's on disk before we try to send it
+        active.getFD.sync
+        activeBytes = activeBytes + 8 + bytes.length
+
+        if (type == ENQUEUE)
+        {
+            entry.segment = segments.last
+        }
+    }
+
+    private def void roll() throws IOException
+    {
+        close
+        val segment = new JournalSegment(new File(directory, SEGMENT_PREFIX + nextSegment), nextSegment)
+        nextSegment = nextSegment + 1
+        active = new FileOutputStream(segment.file, true)
+        activeBytes = 0
+        segments.add(segment)
+    }
+
+    /**
+        Drops the fully acked segments at the head, rewrites when there are too many segments
+        and enough of them are dead. Rewriting costs the live entries, waiting until the dead
+        segments are as many as the live ones keeps that to about one write per ack.
+     */
+    private def void compact() throws IOException
+    {
+        while (!segments.isEmpty && segments.first.live.isEmpty
+            && (segments.size > 1 || active == null || activeBytes >= segmentBytes))
+        {
+            if (segments.size == 1)
+            {
+                close
+            }
+            segments.removeFirst().file.delete
+        }
+        if (segments.size > MAX_SEGMENTS && deadSegments * 2 >= segments.size)
+        {
+            rewrite
+        }
+    }
+
+    /**
+        Fully acked but stuck behind a live one, the active segment doesn't count
+     */
+    private def int deadSegments()
+    {
+        var dead = 0
+        for (segment : segments)
+        {
+            if (segment.live.isEmpty && segment !== segments.last)
+            {
+                dead = dead + 1
+            }
+        }
+        return dead
+    }
+
+    /**
+        Copies the live entries to a new segment, then deletes the old ones
+     */
+    private def void rewrite() throws IOException
+    {
+        val old = new ArrayList(segments)
+        roll
+        for (entry : live.values)
+        {
+            entry.segment.live.remove(entry.id)
+            write(ENQUEUE, entry)
+            entry.segment.live.add(entry.id)
+        }
+        for (segment : old)
+        {
+            segments.remove(segment)
+            segment.file.delete
+        }
+    }
+
+    private def void read(JournalSegment segment)
+    {
+        var DataInputStream in = null
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)))
+            var bytes = readRecord(in)
+            while (bytes != null)
+            {
+                val data = new DataInputStream(new ByteArrayInputStream(bytes))
+                val type = data.readByte
+                val id = data.readLong
+                if (type == ENQUEUE)
+                {
+                    val entry = new JournalEntry(readString(data), readString(data), readString(data),
+                        readString(data), readString(data), readString(data), readMap(data), readMap(data))
+                    entry.id = id
+                    entry.segment = segment
+                    live.put(id, entry)
+                } else {
+                    live.remove(id)
+                }
+                bytes = readRecord(in)
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Stopped reading " + segment.file.name, e)
+        } finally {
+            try {
+                in?.close
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+        null at the end of the segment or at a torn record
+     */
+    private def byte[] readRecord(DataInputStream in) throws IOException
+    {
+        try {
+            val length = in.readInt
+            val checksum = in.readInt
+            if (length <= 0 || length > MAX_RECORD_BYTES)
+            {
+                return null
+            }
+            val bytes = newByteArrayOfSize(length)
+            in.readFully(bytes)
+            crc.reset
+            crc.update(bytes)
+            return if ((crc.value as int) == checksum) bytes else null
+        } catch (EOFException e) {
+            return null
+        }
+    }
+
+    private static def long segmentIndex(String name)
+    {
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length))
+        } catch (NumberFormatException e) {
+            return 0
+        }
+    }
+    /**
+        Unlike writeUTF not limited to 64K, and null safe
+     */
+    private static def void writeString(DataOutputStream out, String s) throws IOException
+    {
+        if (s == null)
+        {
+            out.writeInt(-1)
+            return
+        }
+        val bytes = s.getBytes('UTF-8')
+        out.writeInt(bytes.length)
+        out.write(bytes)
+    }
+
+    private static def String readString(DataInputStream in) throws IOException
+    {
+        val length = in.readInt
+        if (length < 0)
+        {
+            return null
+        }
+        val bytes = newByteArrayOfSize(length)
+        in.readFully(bytes)
+        return new String(bytes, 'UTF-8')
+    }
+
+    private static def void writeMap(DataOutputStream out, Map<String, String> map) throws IOException
+    {
+        out.writeInt(map.size)
+        for (e : map.entrySet)
+        {
+            writeString(out, e.key)
+            writeString(out, e.value)
+        }
+    }
+
+    private static def Map<String, String> readMap(DataInputStream in) throws IOException
+    {
+        val Map<String, String> map = newLinkedHashMap
+        val size = in.readInt
+        for (var i = 0; i < size; i++)
+        {
+            map.put(readString(in), readString(in))
+        }
+        return map
+    }
+}
@@ -0,0 +1,321 @@
+package nl.streamone.sdk
+
+import android.content.ComponentCallbacks2
+import android.util.Log
+
+import java.util.LinkedHashMap
+import java.util.List
+import java.util.Map
+
+import org.json.JSONObject
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.RequestBase
+
+/**
+    Turns an element of the response body into a model, also handy from Java
+ */
+interface ModelFactory<T>
+{
+    def T create(JSONObject json)
+}
+
+abstract class PageCallback<T>
+{
+    /**
+        Fewer than limit items means there is nothing after this page
+     */
+    def void onPage(List<T> items)
+    def void onError(Exception e)
+}
+
+/**
+    Fetches offset until offset + limit, the callbacks must come back on the main thread
+ */
+interface PageLoader<T>
+{
+    /**
+        Returns null if the load can't be cancelled
+     */
+    def RequestHandle load(int offset, int limit, RequestPriority priority, PageCallback<T> callback)
+}
+
+interface PageListener
+{
+    def void onPageLoaded(PagedSource<?> source, int offset, int count)
+    def void onPageError(PagedSource<?> source, int offset, Exception e)
+}
+
+/**
+    A long list that is fetched a page at a time, as the UI asks for positions.
+
+    The size is what we have seen so far, it grows until a short page marks the end.
+    Asking for a position also prefetches the next page. Only maxPages pages are kept,
+    the least recently used one goes first; positions of an evicted page read as null
+    and reload when asked for again.
+
+    Main thread only, like the adapters it feeds.
+
+    val source = new PagedSource<Movie>(new ApiPageLoader(factory, 'item', 'view', [ json | toMovie(json) ]))
+    source.listener = ...
+    source.get(0) // null, the first page is on its way
+ */
+class PagedSource<T>
+{
+    static val TAG = "PagedSource"
+
+    public static val DEFAULT_PAGE_SIZE = 20
+
+    /**
+        A few screens worth of cards
+     */
+    public static val DEFAULT_MAX_PAGES = 6
+
+    val PageLoader<T> loader
+
+    @Accessors(PUBLIC_GETTER)
+    val int pageSize
+
+    @Accessors
+    PageListener listener
+
+    int maxPages
+
+    val LinkedHashMap<Integer, List<T>> pages
+    val Map<Integer, RequestHandle> loading = newHashMap
+
+    int size = 0
+    boolean complete = false
+
+    new (PageLoader<T> loader)
+    {
+        this(loader, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES)
+    }
+
+    new (PageLoader<T> loader, int pageSize, int maxPages)
+    {
+        this.loader = loader
+        this.pageSize = pageSize
+        this.maxPages = Math.max(2, maxPages)
+        // access ordered, so eviction hits the pages the user scrolled away from
+        this.pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true)
+    }
+
+    /**
+        Items known so far, loaded or evicted
+     */
+    def int size()
+    {
+        return size
+    }
+
+    /**
+        True once the last page came in
+     */
+    def boolean isComplete()
+    {
+        return complete
+    }
+
+    /**
+        null while the page of this position is (re)loading
+     */
+    def T get(int position)
+    {
+        val page = position / pageSize
+        val items = pages.get(page)
+        if (items == null)
+        {
+            request(page, RequestPriority.INTERACTIVE)
+        }
+        // one page ahead, so scrolling doesn't hit an empty card
+        if (!pages.containsKey(page + 1))
+        {
+            request(page + 1, RequestPriority.PREFETCH)
+        }
+
+        val index = position % pageSize
+        return if (items != null && index < items.size) items.get(index) else null
+    }
+
+    /**
+        The item if its page is in memory, doesn't load anything
+     */
+    def T peek(int position)
+    {
+        val items = pages.get(position / pageSize)
+        val index = position % pageSize
+        return if (items != null && index < items.size) items.get(index) else null
+    }
+
+    /**
+        Starts loading the first page, if it isn't there yet
+     */
+    def void start()
+    {
+        if (!pages.containsKey(0))
+        {
+            request(0, RequestPriority.INTERACTIVE)
+        }
+    }
+
+    /**
+        The items of the pages that are in memory, in order, e.g. for a playlist
+     */
+    def List<T> getResident()
+    {
+        val List<T> resident = newArrayList
+        for (page : pages.keySet.sort)
+        {
+            resident.addAll(pages.get(page))
+        }
+        return resident
+    }
+
+    /**
+        Pass on onTrimMemory, only the pages on screen survive when memory runs low
+     */
+    def void trimMemory(int level)
+    {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+        {
+            trimTo(0)
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(2)
+        }
+    }
+
+    /**
+        Drops everything, positions keep reading null until reloaded
+     */
+    def void clear()
+    {
+        trimTo(0)
+    }
+
+    private def void trimTo(int keep)
+    {
+        for (handle : loading.values)
+        {
+            handle?.cancel
+        }
+        loading.clear
+        while (pages.size > keep)
+        {
+            pages.remove(pages.keySet.head)
+        }
+    }
+
+    private def void request(int page, RequestPriority priority)
+    {
+        if (loading.containsKey(page) || (complete && page * pageSize >= size))
+        {
+            return
+        }
+
+        loading.put(page, null)
+        val handle = loader.load(page * pageSize, pageSize, priority, new PageCallback<T> {
+            override onPage(List<T> items) {
+                if (!loading.containsKey(page))
+                {
+                    // trimmed while in flight
+                    return
+                }
+                loading.remove(page)
+                loaded(page, items)
+            }
+
+            override onError(Exception e) {
+                if (!loading.containsKey(page))
+                {
+                    return
+                }
+                // asking for the position again retries
+                loading.remove(page)
+                Log.w(TAG, "Unable to load page " + page, e)
+                listener?.onPageError(PagedSource.this, page * pageSize, e)
+            }
+        })
+        // a synchronous loader may already be done
+        if (loading.containsKey(page))
+        {
+            loading.put(page, handle)
+        }
+    }
+
+    private def void loaded(int page, List<T> items)
+    {
+        pages.put(page, items)
+        while (pages.size > maxPages)
+        {
+            pages.remove(pages.keySet.head)
+        }
+
+        val end = page * pageSize + items.size
+        if (items.size < pageSize)
+        {
+            complete = true
+        }
+        if (end > size)
+        {
+            size = end
+        }
+        listener?.onPageLoaded(this, page * pageSize, items.size)
+    }
+}
+
+/**
+    Pages through a view action, e.g. item/view, with the offset and limit arguments
+ */
+class ApiPageLoader<T> implements PageLoader<T>
+{
+    val RequestFactory requestFactory
+    val String command
+    val String action
+    val ModelFactory<T> factory
+
+    /**
+        Should deliver on the main thread, like the default does
+     */
+    @Accessors
+    RequestDispatcher dispatcher = RequestExecutor.getDefault
+
+    new (RequestFactory requestFactory, String command, String action, ModelFactory<T> factory)
+    {
+        this.requestFactory = requestFactory
+        this.command = command
+        this.action = action
+        this.factory = factory
+    }
+
+    override load(int offset, int limit, RequestPriority priority, PageCallback<T> callback)
+    {
+        val request = requestFactory.create
+        request.command = command
+        request.action = action
+        request.arguments.put('offset', Integer.toString(offset))
+        request.arguments.put('limit', Integer.toString(limit))
+        request.priority = priority
+        request.dispatcher = dispatcher
+
+        return request.execute(new ModelResponse<T> {
+            override protected create(JSONObject json) {
+                factory.create(json)
+            }
+
+            override onSuccess(RequestBase request) {
+                if (header != null && header.status != 0)
+                {
+                    callback.onError(new IllegalStateException("API refused: " + header.statusmessage))
+                } else {
+                    callback.onPage(items)
+                }
+            }
+
+            override onError(RequestBase request, Exception e) {
+                callback.onError(e)
+            }
+        })
+    }
+}
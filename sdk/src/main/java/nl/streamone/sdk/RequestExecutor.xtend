@@ -0,0 +1,199 @@
+package nl.streamone.sdk
+
+import android.os.Handler
+import android.os.Looper
+import android.os.Process
+
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Response
+
+/**
+    Bounded worker pool with a priority queue, callbacks are delivered on the main thread.
+
+    val executor = RequestExecutor.getDefault
+    request.dispatcher = executor
+    val handle = request.execute(response) // returns immediately
+ */
+class RequestExecutor implements RequestDispatcher
+{
+    static val TAG = "RequestExecutor"
+
+    /**
+        HttpURLConnection keeps max. 5 idle sockets per host, no use in having more workers
+     */
+    public static val DEFAULT_WORKERS = 4
+
+    static RequestExecutor sDefault
+
+    val ThreadPoolExecutor pool
+    val Handler mainHandler
+    val AtomicLong sequence = new AtomicLong
+
+    new ()
+    {
+        this(DEFAULT_WORKERS)
+    }
+
+    new (int workers)
+    {
+        mainHandler = new Handler(Looper.getMainLooper)
+        val threadCount = new AtomicInteger
+        // NOTE: with an unbounded queue the pool never grows beyond its core size
+        pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>, [ runnable |
+                val thread = new Thread(runnable, TAG + '-' + threadCount.incrementAndGet)
+                thread.daemon = true
+                thread
+            ])
+        pool.allowCoreThreadTimeOut(true)
+    }
+
+    static synchronized def RequestExecutor getDefault()
+    {
+        if (sDefault == null)
+        {
+            sDefault = new RequestExecutor
+        }
+        return sDefault
+    }
+
+    override submit(RequestBase request, Response response)
+    {
+        val handle = new RequestHandle(request)
+        val task = new PrioritizedRequest(request, new MainThreadResponse(response, handle, mainHandler),
+            handle, sequence.getAndIncrement)
+        handle.canceller = [|
+            if (pool.remove(task)) {
+                handle.finish
+            }
+        ]
+        // not pool.submit(), the FutureTask wrapper is not Comparable
+        pool.execute(task)
+        return handle
+    }
+
+    def int getQueueSize()
+    {
+        return pool.queue.size
+    }
+
+    def void shutdown()
+    {
+        pool.shutdownNow
+    }
+}
+
+package class PrioritizedRequest implements Runnable, Comparable<PrioritizedRequest>
+{
+    val RequestBase request
+    val Response response
+    val RequestHandle handle
+    val RequestPriority priority
+    val long sequence
+
+    new (RequestBase request, Response response, RequestHandle handle, long sequence)
+    {
+        this.request = request
+        this.response = response
+        this.handle = handle
+        this.priority = request.priority ?: RequestPriority.INTERACTIVE
+        this.sequence = sequence
+    }
+
+    override run()
+    {
+        if (handle.cancelled)
+        {
+            handle.finish
+            return
+        }
+
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+        try {
+            request.executeNow(response)
+        } catch (RuntimeException e) {
+            response.onError(request, e)
+        }
+    }
+
+    /**
+        By priority first, FIFO within the same priority
+     */
+    override compareTo(PrioritizedRequest other)
+    {
+        val byPriority = priority.ordinal - other.priority.ordinal
+        if (byPriority != 0)
+        {
+            return byPriority
+        }
+        return if (sequence < other.sequence) -1 else if (sequence == other.sequence) 0 else 1
+    }
+}
+
+/**
+    Collects the results on the worker, replays them on the main thread
+ */
+package class MainThreadResponse extends Response
+{
+    val Response target
+    val RequestHandle handle
+    val Handler handler
+
+    new (Response target, RequestHandle handle, Handler handler)
+    {
+        this.target = target
+        this.handle = handle
+        this.handler = handler
+    }
+
+    /**
+        Decoding stays on the worker thread, only the callbacks go to the main thread
+     */
+    override consume(InputStream in, String charset) throws IOException
+    {
+        target.consume(in, charset)
+    }
+
+    override consume(String body) throws IOException
+    {
+        target.consume(body)
+    }
+
+    override onSuccess(RequestBase request)
+    {
+        deliver(request, true, null)
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        deliver(request, false, e)
+    }
+
+    private def void deliver(RequestBase request, boolean success, Exception e)
+    {
+        val code = this.code
+        val headers = this.headers
+        handler.post [|
+            if (!handle.cancelled)
+            {
+                target.code = code
+                target.headers = headers
+                if (success)
+                {
+                    target.onSuccess(request)
+                } else {
+                    target.onError(request, e)
+                }
+            }
+            handle.finish
+        ]
+    }
+}
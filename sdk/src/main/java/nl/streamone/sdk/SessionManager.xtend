@@ -0,0 +1,398 @@
+package nl.streamone.sdk
+
+import android.util.Log
+
+import java.io.IOException
+import java.util.List
+import java.util.Map
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+import org.json.JSONObject
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.Authentication
+import nl.streamone.sdk.Cryptography
+import nl.streamone.sdk.PreSessionAuthentication
+import nl.streamone.sdk.RequestBase
+import nl.streamone.sdk.Session
+
+/**
+    Creates the requests the SessionManager needs, so it doesn't care about the transport
+ */
+interface RequestFactory
+{
+    def RequestBase create()
+}
+
+abstract class SessionCallback
+{
+    def void onSession(SessionManager manager, Session session)
+    def void onError(SessionManager manager, Exception e)
+}
+
+/**
+    Owns the user session: session/initialize, the challenge response and session/create.
+
+    Concurrent callers share one handshake, the session is renewed in the background
+    before its timeout runs out, and the psk + session key is only concatenated once.
+    A session without a timeout lasts until {@link #invalidate}.
+
+    The session calls go out over requests from the factory, so over the host, port, scheme
+    and transport the app uses for the rest:
+
+    val sessions = new SessionManager(auth, "user", "password", [| new OkHttpRequest(auth.hostname) ])
+    // on a worker thread
+    sessions.authorize(request)
+    request.execute(response)
+ */
+class SessionManager
+{
+    static val TAG = "SessionManager"
+
+    /**
+        Renew once this fraction of the timeout has passed
+     */
+    public static val RENEW_AT = 0.8
+
+    /**
+        When a renewal fails, try again after this, as long as the old session lasts
+     */
+    public static val RETRY_MILLIS = 30 * 1000L
+
+    val Authentication authentication
+    val String user
+    val String password
+
+    @Accessors
+    RequestFactory requestFactory
+
+    /**
+        Passed to session/initialize, optional
+     */
+    @Accessors
+    String userIp
+
+    volatile Session session
+    volatile String signingKey
+    volatile long expiresAt = 0
+
+    val List<SessionCallback> waiting = newArrayList
+    boolean authenticating = false
+
+    val ScheduledExecutorService scheduler
+    volatile Thread schedulerThread
+    ScheduledFuture<?> renewal
+
+    new (Authentication authentication, String user, String password, RequestFactory requestFactory)
+    {
+        this.authentication = authentication
+        this.user = user
+        this.password = password
+        this.requestFactory = requestFactory
+        this.scheduler = Executors.newSingleThreadScheduledExecutor [ runnable |
+            val thread = new Thread(runnable, TAG)
+            thread.daemon = true
+            schedulerThread = thread
+            thread
+        ]
+    }
+
+    /**
+        The current session, or null if there is none (yet)
+     */
+    def Session getSession()
+    {
+        return if (isValid) session else null
+    }
+
+    /**
+        psk + session key, for signing requests in this session
+     */
+    def String getSigningKey()
+    {
+        return if (isValid) signingKey else null
+    }
+
+    def boolean isValid()
+    {
+        return session != null && System.currentTimeMillis < expiresAt
+    }
+
+    /**
+        Calls back right away when there is a valid session,
+        otherwise joins (or starts) the handshake
+     */
+    def void getSession(SessionCallback callback)
+    {
+        val current = session
+        if (current != null && System.currentTimeMillis < expiresAt)
+        {
+            callback.onSession(this, current)
+            return
+        }
+        authenticate(callback)
+    }
+
+    /**
+        getSession as a future, to chain the calls that need the session on.
+        Cancelling it only drops this caller, the handshake is shared.
+     */
+    def RequestFuture<Session> sessionFuture()
+    {
+        val future = new RequestFuture<Session>
+        getSession(new SessionCallback {
+            override onSession(SessionManager manager, Session session)
+            {
+                future.complete(session)
+            }
+
+            override onError(SessionManager manager, Exception e)
+            {
+                future.fail(e)
+            }
+        })
+        return future
+    }
+
+    /**
+        Adds the session to the request, blocks while a handshake is needed.
+        Don't call this from the main thread. From a SessionCallback it throws an
+        IllegalStateException instead of waiting for a handshake that would never run.
+     */
+    def void authorize(RequestBase request) throws IOException
+    {
+        val latch = new CountDownLatch(1)
+        val Exception[] failure = newArrayOfSize(1)
+        getSession(new SessionCallback {
+            override onSession(SessionManager manager, Session session) {
+                latch.countDown
+            }
+
+            override onError(SessionManager manager, Exception e) {
+                failure.set(0, e)
+                latch.countDown
+            }
+        })
+
+        if (latch.count > 0 && Thread.currentThread == schedulerThread)
+        {
+            // the handshake runs on this thread, it can't while we wait for it
+            throw new IllegalStateException("authorize needs a handshake, don't call it from a SessionCallback")
+        }
+
+        try {
+            latch.await
+        } catch (InterruptedException e) {
+            Thread.currentThread.interrupt
+            throw new IOException("Interrupted while waiting for a session")
+        }
+
+        if (failure.get(0) != null)
+        {
+            throw new IOException("Unable to create a session", failure.get(0))
+        }
+
+        // read them together, a renewal may swap both
+        synchronized (this)
+        {
+            if (session == null)
+            {
+                throw new IOException("The session was invalidated")
+            }
+            request.signingKey = signingKey
+            addAuthentication(request)
+            request.parameters.put('session', session.id)
+        }
+    }
+
+    /**
+        Forget the session, e.g. when the API says it expired, the next caller starts a new handshake
+     */
+    def synchronized void invalidate()
+    {
+        renewal?.cancel(false)
+        renewal = null
+        session = null
+        signingKey = null
+        expiresAt = 0
+    }
+
+    def void shutdown()
+    {
+        scheduler.shutdownNow
+    }
+
+    private def void authenticate(SessionCallback callback)
+    {
+        var start = false
+        synchronized (waiting)
+        {
+            if (callback != null)
+            {
+                waiting.add(callback)
+            }
+            if (!authenticating)
+            {
+                authenticating = true
+                start = true
+            }
+        }
+
+        if (start)
+        {
+            scheduler.execute [| handshake ]
+        }
+    }
+
+    private def void handshake()
+    {
+        var Session created = null
+        var Exception failure = null
+        try {
+            created = create(initialize)
+            install(created)
+        } catch (Exception e) {
+            failure = e
+            Log.w(TAG, "Session handshake failed", e)
+        }
+
+        var List<SessionCallback> callbacks = null
+        synchronized (waiting)
+        {
+            authenticating = false
+            callbacks = newArrayList(waiting)
+            waiting.clear
+        }
+
+        for (callback : callbacks)
+        {
+            if (failure == null)
+            {
+                callback.onSession(this, created)
+            } else {
+                callback.onError(this, failure)
+            }
+        }
+
+        if (failure != null && session != null)
+        {
+            // the old session is still good for a while, keep trying in the background
+            scheduleRenewal(Math.min(RETRY_MILLIS, expiresAt - System.currentTimeMillis))
+        }
+    }
+
+    private def synchronized void install(Session created)
+    {
+        session = created
+        signingKey = authentication.preSharedKey + created.key
+        if (created.timeout <= 0)
+        {
+            // no timeout given, good until the API says otherwise
+            expiresAt = Long.MAX_VALUE
+            scheduleRenewal(0)
+            return
+        }
+        val timeoutMillis = created.timeout * 1000L
+        expiresAt = System.currentTimeMillis + timeoutMillis
+        scheduleRenewal((timeoutMillis * RENEW_AT) as long)
+    }
+
+    private def synchronized void scheduleRenewal(long delayMillis)
+    {
+        renewal?.cancel(false)
+        if (delayMillis > 0)
+        {
+            renewal = scheduler.schedule([| authenticate(null) ], delayMillis, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private def PreSessionAuthentication initialize() throws IOException
+    {
+        val Map<String, String> args = newLinkedHashMap('user' -> user)
+        if (userIp != null)
+        {
+            args.put('userip', userIp)
+        }
+        return call('initialize', args, [ json | new PreSessionAuthentication(json) ])
+    }
+
+    private def Session create(PreSessionAuthentication preSession) throws IOException
+    {
+        val response = Cryptography.getChallengeResponse(password.bytes, preSession.challenge.bytes, preSession.salt.bytes)
+        return call('create', newLinkedHashMap('challenge' -> preSession.challenge, 'response' -> response),
+            [ json | new Session(json) ])
+    }
+
+    /**
+        A session/* call signed with the psk, on this thread whatever the request's dispatcher is
+     */
+    private def <T> T call(String action, Map<String, String> args, (JSONObject)=>T factory) throws IOException
+    {
+        val request = requestFactory.create
+        request.command = 'session'
+        request.action = action
+        request.signingKey = authentication.preSharedKey
+        addAuthentication(request)
+        request.arguments.putAll(args)
+
+        val response = new SessionCall<T>(factory)
+        request.executeNow(response)
+        return response.result
+    }
+
+    private def void addAuthentication(RequestBase request)
+    {
+        val type = authentication.authenticationType ?: 'application'
+        request.parameters.put('authentication_type', type)
+        request.parameters.put(type, authentication.loginId)
+    }
+}
+
+package class SessionCall<T> extends ModelResponse<T>
+{
+    val (JSONObject)=>T factory
+    Exception error
+    boolean succeeded = false
+
+    new ((JSONObject)=>T factory)
+    {
+        this.factory = factory
+    }
+
+    override protected create(JSONObject json)
+    {
+        factory.apply(json)
+    }
+
+    override onSuccess(RequestBase request)
+    {
+        succeeded = true
+    }
+
+    override onError(RequestBase request, Exception e)
+    {
+        error = e
+    }
+
+    def T getResult() throws IOException
+    {
+        if (!succeeded)
+        {
+            throw new IOException("Session call failed with HTTP " + code, error)
+        }
+        if (header != null && header.status != 0)
+        {
+            throw new IOException("API refused: " + header.statusmessage)
+        }
+        if (item == null)
+        {
+            throw new IOException("Empty response body")
+        }
+        return item
+    }
+}
@@ -0,0 +1,195 @@
+package nl.streamone.sdk
+
+import android.util.JsonReader
+import android.util.JsonToken
+
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.StringReader
+import java.util.List
+
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import nl.streamone.sdk.Response
+import nl.streamone.sdk.ResponseHeader
+
+/**
+    Decodes the response while it comes off the socket, the body never exists as one String.
+
+    Set keepJson to get the raw body in json again, for debugging only.
+ */
+abstract class StreamingResponse extends Response
+{
+    @Accessors
+    protected boolean keepJson = false
+
+    @Accessors
+    protected ResponseHeader header
+
+    override consume(InputStream in, String charset) throws IOException
+    {
+        if (keepJson)
+        {
+            // reads it all, then ends up in consume(String)
+            super.consume(in, charset)
+            return
+        }
+
+        val reader = new JsonReader(new InputStreamReader(in, charset))
+        try {
+            read(reader)
+        } finally {
+            reader.close
+        }
+    }
+
+    override consume(String body) throws IOException
+    {
+        if (keepJson)
+        {
+            json = body
+        }
+        read(new JsonReader(new StringReader(body)))
+    }
+
+    protected def void read(JsonReader reader) throws IOException
+    {
+        try {
+            reader.beginObject
+            while (reader.hasNext)
+            {
+                switch (reader.nextName)
+                {
+                    case 'header': header = new ResponseHeader(JsonStreams.readObject(reader))
+                    case 'body': readBody(reader)
+                    default: reader.skipValue
+                }
+            }
+            reader.endObject
+        } catch (IllegalStateException e) {
+            // JsonReader's way of saying it got an unexpected token
+            throw new IOException("Malformed response: " + e.message)
+        }
+    }
+
+    /**
+        The reader is positioned on the value of "body", an object or an array
+     */
+    protected def void readBody(JsonReader reader) throws IOException
+}
+
+/**
+    Decodes every element of the body into a model, one small JSONObject at a time.
+
+    new ModelResponse<Session> {
+        override create(JSONObject json) { new Session(json) }
+        override onSuccess(RequestBase request) { session = item }
+        ...
+    }
+ */
+abstract class ModelResponse<T> extends StreamingResponse
+{
+    @Accessors(PUBLIC_GETTER)
+    val List<T> items = newArrayList
+
+    /**
+        Called on the worker thread, for each element of the body
+     */
+    protected def T create(JSONObject json)
+
+    override protected readBody(JsonReader reader) throws IOException
+    {
+        if (reader.peek == JsonToken.BEGIN_ARRAY)
+        {
+            reader.beginArray
+            while (reader.hasNext)
+            {
+                items.add(create(JsonStreams.readObject(reader)))
+            }
+            reader.endArray
+        } else {
+            items.add(create(JsonStreams.readObject(reader)))
+        }
+    }
+
+    /**
+        The first (often the only) element of the body
+     */
+    def T getItem()
+    {
+        return items.head
+    }
+}
+
+/**
+    Pull parser to org.json, the Xtendroid @AndroidJson models want a JSONObject
+ */
+class JsonStreams
+{
+    static def JSONObject readObject(JsonReader reader) throws IOException
+    {
+        val object = new JSONObject
+        try {
+            reader.beginObject
+            while (reader.hasNext)
+            {
+                object.put(reader.nextName, readValue(reader))
+            }
+            reader.endObject
+        } catch (JSONException e) {
+            throw new IOException("Malformed response: " + e.message)
+        }
+        return object
+    }
+
+    static def JSONArray readArray(JsonReader reader) throws IOException
+    {
+        val array = new JSONArray
+        reader.beginArray
+        while (reader.hasNext)
+        {
+            array.put(readValue(reader))
+        }
+        reader.endArray
+        return array
+    }
+
+    static def Object readValue(JsonReader reader) throws IOException
+    {
+        switch (reader.peek)
+        {
+            case BEGIN_OBJECT: readObject(reader)
+            case BEGIN_ARRAY: readArray(reader)
+            case BOOLEAN: reader.nextBoolean
+            case NULL: {
+                reader.nextNull
+                JSONObject.NULL
+            }
+            case NUMBER: readNumber(reader.nextString)
+            default: reader.nextString
+        }
+    }
+
+    private static def Object readNumber(String number)
+    {
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0)
+        {
+            try {
+                val value = Long.parseLong(number)
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+                {
+                    return value as int
+                }
+                return value
+            } catch (NumberFormatException e) {
+                // too big for a long, fall through
+            }
+        }
+        return Double.parseDouble(number)
+    }
+}
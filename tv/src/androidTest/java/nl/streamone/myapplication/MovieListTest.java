@@ -0,0 +1,39 @@
+package nl.streamone.myapplication;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+/**
+ * An item/view item as the API sends it, read into a Movie
+ */
+@SmallTest
+public class MovieListTest extends TestCase {
+    private static final String ITEM = "{\"id\":\"hJCtpIGbK9Ur\",\"title\":\"Item Title\","
+            + "\"description\":\"Item Description\",\"account\":\"ACCOUNT\","
+            + "\"playoutlink\":\"https:\\/\\/content.streamonecloud.net\\/item.mp4\","
+            + "\"selectedthumbnail\":{\"id\":\"0c9wZ7jA3IYf\","
+            + "\"url\":\"https:\\/\\/content.streamonecloud.net\\/thumb.jpg\",\"width\":1280,\"height\":720}}";
+
+    public void testFromItem() throws Exception {
+        Movie movie = MovieList.fromItem(new JSONObject(ITEM), "Category Zero");
+
+        assertEquals("hJCtpIGbK9Ur", movie.getItem().getId());
+        assertEquals("Item Title", movie.getTitle());
+        assertEquals("Item Description", movie.getDescription());
+        assertEquals("ACCOUNT", movie.getStudio());
+        assertEquals("https://content.streamonecloud.net/item.mp4", movie.getVideoUrl());
+        assertEquals("https://content.streamonecloud.net/thumb.jpg", movie.getCardImageUrl());
+        // no separate background in the API, the thumbnail is it
+        assertEquals("https://content.streamonecloud.net/thumb.jpg", movie.getBackgroundImageUrl());
+        assertEquals("Category Zero", movie.getCategory());
+    }
+
+    public void testSamplesHaveIds() {
+        for (Movie sample : MovieList.getSamples()) {
+            assertNotNull(sample.getItem().getId());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package nl.streamone.myapplication;
+
+import android.content.Context;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.module.GlideModule;
+
+/*
+ * Sizes Glide's caches by the memory class of the device, registered in the manifest
+ */
+public class CardImageGlideModule implements GlideModule {
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        int budget = CardImageLoader.getMemoryBudget(context);
+        builder.setMemoryCache(new LruResourceCache(budget));
+        // recycled bitmaps, what the card and background decodes draw from
+        builder.setBitmapPool(new LruBitmapPool(budget / 2));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+    }
+}
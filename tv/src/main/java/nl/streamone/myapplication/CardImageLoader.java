@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package nl.streamone.myapplication;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+
+/*
+ * Loads card images at one of a few fixed sizes.
+ *
+ * Every card of a bucket decodes to the same size, so Glide's memory and result caches hit
+ * whichever presenter asked first, and pooled bitmaps fit the next decode. When the image host
+ * can scale on the server we ask it for the bucket size instead of downloading the original.
+ */
+public final class CardImageLoader {
+    /*
+     * 16:9, like the cards
+     */
+    public enum Bucket {
+        SMALL(160, 90),
+        MEDIUM(320, 180),
+        LARGE(640, 360);
+
+        public final int width;
+        public final int height;
+
+        Bucket(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * The smallest bucket that covers the size, the largest if none does
+         */
+        public static Bucket forSize(int width, int height) {
+            for (Bucket bucket : values()) {
+                if (bucket.width >= width && bucket.height >= height) {
+                    return bucket;
+                }
+            }
+            return LARGE;
+        }
+    }
+
+    /*
+     * Roughly what a bucket costs in memory, 16 bits per pixel
+     */
+    private static final int BYTES_PER_PIXEL = 2;
+    /*
+     * Share of the memory cache the cards past the visible window may take, per row
+     */
+    private static final int PREFETCH_SHARE = 16;
+    private static final int MAX_PREFETCH_DISTANCE = 8;
+
+    private CardImageLoader() {
+    }
+
+    /**
+     * Glide's memory cache for this device, an eighth of the heap the app may use
+     */
+    public static int getMemoryBudget(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return am.getMemoryClass() * 1024 * 1024 / 8;
+    }
+
+    /**
+     * How many cards past the visible ones to prefetch, fewer on a small heap
+     */
+    public static int getPrefetchDistance(Context context, Bucket bucket) {
+        int cardBytes = bucket.width * bucket.height * BYTES_PER_PIXEL;
+        int distance = getMemoryBudget(context) / PREFETCH_SHARE / cardBytes;
+        return Math.max(1, Math.min(MAX_PREFETCH_DISTANCE, distance));
+    }
+
+    public static void load(Context context, String url, Bucket bucket, Drawable error,
+                            ImageView into) {
+        request(context, url, bucket)
+                .error(error)
+                .into(into);
+    }
+
+    /**
+     * Decodes into the memory cache, a later {@link #load} of the same url and bucket is a hit
+     */
+    public static void prefetch(Context context, String url, Bucket bucket) {
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+        // not bound to a screen, a prefetch may outlive the card that asked for it
+        request(context.getApplicationContext(), url, bucket).preload(bucket.width, bucket.height);
+    }
+
+    /**
+     * Adds the bucket size for hosts that scale on the server, see STREAMONE_IMAGE_HOST
+     */
+    public static String sizedUrl(String url, Bucket bucket) {
+        String host = BuildConfig.STREAMONE_IMAGE_HOST;
+        if (TextUtils.isEmpty(host) || TextUtils.isEmpty(url)) {
+            return url;
+        }
+        Uri uri = Uri.parse(url);
+        if (!host.equalsIgnoreCase(uri.getHost())) {
+            return url;
+        }
+        return uri.buildUpon()
+                .appendQueryParameter("width", Integer.toString(bucket.width))
+                .appendQueryParameter("height", Integer.toString(bucket.height))
+                .build()
+                .toString();
+    }
+
+    private static DrawableRequestBuilder<String> request(Context context, String url,
+                                                          Bucket bucket) {
+        return Glide.with(context)
+                .load(sizedUrl(url, bucket))
+                .override(bucket.width, bucket.height)
+                .centerCrop();
+    }
+}
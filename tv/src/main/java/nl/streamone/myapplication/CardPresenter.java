@@ -14,6 +14,7 @@
 
 package nl.streamone.myapplication;
 
+import android.content.Context;
 import android.graphics.drawable.Drawable;
 import android.support.v17.leanback.widget.ImageCardView;
 import android.support.v17.leanback.widget.Presenter;
@@ -31,6 +32,8 @@ public class CardPresenter extends Presenter {
 
     private static final int CARD_WIDTH = 313;
     private static final int CARD_HEIGHT = 176;
+    private static final CardImageLoader.Bucket BUCKET =
+            CardImageLoader.Bucket.forSize(CARD_WIDTH, CARD_HEIGHT);
     private static int sSelectedBackgroundColor;
     private static int sDefaultBackgroundColor;
     private Drawable mDefaultCardImage;
@@ -71,18 +74,41 @@ public class CardPresenter extends Presenter {
         ImageCardView cardView = (ImageCardView) viewHolder.view;
 
         Log.d(TAG, "onBindViewHolder");
+        if (movie == null) {
+            // its page is still loading, the adapter rebinds once it is there
+            cardView.setTitleText(null);
+            cardView.setContentText(null);
+            cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT);
+            // a recycled card may still be loading the image of the movie it showed before
+            Glide.clear(cardView.getMainImageView());
+            cardView.setMainImage(mDefaultCardImage);
+            return;
+        }
         if (movie.getCardImageUrl() != null) {
             cardView.setTitleText(movie.getTitle());
             cardView.setContentText(movie.getStudio());
             cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT);
-            Glide.with(viewHolder.view.getContext())
-                    .load(movie.getCardImageUrl())
-                    .centerCrop()
-                    .error(mDefaultCardImage)
-                    .into(cardView.getMainImageView());
+            CardImageLoader.load(viewHolder.view.getContext(), movie.getCardImageUrl(), BUCKET,
+                    mDefaultCardImage, cardView.getMainImageView());
         }
     }
 
+    /**
+     * Warms the image of a card that is about to scroll into view
+     */
+    public void prefetch(Context context, Object item) {
+        if (item instanceof Movie) {
+            CardImageLoader.prefetch(context, ((Movie) item).getCardImageUrl(), BUCKET);
+        }
+    }
+
+    /**
+     * Cards past the visible window worth prefetching on this device
+     */
+    public int getPrefetchDistance(Context context) {
+        return CardImageLoader.getPrefetchDistance(context, BUCKET);
+    }
+
     @Override
     public void onUnbindViewHolder(Presenter.ViewHolder viewHolder) {
         Log.d(TAG, "onUnbindViewHolder");
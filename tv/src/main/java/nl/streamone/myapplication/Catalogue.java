@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package nl.streamone.myapplication;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nl.streamone.sdk.ApiPageLoader;
+import nl.streamone.sdk.ModelFactory;
+import nl.streamone.sdk.OkHttpRequest;
+import nl.streamone.sdk.PageCallback;
+import nl.streamone.sdk.PageLoader;
+import nl.streamone.sdk.PagedSource;
+import nl.streamone.sdk.RequestBase;
+import nl.streamone.sdk.RequestFactory;
+import nl.streamone.sdk.RequestHandle;
+import nl.streamone.sdk.RequestPriority;
+
+/*
+ * The browse rows, one PagedSource per category.
+ *
+ * Pages come from item/view when the API is configured in build.gradle, otherwise from the
+ * MovieList samples. Nothing is fetched until a row is bound, so startup doesn't depend on
+ * the size of the catalogue. The rows on screen are bound together; over OkHttp their first
+ * pages go out as one burst on a shared HTTP/2 connection instead of a handshake each.
+ * Main thread only.
+ */
+public final class Catalogue {
+    private static final String ITEM_COMMAND = "item";
+    private static final String ITEM_VIEW = "view";
+    /*
+     * How many cards a row of samples pretends to have
+     */
+    private static final int SAMPLE_ROW_SIZE = 15;
+
+    private static Catalogue sInstance;
+
+    private final List<PagedSource<Movie>> mRows = new ArrayList<PagedSource<Movie>>();
+
+    private Catalogue() {
+        for (String category : MovieList.MOVIE_CATEGORY) {
+            mRows.add(new PagedSource<Movie>(createLoader(category)));
+        }
+    }
+
+    public static Catalogue getInstance() {
+        if (sInstance == null) {
+            sInstance = new Catalogue();
+        }
+        return sInstance;
+    }
+
+    public static boolean isApiConfigured() {
+        return !TextUtils.isEmpty(BuildConfig.STREAMONE_HOSTNAME);
+    }
+
+    public int getRowCount() {
+        return mRows.size();
+    }
+
+    public String getRowTitle(int row) {
+        return MovieList.MOVIE_CATEGORY[row];
+    }
+
+    public PagedSource<Movie> getRow(int row) {
+        return mRows.get(row);
+    }
+
+    /**
+     * The loaded movies of the row the movie was picked from, to skip through while playing.
+     * Matched on the item id, titles repeat
+     */
+    public List<Movie> getRelated(Movie movie) {
+        String id = movie.getItem().getId();
+        if (id == null) {
+            return new ArrayList<Movie>(Collections.singletonList(movie));
+        }
+        for (PagedSource<Movie> row : mRows) {
+            List<Movie> resident = row.getResident();
+            for (Movie other : resident) {
+                if (id.equals(other.getItem().getId())) {
+                    return resident;
+                }
+            }
+        }
+        return new ArrayList<Movie>(Collections.singletonList(movie));
+    }
+
+    /**
+     * Forwards onTrimMemory, rows keep their size but drop their pages
+     */
+    public void trimMemory(int level) {
+        for (PagedSource<Movie> row : mRows) {
+            row.trimMemory(level);
+        }
+    }
+
+    private static PageLoader<Movie> createLoader(final String category) {
+        if (!isApiConfigured()) {
+            return new SamplePageLoader();
+        }
+        return new ApiPageLoader<Movie>(new RequestFactory() {
+            @Override
+            public RequestBase create() {
+                RequestBase request = new OkHttpRequest(BuildConfig.STREAMONE_HOSTNAME);
+                request.setSigningKey(BuildConfig.STREAMONE_PSK);
+                request.getParameters().put("authentication_type", "application");
+                request.getParameters().put("application", BuildConfig.STREAMONE_APPLICATION);
+                if (!TextUtils.isEmpty(BuildConfig.STREAMONE_ACCOUNT)) {
+                    request.getParameters().put("account", BuildConfig.STREAMONE_ACCOUNT);
+                }
+                request.getArguments().put("category", category);
+                return request;
+            }
+        }, ITEM_COMMAND, ITEM_VIEW, new ModelFactory<Movie>() {
+            @Override
+            public Movie create(JSONObject json) {
+                return MovieList.fromItem(json, category);
+            }
+        });
+    }
+
+    /*
+     * Serves the samples a page at a time, posted like a real response so the adapter
+     * isn't notified while it binds
+     */
+    private static class SamplePageLoader implements PageLoader<Movie> {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public RequestHandle load(int offset, int limit, RequestPriority priority,
+                                  final PageCallback<Movie> callback) {
+            List<Movie> samples = MovieList.getSamples();
+            final List<Movie> page = new ArrayList<Movie>();
+            for (int i = offset; i < Math.min(offset + limit, SAMPLE_ROW_SIZE); i++) {
+                page.add(samples.get(i % samples.size()));
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onPage(page);
+                }
+            });
+            return null;
+        }
+    }
+}
@@ -23,6 +23,10 @@ import android.os.Bundle;
 public class DetailsActivity extends Activity {
     public static final String SHARED_ELEMENT_NAME = "hero";
     public static final String MOVIE = "Movie";
+    /**
+     * Key of the related movies in the HandoffCache
+     */
+    public static final String RELATED = "Related";
 
     /**
      * Called when the activity is first created.
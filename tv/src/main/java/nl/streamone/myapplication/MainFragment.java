@@ -15,12 +15,10 @@
 package nl.streamone.myapplication;
 
 import java.net.URI;
-import java.util.Collections;
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
+import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -32,6 +30,7 @@ import android.support.v17.leanback.widget.HeaderItem;
 import android.support.v17.leanback.widget.ImageCardView;
 import android.support.v17.leanback.widget.ListRow;
 import android.support.v17.leanback.widget.ListRowPresenter;
+import android.support.v17.leanback.widget.ObjectAdapter;
 import android.support.v17.leanback.widget.OnItemViewClickedListener;
 import android.support.v17.leanback.widget.OnItemViewSelectedListener;
 import android.support.v17.leanback.widget.Presenter;
@@ -47,7 +46,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.load.DecodeFormat;
 import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.SimpleTarget;
 
@@ -55,17 +54,29 @@ public class MainFragment extends BrowseFragment {
     private static final String TAG = "MainFragment";
 
     private static final int BACKGROUND_UPDATE_DELAY = 300;
+    // the background is dimmed and scaled up anyway, a quarter of the pixels looks the same
+    private static final int BACKGROUND_DOWNSAMPLE = 2;
     private static final int GRID_ITEM_WIDTH = 200;
     private static final int GRID_ITEM_HEIGHT = 200;
-    private static final int NUM_ROWS = 6;
-    private static final int NUM_COLS = 15;
 
     private final Handler mHandler = new Handler();
     private ArrayObjectAdapter mRowsAdapter;
     private Drawable mDefaultBackground;
     private DisplayMetrics mMetrics;
-    private Timer mBackgroundTimer;
     private URI mBackgroundURI;
+    private URI mShownBackgroundURI;
+    private BackgroundTarget mPendingBackground;
+    private BackgroundTarget mShownBackground;
+    // BackgroundManager cross fades from this one to the shown one, it still draws it
+    private BackgroundTarget mFadingBackground;
+    private final Runnable mUpdateBackground = new Runnable() {
+        @Override
+        public void run() {
+            if (mBackgroundURI != null && !mBackgroundURI.equals(mShownBackgroundURI)) {
+                updateBackground(mBackgroundURI.toString());
+            }
+        }
+    };
     private BackgroundManager mBackgroundManager;
 
     @Override
@@ -85,28 +96,52 @@ public class MainFragment extends BrowseFragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (null != mBackgroundTimer) {
-            Log.d(TAG, "onDestroy: " + mBackgroundTimer.toString());
-            mBackgroundTimer.cancel();
+        mHandler.removeCallbacksAndMessages(null);
+        detachRows();
+        clear(mPendingBackground);
+        clear(mShownBackground);
+        clear(mFadingBackground);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        Catalogue.getInstance().trimMemory(level);
+    }
+
+    private void detachRows() {
+        if (mRowsAdapter == null) {
+            return;
+        }
+        for (int i = 0; i < mRowsAdapter.size(); i++) {
+            ObjectAdapter rowAdapter = ((ListRow) mRowsAdapter.get(i)).getAdapter();
+            if (rowAdapter instanceof PagedObjectAdapter) {
+                ((PagedObjectAdapter) rowAdapter).detach();
+            }
         }
     }
 
     private void loadRows() {
-        List<Movie> list = MovieList.setupMovies();
+        Catalogue catalogue = Catalogue.getInstance();
 
         mRowsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
-        CardPresenter cardPresenter = new CardPresenter();
+        final CardPresenter cardPresenter = new CardPresenter();
+        final Context context = getActivity().getApplicationContext();
+        PagedObjectAdapter.Prefetcher prefetcher = new PagedObjectAdapter.Prefetcher() {
+            @Override
+            public void prefetch(Object item) {
+                cardPresenter.prefetch(context, item);
+            }
+        };
+        int prefetchDistance = cardPresenter.getPrefetchDistance(context);
 
+        // the rows fetch their first page once they are bound
         int i;
-        for (i = 0; i < NUM_ROWS; i++) {
-            if (i != 0) {
-                Collections.shuffle(list);
-            }
-            ArrayObjectAdapter listRowAdapter = new ArrayObjectAdapter(cardPresenter);
-            for (int j = 0; j < NUM_COLS; j++) {
-                listRowAdapter.add(list.get(j % 5));
-            }
-            HeaderItem header = new HeaderItem(i, MovieList.MOVIE_CATEGORY[i]);
+        for (i = 0; i < catalogue.getRowCount(); i++) {
+            PagedObjectAdapter listRowAdapter =
+                    new PagedObjectAdapter(catalogue.getRow(i), cardPresenter);
+            listRowAdapter.setPrefetcher(prefetcher, prefetchDistance);
+            HeaderItem header = new HeaderItem(i, catalogue.getRowTitle(i));
             mRowsAdapter.add(new ListRow(header, listRowAdapter));
         }
 
@@ -161,29 +196,64 @@ public class MainFragment extends BrowseFragment {
     }
 
     protected void updateBackground(String uri) {
-        int width = mMetrics.widthPixels;
-        int height = mMetrics.heightPixels;
+        // a load for an item the user already scrolled past, drop it before it decodes
+        clear(mPendingBackground);
+        mPendingBackground = new BackgroundTarget(mBackgroundURI,
+                mMetrics.widthPixels / BACKGROUND_DOWNSAMPLE,
+                mMetrics.heightPixels / BACKGROUND_DOWNSAMPLE);
+        // decoded into a bitmap from Glide's pool, at the size of the target
         Glide.with(getActivity())
                 .load(uri)
+                .asBitmap()
+                .format(DecodeFormat.PREFER_RGB_565)
                 .centerCrop()
-                .error(mDefaultBackground)
-                .into(new SimpleTarget<GlideDrawable>(width, height) {
-                    @Override
-                    public void onResourceReady(GlideDrawable resource,
-                                                GlideAnimation<? super GlideDrawable>
-                                                        glideAnimation) {
-                        mBackgroundManager.setDrawable(resource);
-                    }
-                });
-        mBackgroundTimer.cancel();
+                .dontAnimate()
+                .into(mPendingBackground);
     }
 
     private void startBackgroundTimer() {
-        if (null != mBackgroundTimer) {
-            mBackgroundTimer.cancel();
+        // one runnable on the main handler, rescheduled instead of a Timer thread per selection
+        mHandler.removeCallbacks(mUpdateBackground);
+        mHandler.postDelayed(mUpdateBackground, BACKGROUND_UPDATE_DELAY);
+    }
+
+    private static void clear(BackgroundTarget target) {
+        if (target != null) {
+            Glide.clear(target);
+        }
+    }
+
+    private final class BackgroundTarget extends SimpleTarget<Bitmap> {
+        private final URI mUri;
+
+        BackgroundTarget(URI uri, int width, int height) {
+            super(width, height);
+            mUri = uri;
+        }
+
+        @Override
+        public void onResourceReady(Bitmap resource, GlideAnimation<? super Bitmap> glideAnimation) {
+            mBackgroundManager.setBitmap(resource);
+            show();
+        }
+
+        @Override
+        public void onLoadFailed(Exception e, Drawable errorDrawable) {
+            mBackgroundManager.setDrawable(mDefaultBackground);
+            show();
+        }
+
+        private void show() {
+            if (mPendingBackground == this) {
+                mPendingBackground = null;
+            }
+            // BackgroundManager fades from the drawable it showed to this one and has let go of the
+            // one before, that bitmap goes back to the pool for the next decode
+            clear(mFadingBackground);
+            mFadingBackground = mShownBackground;
+            mShownBackground = this;
+            mShownBackgroundURI = mUri;
         }
-        mBackgroundTimer = new Timer();
-        mBackgroundTimer.schedule(new UpdateBackgroundTask(), BACKGROUND_UPDATE_DELAY);
     }
 
     private final class ItemViewClickedListener implements OnItemViewClickedListener {
@@ -226,22 +296,6 @@ public class MainFragment extends BrowseFragment {
         }
     }
 
-    private class UpdateBackgroundTask extends TimerTask {
-
-        @Override
-        public void run() {
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (mBackgroundURI != null) {
-                        updateBackground(mBackgroundURI.toString());
-                    }
-                }
-            });
-
-        }
-    }
-
     private class GridItemPresenter extends Presenter {
         @Override
         public ViewHolder onCreateViewHolder(ViewGroup parent) {
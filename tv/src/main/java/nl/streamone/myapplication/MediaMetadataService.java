@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package nl.streamone.myapplication;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaMetadataRetriever;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Probes duration and video size of remote media off the main thread.
+ *
+ * MediaMetadataRetriever opens a connection and parses the container header for every
+ * setDataSource, so results are memoized per video url, in memory and in shared preferences.
+ * Concurrent requests for the same url share one probe.
+ *
+ * The stored entries are capped, the least recently used go first. A url that couldn't be
+ * probed isn't tried again for a while, focus moving over a broken item would probe it every time.
+ */
+public class MediaMetadataService {
+    private static final String TAG = "MediaMetadataService";
+    private static final String PREFERENCES = "media_metadata";
+    private static final int MEMORY_ENTRIES = 64;
+    private static final int STORED_ENTRIES = 512;
+    private static final long FAILURE_TTL_MS = 5 * 60 * 1000;
+
+    private static MediaMetadataService sInstance;
+
+    private final SharedPreferences mPreferences;
+    private final LruCache<String, MediaInfo> mMemory = new LruCache<String, MediaInfo>(MEMORY_ENTRIES);
+    // url to when it may be probed again, elapsedRealtime
+    private final LruCache<String, Long> mFailed = new LruCache<String, Long>(MEMORY_ENTRIES);
+    private final Map<String, List<Listener>> mPending = new HashMap<String, List<Listener>>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // one probe at a time, they all compete for the same bandwidth anyway
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private MediaMetadataService(Context context) {
+        mPreferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized MediaMetadataService getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MediaMetadataService(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the memoized metadata, or null if the url hasn't been probed yet
+     */
+    public MediaInfo peek(String videoUrl) {
+        return mMemory.get(videoUrl);
+    }
+
+    /**
+     * Calls back on the main thread, right away when the metadata is in memory.
+     * The info is null when the media couldn't be probed.
+     */
+    public void load(final String videoUrl, Listener listener) {
+        MediaInfo info = mMemory.get(videoUrl);
+        if (info != null || failedRecently(videoUrl)) {
+            listener.onMetadataLoaded(videoUrl, info);
+            return;
+        }
+        enqueue(videoUrl, listener);
+    }
+
+    /**
+     * Warms the cache, e.g. for the items next to the one that is playing
+     */
+    public void prefetch(String videoUrl) {
+        if (videoUrl != null && mMemory.get(videoUrl) == null && !failedRecently(videoUrl)) {
+            enqueue(videoUrl, null);
+        }
+    }
+
+    private void enqueue(final String videoUrl, Listener listener) {
+        synchronized (mPending) {
+            List<Listener> listeners = mPending.get(videoUrl);
+            if (listeners != null) {
+                if (listener != null) {
+                    listeners.add(listener);
+                }
+                return;
+            }
+            listeners = new ArrayList<Listener>();
+            if (listener != null) {
+                listeners.add(listener);
+            }
+            mPending.put(videoUrl, listeners);
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                MediaInfo info = readFromDisk(videoUrl);
+                if (info == null) {
+                    info = probe(videoUrl);
+                    if (info != null) {
+                        writeToDisk(videoUrl, info);
+                    }
+                }
+                if (info != null) {
+                    mMemory.put(videoUrl, info);
+                } else {
+                    mFailed.put(videoUrl, SystemClock.elapsedRealtime() + FAILURE_TTL_MS);
+                }
+                deliver(videoUrl, info);
+            }
+        });
+    }
+
+    private boolean failedRecently(String videoUrl) {
+        Long retryAt = mFailed.get(videoUrl);
+        if (retryAt == null) {
+            return false;
+        }
+        if (SystemClock.elapsedRealtime() < retryAt) {
+            return true;
+        }
+        mFailed.remove(videoUrl);
+        return false;
+    }
+
+    private void deliver(final String videoUrl, final MediaInfo info) {
+        final List<Listener> listeners;
+        synchronized (mPending) {
+            listeners = mPending.remove(videoUrl);
+        }
+        if (listeners == null || listeners.isEmpty()) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners) {
+                    listener.onMetadataLoaded(videoUrl, info);
+                }
+            }
+        });
+    }
+
+    private MediaInfo probe(String videoUrl) {
+        MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+        try {
+            mmr.setDataSource(videoUrl, new HashMap<String, String>());
+            String duration = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (duration == null) {
+                return null;
+            }
+            return new MediaInfo(
+                    Long.parseLong(duration),
+                    parseInt(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH)),
+                    parseInt(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT)),
+                    parseInt(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE)));
+        } catch (RuntimeException e) {
+            // setDataSource throws IllegalArgumentException for anything it can't open
+            Log.w(TAG, "Unable to probe " + videoUrl, e);
+            return null;
+        } finally {
+            // holds a native player and the connection until released
+            mmr.release();
+        }
+    }
+
+    private MediaInfo readFromDisk(String videoUrl) {
+        String stored = mPreferences.getString(videoUrl, null);
+        if (stored == null) {
+            return null;
+        }
+        String[] fields = stored.split(",");
+        if (fields.length < 4) {
+            return null;
+        }
+        MediaInfo info;
+        try {
+            info = new MediaInfo(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        // once per url and process, after this it is in memory
+        writeToDisk(videoUrl, info);
+        return info;
+    }
+
+    /*
+     * duration,width,height,bitrate,last used
+     */
+    private void writeToDisk(String videoUrl, MediaInfo info) {
+        mPreferences.edit()
+                .putString(videoUrl, info.getDuration() + "," + info.getWidth() + ","
+                        + info.getHeight() + "," + info.getBitrate() + "," + System.currentTimeMillis())
+                .apply();
+        trimDisk();
+    }
+
+    /*
+     * Drops the least recently used entries down to three quarters of the cap,
+     * on the probe thread, the only one that writes
+     */
+    private void trimDisk() {
+        Map<String, ?> all = mPreferences.getAll();
+        if (all.size() <= STORED_ENTRIES) {
+            return;
+        }
+        List<Map.Entry<String, Long>> byUse = new ArrayList<Map.Entry<String, Long>>(all.size());
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            byUse.add(new AbstractMap.SimpleEntry<String, Long>(entry.getKey(), lastUsed(entry.getValue())));
+        }
+        Collections.sort(byUse, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return a.getValue() < b.getValue() ? -1 : (a.getValue().equals(b.getValue()) ? 0 : 1);
+            }
+        });
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (int i = 0; i < byUse.size() - STORED_ENTRIES * 3 / 4; i++) {
+            editor.remove(byUse.get(i).getKey());
+        }
+        editor.apply();
+    }
+
+    private static long lastUsed(Object stored) {
+        if (!(stored instanceof String)) {
+            return 0;
+        }
+        String[] fields = ((String) stored).split(",");
+        if (fields.length < 5) {
+            // stored before entries were stamped
+            return 0;
+        }
+        try {
+            return Long.parseLong(fields[4]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int parseInt(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public interface Listener {
+        void onMetadataLoaded(String videoUrl, MediaInfo info);
+    }
+
+    /*
+     * What we know about a video without playing it, 0 when unknown
+     */
+    public static class MediaInfo {
+        private final long duration;
+        private final int width;
+        private final int height;
+        private final int bitrate;
+
+        public MediaInfo(long duration, int width, int height, int bitrate) {
+            this.duration = duration;
+            this.width = width;
+            this.height = height;
+            this.bitrate = bitrate;
+        }
+
+        /**
+         * In milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getBitrate() {
+            return bitrate;
+        }
+    }
+}
@@ -14,45 +14,93 @@
 
 package nl.streamone.myapplication;
 
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.Log;
 
-import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import nl.streamone.sdk.MediaItem;
+import nl.streamone.sdk.Thumbnail;
+
 /*
  * Movie class represents video entity with title, description, image thumbs and video url.
  *
+ * What is shown comes from the MediaItem, plus what only the app knows: the category row it
+ * sits in and, for the samples, a background other than the thumbnail. Parcelable rather than
+ * Serializable, it travels between the screens in Intent extras.
  */
-public class Movie implements Serializable {
-    static final long serialVersionUID = 727566175075960653L;
+public class Movie implements Parcelable {
     private static long count = 0;
-    private long id;
+    private final long id;
+    private final MediaItem item;
+    private final String category;
+    private final String bgImageUrl;
+    // the playback row relabels the movie it was created with
     private String title;
-    private String description;
-    private String bgImageUrl;
-    private String cardImageUrl;
-    private String videoUrl;
     private String studio;
-    private String category;
 
-    public Movie() {
+    public Movie(MediaItem item, String category) {
+        this(item, category, null);
     }
 
-    public static long getCount() {
-        return count;
+    public Movie(MediaItem item, String category, String bgImageUrl) {
+        this.id = count++;
+        this.item = item;
+        this.category = category;
+        this.bgImageUrl = bgImageUrl;
+        this.title = item.getTitle();
+        this.studio = item.getAccount();
+    }
+
+    private Movie(Parcel in) {
+        id = in.readLong();
+        // the creator directly, writeParcelable would look the class up by name
+        item = MediaItem.CREATOR.createFromParcel(in);
+        category = in.readString();
+        bgImageUrl = in.readString();
+        title = in.readString();
+        studio = in.readString();
+    }
+
+    public static final Parcelable.Creator<Movie> CREATOR = new Parcelable.Creator<Movie>() {
+        @Override
+        public Movie createFromParcel(Parcel in) {
+            return new Movie(in);
+        }
+
+        @Override
+        public Movie[] newArray(int size) {
+            return new Movie[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
     }
 
-    public static void incCount() {
-        count++;
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(id);
+        item.writeToParcel(dest, flags);
+        dest.writeString(category);
+        dest.writeString(bgImageUrl);
+        dest.writeString(title);
+        dest.writeString(studio);
+    }
+
+    public static long getCount() {
+        return count;
     }
 
     public long getId() {
         return id;
     }
 
-    public void setId(long id) {
-        this.id = id;
+    public MediaItem getItem() {
+        return item;
     }
 
     public String getTitle() {
@@ -64,11 +112,7 @@ public class Movie implements Serializable {
     }
 
     public String getDescription() {
-        return description;
-    }
-
-    public void setDescription(String description) {
-        this.description = description;
+        return item.getDescription();
     }
 
     public String getStudio() {
@@ -80,43 +124,29 @@ public class Movie implements Serializable {
     }
 
     public String getVideoUrl() {
-        return videoUrl;
-    }
-
-    public void setVideoUrl(String videoUrl) {
-        this.videoUrl = videoUrl;
+        return item.getPlayoutlink();
     }
 
     public String getBackgroundImageUrl() {
-        return bgImageUrl;
-    }
-
-    public void setBackgroundImageUrl(String bgImageUrl) {
-        this.bgImageUrl = bgImageUrl;
+        return bgImageUrl != null ? bgImageUrl : getCardImageUrl();
     }
 
     public String getCardImageUrl() {
-        return cardImageUrl;
-    }
-
-    public void setCardImageUrl(String cardImageUrl) {
-        this.cardImageUrl = cardImageUrl;
+        // empty rather than null, these are turned into URIs
+        Thumbnail thumbnail = item.getSelectedthumbnail();
+        return thumbnail != null && thumbnail.getUrl() != null ? thumbnail.getUrl() : "";
     }
 
     public String getCategory() {
         return category;
     }
 
-    public void setCategory(String category) {
-        this.category = category;
-    }
-
     public URI getBackgroundImageURI() {
         try {
-            Log.d("BACK MOVIE: ", bgImageUrl);
+            Log.d("BACK MOVIE: ", getBackgroundImageUrl());
             return new URI(getBackgroundImageUrl());
         } catch (URISyntaxException e) {
-            Log.d("URI exception: ", bgImageUrl);
+            Log.d("URI exception: ", getBackgroundImageUrl());
             return null;
         }
     }
@@ -134,10 +164,10 @@ public class Movie implements Serializable {
         return "Movie{" +
                 "id=" + id +
                 ", title='" + title + '\'' +
-                ", videoUrl='" + videoUrl + '\'' +
-                ", backgroundImageUrl='" + bgImageUrl + '\'' +
+                ", videoUrl='" + getVideoUrl() + '\'' +
+                ", backgroundImageUrl='" + getBackgroundImageUrl() + '\'' +
                 ", backgroundImageURI='" + getBackgroundImageURI().toString() + '\'' +
-                ", cardImageUrl='" + cardImageUrl + '\'' +
+                ", cardImageUrl='" + getCardImageUrl() + '\'' +
                 '}';
     }
 }
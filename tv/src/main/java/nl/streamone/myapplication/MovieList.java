@@ -1,8 +1,13 @@
 package nl.streamone.myapplication;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.ArrayList;
 import java.util.List;
 
+import nl.streamone.sdk.MediaItem;
+
 public final class MovieList {
     public static final String MOVIE_CATEGORY[] = {
             "Category Zero",
@@ -15,6 +20,25 @@ public final class MovieList {
 
     public static List<Movie> list;
 
+    /**
+     * The samples, built once
+     */
+    public static List<Movie> getSamples() {
+        if (list == null) {
+            setupMovies();
+        }
+        return list;
+    }
+
+    /**
+     * An item of item/view as a Movie, the fields are the ones MediaItem documents:
+     * title, description, account as the studio, playoutlink as the video and
+     * selectedthumbnail.url as the card
+     */
+    public static Movie fromItem(JSONObject item, String category) {
+        return new Movie(new MediaItem(item), category);
+    }
+
     public static List<Movie> setupMovies() {
         list = new ArrayList<Movie>();
         String title[] = {
@@ -54,33 +78,35 @@ public final class MovieList {
                 "http://commondatastorage.googleapis.com/android-tv/Sample%20videos/April%20Fool's%202013/Introducing%20Google%20Nose/card.jpg"
         };
 
-        list.add(buildMovieInfo("category", title[0],
+        list.add(buildMovieInfo("sample0", "category", title[0],
                 description, "Studio Zero", videoUrl[0], cardImageUrl[0], bgImageUrl[0]));
-        list.add(buildMovieInfo("category", title[1],
+        list.add(buildMovieInfo("sample1", "category", title[1],
                 description, "Studio One", videoUrl[1], cardImageUrl[1], bgImageUrl[1]));
-        list.add(buildMovieInfo("category", title[2],
+        list.add(buildMovieInfo("sample2", "category", title[2],
                 description, "Studio Two", videoUrl[2], cardImageUrl[2], bgImageUrl[2]));
-        list.add(buildMovieInfo("category", title[3],
+        list.add(buildMovieInfo("sample3", "category", title[3],
                 description, "Studio Three", videoUrl[3], cardImageUrl[3], bgImageUrl[3]));
-        list.add(buildMovieInfo("category", title[4],
+        list.add(buildMovieInfo("sample4", "category", title[4],
                 description, "Studio Four", videoUrl[4], cardImageUrl[4], bgImageUrl[4]));
 
         return list;
     }
 
-    private static Movie buildMovieInfo(String category, String title,
+    private static Movie buildMovieInfo(String id, String category, String title,
                                         String description, String studio, String videoUrl, String cardImageUrl,
                                         String bgImageUrl) {
-        Movie movie = new Movie();
-        movie.setId(Movie.getCount());
-        Movie.incCount();
-        movie.setTitle(title);
-        movie.setDescription(description);
-        movie.setStudio(studio);
-        movie.setCategory(category);
-        movie.setCardImageUrl(cardImageUrl);
-        movie.setBackgroundImageUrl(bgImageUrl);
-        movie.setVideoUrl(videoUrl);
-        return movie;
+        // shaped like item/view, so the samples go through the same model as the API
+        JSONObject item = new JSONObject();
+        try {
+            item.put("id", id);
+            item.put("title", title);
+            item.put("description", description);
+            item.put("account", studio);
+            item.put("playoutlink", videoUrl);
+            item.put("selectedthumbnail", new JSONObject().put("url", cardImageUrl));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Movie(new MediaItem(item), category, bgImageUrl);
     }
 }
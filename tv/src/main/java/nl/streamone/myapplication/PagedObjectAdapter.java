@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package nl.streamone.myapplication;
+
+import android.support.v17.leanback.widget.ObjectAdapter;
+import android.support.v17.leanback.widget.Presenter;
+
+import nl.streamone.sdk.PageListener;
+import nl.streamone.sdk.PagedSource;
+
+/*
+ * Feeds a row from a PagedSource.
+ *
+ * Until the source is complete the row shows one page of empty cards past the known items,
+ * binding those is what makes the source fetch the next page.
+ */
+public class PagedObjectAdapter extends ObjectAdapter implements PageListener {
+    private final PagedSource<?> mSource;
+    private int mReportedSize;
+    private Prefetcher mPrefetcher;
+    private int mPrefetchDistance;
+    private int mPrefetchedUpTo = -1;
+
+    public PagedObjectAdapter(PagedSource<?> source, Presenter presenter) {
+        super(presenter);
+        mSource = source;
+        mSource.setListener(this);
+        mReportedSize = size();
+    }
+
+    @Override
+    public int size() {
+        if (mSource.isComplete()) {
+            return mSource.size();
+        }
+        return mSource.size() + mSource.getPageSize();
+    }
+
+    /**
+     * Stops listening to the source. The sources outlive the screen, call this when it goes
+     * or the source keeps the adapter, and through its observers the views, alive
+     */
+    public void detach() {
+        if (mSource.getListener() == this) {
+            mSource.setListener(null);
+        }
+    }
+
+    /**
+     * Hands the items up to distance positions past the one being bound to the prefetcher
+     */
+    public void setPrefetcher(Prefetcher prefetcher, int distance) {
+        mPrefetcher = prefetcher;
+        mPrefetchDistance = distance;
+        mPrefetchedUpTo = -1;
+    }
+
+    /**
+     * null for a card that is still loading
+     */
+    @Override
+    public Object get(int position) {
+        Object item = mSource.get(position);
+        if (mPrefetcher != null) {
+            prefetchAfter(position);
+        }
+        return item;
+    }
+
+    private void prefetchAfter(int position) {
+        if (position + mPrefetchDistance < mPrefetchedUpTo - mPrefetchDistance) {
+            // jumped back, e.g. to the start of the row
+            mPrefetchedUpTo = position;
+        }
+        int end = Math.min(position + mPrefetchDistance, mSource.size() - 1);
+        for (int i = Math.max(position + 1, mPrefetchedUpTo + 1); i <= end; i++) {
+            Object next = mSource.peek(i);
+            if (next == null) {
+                // not loaded yet, try again on the next bind
+                return;
+            }
+            mPrefetcher.prefetch(next);
+            mPrefetchedUpTo = i;
+        }
+    }
+
+    @Override
+    public void onPageLoaded(PagedSource<?> source, int offset, int count) {
+        int size = size();
+        if (size > mReportedSize) {
+            notifyItemRangeInserted(mReportedSize, size - mReportedSize);
+        } else if (size < mReportedSize) {
+            notifyItemRangeRemoved(size, mReportedSize - size);
+        }
+        mReportedSize = size;
+        if (count > 0) {
+            notifyItemRangeChanged(offset, count);
+        }
+    }
+
+    @Override
+    public void onPageError(PagedSource<?> source, int offset, Exception e) {
+        // the cards stay empty, binding them again retries
+    }
+
+    public interface Prefetcher {
+        void prefetch(Object item);
+    }
+}
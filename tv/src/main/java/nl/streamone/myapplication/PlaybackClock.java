@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package nl.streamone.myapplication;
+
+import android.view.Choreographer;
+import android.widget.MediaController;
+
+/*
+ * Follows the position and buffered range of the real player, on display frames.
+ *
+ * An update is only pushed when the position or buffer moved at least one resolution step,
+ * e.g. one pixel of the progress bar, and the next frame is only asked for when the next
+ * step is due. Nothing runs between start() and stop(). Main thread only.
+ */
+public class PlaybackClock implements Choreographer.FrameCallback {
+    /*
+     * Polls at least this often while running, the buffer grows on its own schedule
+     */
+    private static final long MAX_POLL_MILLIS = 1000;
+    /*
+     * While started but not playing yet, i.e. preparing or buffering
+     */
+    private static final long WAITING_POLL_MILLIS = 250;
+
+    private final MediaController.MediaPlayerControl mPlayer;
+    private final Listener mListener;
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    private int mResolution = 1;
+    private int mLastPosition = -1;
+    private int mLastBuffered = -1;
+    private boolean mRunning;
+
+    public PlaybackClock(MediaController.MediaPlayerControl player, Listener listener) {
+        mPlayer = player;
+        mListener = listener;
+    }
+
+    /**
+     * Smallest change worth pushing, in milliseconds
+     */
+    public void setResolution(int millis) {
+        mResolution = Math.max(1, millis);
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    public void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mChoreographer.postFrameCallback(this);
+    }
+
+    public void stop() {
+        mRunning = false;
+        mChoreographer.removeFrameCallback(this);
+    }
+
+    /**
+     * Pushes the current position whatever changed, e.g. after a pause or a seek
+     */
+    public void sync() {
+        mLastPosition = -1;
+        mLastBuffered = -1;
+        poll();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        poll();
+        if (!mPlayer.isPlaying()) {
+            mChoreographer.postFrameCallbackDelayed(this, WAITING_POLL_MILLIS);
+            return;
+        }
+        // wake up on the frame the position crosses the next step
+        long untilNextStep = mResolution - (mPlayer.getCurrentPosition() % mResolution);
+        mChoreographer.postFrameCallbackDelayed(this, Math.min(untilNextStep, MAX_POLL_MILLIS));
+    }
+
+    private void poll() {
+        int duration = mPlayer.getDuration();
+        int position = mPlayer.getCurrentPosition();
+        int buffered = duration > 0 ? (int) ((long) duration * mPlayer.getBufferPercentage() / 100) : 0;
+
+        if (mLastPosition < 0
+                || Math.abs(position - mLastPosition) >= mResolution
+                || Math.abs(buffered - mLastBuffered) >= mResolution) {
+            mLastPosition = position;
+            mLastBuffered = buffered;
+            mListener.onPlaybackProgress(position, buffered, duration);
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Times in milliseconds, duration is -1 until the player knows it
+         */
+        void onPlaybackProgress(int position, int buffered, int duration);
+    }
+}
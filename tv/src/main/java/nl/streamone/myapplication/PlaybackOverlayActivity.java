@@ -23,6 +23,7 @@ import android.media.session.PlaybackState;
 import android.net.Uri;
 import android.os.Bundle;
 import android.view.KeyEvent;
+import android.widget.MediaController;
 import android.widget.VideoView;
 
 import com.bumptech.glide.Glide;
@@ -110,6 +111,13 @@ public class PlaybackOverlayActivity extends Activity implements
         updateMetadata(movie);
     }
 
+    /**
+     * Implementation of OnPlayPauseClickedListener
+     */
+    public MediaController.MediaPlayerControl getPlayerControl() {
+        return mVideoView;
+    }
+
     private void updatePlaybackState(int position) {
         PlaybackState.Builder stateBuilder = new PlaybackState.Builder()
                 .setActions(getAvailableActions());
@@ -199,6 +207,10 @@ public class PlaybackOverlayActivity extends Activity implements
             @Override
             public void onCompletion(MediaPlayer mp) {
                 mPlaybackState = LeanbackPlaybackState.IDLE;
+                PlaybackOverlayFragment playbackOverlayFragment = (PlaybackOverlayFragment) getFragmentManager().findFragmentById(R.id.playback_controls_fragment);
+                if (playbackOverlayFragment != null) {
+                    playbackOverlayFragment.onPlaybackCompleted();
+                }
             }
         });
 
@@ -16,10 +16,7 @@ package nl.streamone.myapplication;
 
 import android.app.Activity;
 
-import android.media.MediaMetadataRetriever;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v17.leanback.widget.AbstractDetailsDescriptionPresenter;
 import android.support.v17.leanback.widget.Action;
 import android.support.v17.leanback.widget.ArrayObjectAdapter;
@@ -46,6 +43,7 @@ import android.support.v17.leanback.widget.Presenter;
 import android.support.v17.leanback.widget.Row;
 import android.support.v17.leanback.widget.RowPresenter;
 import android.util.Log;
+import android.widget.MediaController;
 import android.widget.Toast;
 
 import com.bumptech.glide.Glide;
@@ -54,9 +52,10 @@ import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.SimpleTarget;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
+import nl.streamone.sdk.HandoffCache;
+
 /*
  * Class for video playback with media control
  */
@@ -70,9 +69,8 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     private static final int BACKGROUND_TYPE = PlaybackOverlayFragment.BG_LIGHT;
     private static final int CARD_WIDTH = 200;
     private static final int CARD_HEIGHT = 240;
-    private static final int DEFAULT_UPDATE_PERIOD = 1000;
-    private static final int UPDATE_PERIOD = 16;
-    private static final int SIMULATED_BUFFERED_TIME = 10000;
+    // the progress bar can't show less than a pixel, and a second is plenty for the labels
+    private static final int MAX_CLOCK_RESOLUTION = 1000;
 
     private ArrayObjectAdapter mRowsAdapter;
     private ArrayObjectAdapter mPrimaryActionsAdapter;
@@ -89,9 +87,10 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     private PlaybackControlsRow mPlaybackControlsRow;
     private ArrayList<Movie> mItems = new ArrayList<Movie>();
     private int mCurrentItem;
-    private Handler mHandler;
-    private Runnable mRunnable;
+    private PlaybackClock mClock;
+    private boolean mPlaying;
     private Movie mSelectedMovie;
+    private MediaMetadataService mMetadataService;
 
     private OnPlayPauseClickedListener mCallback;
 
@@ -100,10 +99,14 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
         super.onCreate(savedInstanceState);
 
         mItems = new ArrayList<Movie>();
-        mSelectedMovie = (Movie) getActivity()
-                .getIntent().getSerializableExtra(DetailsActivity.MOVIE);
+        mSelectedMovie = getActivity().getIntent().getParcelableExtra(DetailsActivity.MOVIE);
 
-        List<Movie> movies = MovieList.list;
+        List<Movie> movies = HandoffCache.getDefault()
+                .get(getActivity().getIntent().getStringExtra(DetailsActivity.RELATED));
+        if (movies == null) {
+            // started from elsewhere, or in a new process
+            movies = Catalogue.getInstance().getRelated(mSelectedMovie);
+        }
 
         for (int j = 0; j < movies.size(); j++) {
             mItems.add(movies.get(j));
@@ -112,10 +115,25 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
             }
         }
 
-        mHandler = new Handler();
+        mMetadataService = MediaMetadataService.getInstance(getActivity());
 
         setBackgroundType(BACKGROUND_TYPE);
         setFadingEnabled(false);
+        setFadeCompleteListener(new OnFadeCompleteListener() {
+            @Override
+            public void onFadeInComplete() {
+                if (mPlaying) {
+                    mClock.sync();
+                    mClock.start();
+                }
+            }
+
+            @Override
+            public void onFadeOutComplete() {
+                // nobody is looking at the progress bar
+                mClock.stop();
+            }
+        });
 
         setupRows();
 
@@ -135,6 +153,24 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
         });
     }
 
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // the activity sets up its player after inflating this fragment
+        mClock = new PlaybackClock(mCallback.getPlayerControl(), new PlaybackClock.Listener() {
+            @Override
+            public void onPlaybackProgress(int position, int buffered, int duration) {
+                if (duration > 0 && mPlaybackControlsRow.getTotalTime() <= 0) {
+                    mPlaybackControlsRow.setTotalTime(duration);
+                    updateClockResolution();
+                }
+                mPlaybackControlsRow.setCurrentTime(position);
+                mPlaybackControlsRow.setBufferedProgress(buffered);
+            }
+        });
+        updateClockResolution();
+    }
+
     @SuppressWarnings("deprecation")
     @Override
     public void onAttach(Activity context) {
@@ -190,33 +226,44 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     }
 
     public void togglePlayback(boolean playPause) {
+        mPlaying = playPause;
         if (playPause) {
-            startProgressAutomation();
+            mClock.start();
             setFadingEnabled(true);
             mCallback.onFragmentPlayPause(mItems.get(mCurrentItem),
                     mPlaybackControlsRow.getCurrentTime(), true);
             mPlayPauseAction.setIcon(mPlayPauseAction.getDrawable(PlayPauseAction.PAUSE));
         } else {
-            stopProgressAutomation();
+            mClock.stop();
             setFadingEnabled(false);
             mCallback.onFragmentPlayPause(mItems.get(mCurrentItem),
                     mPlaybackControlsRow.getCurrentTime(), false);
+            // where the player actually stopped
+            mClock.sync();
             mPlayPauseAction.setIcon(mPlayPauseAction.getDrawable(PlayPauseAction.PLAY));
         }
         notifyChanged(mPlayPauseAction);
     }
 
-    private int getDuration() {
-        Movie movie = mItems.get(mCurrentItem);
-        MediaMetadataRetriever mmr = new MediaMetadataRetriever();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-            mmr.setDataSource(movie.getVideoUrl(), new HashMap<String, String>());
-        } else {
-            mmr.setDataSource(movie.getVideoUrl());
-        }
-        String time = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-        long duration = Long.parseLong(time);
-        return (int) duration;
+    private void loadDuration() {
+        final String videoUrl = mItems.get(mCurrentItem).getVideoUrl();
+        mMetadataService.load(videoUrl, new MediaMetadataService.Listener() {
+            @Override
+            public void onMetadataLoaded(String url, MediaMetadataService.MediaInfo info) {
+                // the user may have skipped to another item in the meantime
+                if (info == null || !isAdded()
+                        || !url.equals(mItems.get(mCurrentItem).getVideoUrl())) {
+                    return;
+                }
+                mPlaybackControlsRow.setTotalTime((int) info.getDuration());
+                updateClockResolution();
+            }
+        });
+
+        // likely the next thing the user asks for
+        int size = mItems.size();
+        mMetadataService.prefetch(mItems.get((mCurrentItem + 1) % size).getVideoUrl());
+        mMetadataService.prefetch(mItems.get((mCurrentItem - 1 + size) % size).getVideoUrl());
     }
 
     private void addPlaybackControlsRow() {
@@ -294,9 +341,10 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
             updateVideoImage(mItems.get(mCurrentItem).getCardImageURI().toString());
         }
         mRowsAdapter.notifyArrayItemRangeChanged(0, 1);
-        mPlaybackControlsRow.setTotalTime(getDuration());
+        mPlaybackControlsRow.setTotalTime(0);
         mPlaybackControlsRow.setCurrentTime(0);
         mPlaybackControlsRow.setBufferedProgress(0);
+        loadDuration();
     }
 
     private void addOtherRows() {
@@ -309,30 +357,24 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
 
     }
 
-    private int getUpdatePeriod() {
-        if (getView() == null || mPlaybackControlsRow.getTotalTime() <= 0) {
-            return DEFAULT_UPDATE_PERIOD;
+    private void updateClockResolution() {
+        if (mClock == null) {
+            return;
+        }
+        if (getView() == null || getView().getWidth() == 0
+                || mPlaybackControlsRow.getTotalTime() <= 0) {
+            mClock.setResolution(MAX_CLOCK_RESOLUTION);
+            return;
         }
-        return Math.max(UPDATE_PERIOD, mPlaybackControlsRow.getTotalTime() / getView().getWidth());
+        mClock.setResolution(Math.min(MAX_CLOCK_RESOLUTION,
+                mPlaybackControlsRow.getTotalTime() / getView().getWidth()));
     }
 
-    private void startProgressAutomation() {
-        mRunnable = new Runnable() {
-            @Override
-            public void run() {
-                int updatePeriod = getUpdatePeriod();
-                int currentTime = mPlaybackControlsRow.getCurrentTime() + updatePeriod;
-                int totalTime = mPlaybackControlsRow.getTotalTime();
-                mPlaybackControlsRow.setCurrentTime(currentTime);
-                mPlaybackControlsRow.setBufferedProgress(currentTime + SIMULATED_BUFFERED_TIME);
-
-                if (totalTime > 0 && totalTime <= currentTime) {
-                    next();
-                }
-                mHandler.postDelayed(this, updatePeriod);
-            }
-        };
-        mHandler.postDelayed(mRunnable, getUpdatePeriod());
+    /**
+     * The player reached the end of the item
+     */
+    public void onPlaybackCompleted() {
+        next();
     }
 
     private void next() {
@@ -360,15 +402,9 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
         updatePlaybackRow(mCurrentItem);
     }
 
-    private void stopProgressAutomation() {
-        if (mHandler != null && mRunnable != null) {
-            mHandler.removeCallbacks(mRunnable);
-        }
-    }
-
     @Override
     public void onStop() {
-        stopProgressAutomation();
+        mClock.stop();
         super.onStop();
     }
 
@@ -388,6 +424,11 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     // Container Activity must implement this interface
     public interface OnPlayPauseClickedListener {
         void onFragmentPlayPause(Movie movie, int position, Boolean playPause);
+
+        /**
+         * The player the progress is read from
+         */
+        MediaController.MediaPlayerControl getPlayerControl();
     }
 
     static class DescriptionPresenter extends AbstractDetailsDescriptionPresenter {
@@ -43,9 +43,12 @@ import com.bumptech.glide.load.resource.drawable.GlideDrawable;
 import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.SimpleTarget;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import nl.streamone.sdk.HandoffCache;
+
 /*
  * LeanbackDetailsFragment extends DetailsFragment, a Wrapper fragment for leanback details screens.
  * It shows a detailed view of video and its meta plus related videos.
@@ -63,6 +66,7 @@ public class VideoDetailsFragment extends DetailsFragment {
     private static final int NUM_COLS = 10;
 
     private Movie mSelectedMovie;
+    private ArrayList<Movie> mRelated;
 
     private ArrayObjectAdapter mAdapter;
     private ClassPresenterSelector mPresenterSelector;
@@ -78,8 +82,7 @@ public class VideoDetailsFragment extends DetailsFragment {
 
         prepareBackgroundManager();
 
-        mSelectedMovie = (Movie) getActivity().getIntent()
-                .getSerializableExtra(DetailsActivity.MOVIE);
+        mSelectedMovie = getActivity().getIntent().getParcelableExtra(DetailsActivity.MOVIE);
         if (mSelectedMovie != null) {
             setupAdapter();
             setupDetailsOverviewRow();
@@ -177,6 +180,8 @@ public class VideoDetailsFragment extends DetailsFragment {
                 if (action.getId() == ACTION_WATCH_TRAILER) {
                     Intent intent = new Intent(getActivity(), PlaybackOverlayActivity.class);
                     intent.putExtra(DetailsActivity.MOVIE, mSelectedMovie);
+                    // the list can be long, only its key goes through the binder
+                    intent.putExtra(DetailsActivity.RELATED, HandoffCache.getDefault().put(mRelated));
                     startActivity(intent);
                 } else {
                     Toast.makeText(getActivity(), action.toString(), Toast.LENGTH_SHORT).show();
@@ -188,12 +193,14 @@ public class VideoDetailsFragment extends DetailsFragment {
 
     private void setupMovieListRow() {
         String subcategories[] = {getString(R.string.related_movies)};
-        List<Movie> list = MovieList.list;
+        // a copy, the row keeps paging while we're away
+        mRelated = new ArrayList<Movie>(Catalogue.getInstance().getRelated(mSelectedMovie));
+        List<Movie> list = new ArrayList<Movie>(mRelated);
 
         Collections.shuffle(list);
         ArrayObjectAdapter listRowAdapter = new ArrayObjectAdapter(new CardPresenter());
-        for (int j = 0; j < NUM_COLS; j++) {
-            listRowAdapter.add(list.get(j % 5));
+        for (int j = 0; j < Math.min(NUM_COLS, list.size()); j++) {
+            listRowAdapter.add(list.get(j));
         }
 
         HeaderItem header = new HeaderItem(0, subcategories[0]);